@@ -0,0 +1,166 @@
+/**
+ * @file   AcquisitionHeure.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Acquisition de la date et de l'heure par 2G/3G ("modem location"), en arrière-plan pendant que le serveur reçoit les lectures.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.*;
+import java.util.regex.Matcher;
+
+//Acquisition de la date et de l'heure par 2G/3G ("modem location", puis "timedatectl set-time"), en arrière-plan: le serveur reçoit les lectures
+//pendant ce temps (estampillées par HorlogePasserelle), elles sont corrigées en bloc quand l'heure réelle est obtenue.
+//Sans réponse valide après heure.attente_max_ms, l'heure du système est gardée: les envois qui attendent l'heure (Attendre) ne restent pas bloqués.
+public class AcquisitionHeure implements Runnable
+{
+    private static final long TEMPS_1M = 60000;
+
+    Thread m_Thread;
+    private Serveur m_Parent;
+    private long m_AttenteMax = Configuration.Entier("heure.attente_max_ms", 1800000);
+
+    public AcquisitionHeure(Serveur Parent)
+    {
+        try
+        {
+            m_Parent = Parent;
+
+            m_Thread = new Thread(this, "Heure");
+            m_Thread.setDaemon(true);
+            m_Thread.start();
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    public void run()
+    {
+        String Temps = "";                                                                  //Le temps reçu de "modem location" mais dans le bon format pour la commande "timedatectl"
+        String Date = "";                                                                   //La date reçue de "modem location" mais dans le bon format pour la commande "timedatectl"
+        String retour7 = "";                                                                //Pour le retour de la commande/process 7 (modem location)
+        long Limite = System.nanoTime() + m_AttenteMax * 1000000;                           //Horloge monotone: timedatectl ou l'heure du système peuvent changer pendant l'attente
+
+        try
+        {
+            BailModem Modem = m_Parent.m_Modem.Acquerir("heure");                                   //Alimente les ports USB
+
+            System.out.println("Début de l'acquisition de la date et de l'heure par 2G/3G...");
+
+            boolean PremierEssai = true;
+            Matcher m2 = Serveur.Pattern_Location.matcher(retour7);                        //Crée un objet de type matcher, qui va permettre de comparer la trame que l'on reçoit avec le pattern défini
+
+            while (m2.find() == false && System.nanoTime() - Limite < 0)                  //Réessaie tant que la trame reçue ne correspond pas au "pattern" (commande échouée ou réponse illisible)
+            {
+                if (PremierEssai == false || m_Parent.m_Modem.Attache() == false)                    //Pas d'attente si le modem est déjà sur le réseau
+                {
+                    //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+                    Thread.sleep(TEMPS_1M);                                                //Réessaie la commande chaque minute
+                    //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+                }
+
+                PremierEssai = false;
+
+                try
+                {
+                    retour7 = m_Parent.m_Hologram.Localiser();                                       //"modem location"
+                }
+
+                catch (IOException e)
+                {
+                    System.out.println(e.toString());
+                    retour7 = "";
+                }
+
+                if (retour7.isEmpty() == false)
+                {
+                    System.out.println("Ligne trouvée: " + retour7);
+                }
+
+                m2 = Serveur.Pattern_Location.matcher(retour7);
+            }
+
+            Modem.Liberer();                                                                //Le modem est coupé après modem.garder_chaud_ms s'il ne sert plus
+
+            m2.reset();
+
+            if (m2.find() == false)
+            {
+                System.out.println("Date et heure pas obtenues par 2G/3G après " + m_AttenteMax + " ms, l'heure du système est gardée");
+            }
+
+            else                                                     //La trame reçue correspond au "pattern"
+            {
+                System.out.println("Acquisition de la date et de l'heure réussie");
+                m_Parent.m_Modem.AttacheReussie();
+
+                //Affiche les valeurs trouvés dans les groupes du pattern regex. Chaque groupe correspond à la valeur reçue de la commande location
+                System.out.println("Altitude: "      + m2.group(1));
+                System.out.println("Incertitude: "   + m2.group(2));
+                System.out.println("Longitude: "     + m2.group(3));
+                System.out.println("Latitude: "      + m2.group(4));
+                System.out.println("Temps: "         + m2.group(5));
+                System.out.println("Date: "          + m2.group(6));
+
+                String ATemps = m2.group(5);        //Mets seulement le temps dans la variable, qui n'est pas encore dans le bon format pour la commande "timedatectl"
+                String ADate = m2.group(6);         //Mets seulement la date dans la variable, qui n'est pas encore dans le bon format pour la commande "timedatectl"
+
+                Matcher m3 = Serveur.Pattern_Heure.matcher(ATemps);                    //Crée un objet de type matcher, qui va permettre de comparer l'heure acquise avec le pattern défini
+
+                if (m3.find( ))                                     //Regarde si la l'heure reçue correspond au "pattern"     
+                {
+                    Temps = m3.group(1) + ":" + m3.group(2) + ":" + m3.group(3);        //Mets l'heure dans le bon format pour la commande "timedatectl"
+                }
+
+                Matcher m4 = Serveur.Pattern_Date.matcher(ADate);                     //Crée un objet de type matcher, qui va permettre de comparer la date acquise avec le pattern défini
+
+                if (m4.find( ))                                     //Regarde si la la date reçue correspond au "pattern"
+                {
+                    Date = m4.group(3) + "-" + m4.group(2) + "-" + m4.group(1);         //Mets la date dans le bon format pour la commande "timedatectl"
+                }
+
+                //Ce bloc permet de de mettre à jour l'heure du Pi                                  //<- DÉBUT DU BLOC
+                String s10 = "sudo timedatectl set-time \"" + Date + " " + Temps + "\"";    	    //Commande bash a etre executee
+                String[] sCmd10 = {"/bin/bash", "-c", s10};             			                //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+
+                System.out.println(sCmd10[0] + " " + sCmd10[1] + " " + sCmd10[2]);                  //Affiche la commande a executer dans la console Java
+                Process p10 = Runtime.getRuntime().exec(sCmd10);        			                //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+
+                int Sortie = p10.waitFor();                                                         //Attend que la commande soit éxécutée soit terminée, 0 si elle a réussi
+                                    
+                if (p10.getErrorStream().available() > 0)        					                //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
+                {
+                    //Affiche l'erreur survenue
+                    BufferedReader brCommand10 = new BufferedReader(new InputStreamReader(p10.getErrorStream()));
+                    System.out.println(brCommand10.readLine());
+                    brCommand10.close();
+                }
+
+                if (Sortie == 0)
+                {
+                    m_Parent.TimeUpdated = true;
+                }
+
+                else
+                {
+                    System.out.println("timedatectl a échoué (code " + Sortie + "), l'heure du système est gardée");
+                }                                                                                   //<- FIN DU BLOC
+            }
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());                                                       //Affiche l'erreur survenue en Java
+        }
+
+        m_Parent.m_Horloge.Obtenue(System.currentTimeMillis());                                     //Les lectures reçues jusqu'ici seront corrigées (ou gardées, si l'heure
+        m_Parent.m_Selecteur.wakeup();                                                              //du système n'a pas changé), m_tService applique la correction
+    }
+}
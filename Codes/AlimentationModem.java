@@ -0,0 +1,167 @@
+/**
+ * @file   AlimentationModem.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Alimentation USB du modem, partagée par l'acquisition de l'heure, le mode debug et les envois (baux de BailModem).
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.*;
+
+//Alimentation USB du modem (bind/unbind du port 1-1), partagée par l'acquisition de l'heure, le mode debug et les envois.
+//Chaque utilisateur prend un bail (Acquerir) et le libère quand il a fini: le modem est allumé au premier bail et coupé seulement
+//modem.garder_chaud_ms après la libération du dernier. Un envoi qui suit de près un autre usage réutilise donc le modem déjà sur le réseau
+//LTE sans attendre l'attachement (90 secondes), et un utilisateur ne peut plus couper le modem pendant qu'un autre s'en sert.
+//Attache() indique que le modem a déjà réussi une commande réseau depuis qu'il est allumé (AttacheReussie), les attentes peuvent être sautées.
+public class AlimentationModem implements Runnable
+{
+    Thread m_Thread;
+    private String m_Allumer = Configuration.Texte("modem.allumer", "echo '1-1' |sudo tee /sys/bus/usb/drivers/usb/bind");
+    private String m_Eteindre = Configuration.Texte("modem.eteindre", "echo '1-1' |sudo tee /sys/bus/usb/drivers/usb/unbind");
+    private long m_GarderChaud = Configuration.Entier("modem.garder_chaud_ms", 300000);
+
+    private int m_Baux = 0;                                                 //Baux pas encore libérés (protégé par this)
+    private boolean m_Alimente = false;
+    private volatile boolean m_Attache = false;
+    private long m_Allumage;                                                //Moment (ms) de l'allumage en cours
+    private long m_Extinction;                                              //Moment (ms) où le modem sera coupé si aucun bail n'est pris d'ici là
+
+    private long m_Allumages = 0;                                           //Mesures (protégées par this)
+    private long m_Reutilisations = 0;                                      //Baux pris pendant que le modem était déjà allumé
+    private long m_DureeAllume = 0;                                         //Temps total (ms) des allumages terminés
+    private long m_Attachements = 0;
+    private long m_AttacheTotale = 0;                                       //Temps total (ms) entre l'allumage et la première commande réseau réussie
+    private long m_AttacheMax = 0;
+
+    public AlimentationModem()
+    {
+        try
+        {
+            m_Thread = new Thread(this);
+            m_Thread.setDaemon(true);
+            m_Thread.start();
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    //Allume le modem s'il ne l'est pas, le bail doit être libéré quand le modem ne sert plus
+    public synchronized BailModem Acquerir(String Utilisateur) throws IOException, InterruptedException
+    {
+        if (m_Alimente)
+        {
+            m_Reutilisations++;
+            System.out.println("Modem déjà allumé, réutilisé par " + Utilisateur + (m_Attache ? " (déjà sur le réseau)" : ""));
+        }
+
+        else
+        {
+            Commande(m_Allumer);
+            m_Alimente = true;
+            m_Attache = false;
+            m_Allumage = System.currentTimeMillis();
+            m_Allumages++;
+            System.out.println("Modem allumé pour " + Utilisateur);
+        }
+
+        m_Baux++;
+        return new BailModem(this, Utilisateur);
+    }
+
+    synchronized void Liberer(String Utilisateur)
+    {
+        m_Baux--;
+
+        if (m_Baux == 0)
+        {
+            m_Extinction = System.currentTimeMillis() + m_GarderChaud;
+            System.out.println("Modem libéré par " + Utilisateur + ", coupé dans " + (m_GarderChaud / 1000) + " s s'il ne sert plus");
+            notifyAll();
+        }
+    }
+
+    public boolean Attache()
+    {
+        return m_Attache;
+    }
+
+    //Appelée après une commande réseau réussie (heure, connexion PPP): mesure le temps d'attachement depuis l'allumage
+    public synchronized void AttacheReussie()
+    {
+        if (m_Alimente && m_Attache == false)
+        {
+            long Duree = System.currentTimeMillis() - m_Allumage;
+
+            m_Attache = true;
+            m_Attachements++;
+            m_AttacheTotale += Duree;
+            m_AttacheMax = Math.max(m_AttacheMax, Duree);
+        }
+    }
+
+    //Coupe le modem quand le dernier bail est libéré depuis modem.garder_chaud_ms
+    public void run()
+    {
+        try
+        {
+            synchronized (this)
+            {
+                while (true)
+                {
+                    long Attente = m_Alimente && m_Baux == 0 ? m_Extinction - System.currentTimeMillis() : 0;
+
+                    if (m_Alimente && m_Baux == 0 && Attente <= 0)
+                    {
+                        Commande(m_Eteindre);
+                        m_Alimente = false;
+                        m_Attache = false;
+                        m_DureeAllume += System.currentTimeMillis() - m_Allumage;
+                        System.out.println("Modem coupé");
+                        continue;
+                    }
+
+                    wait(Attente);                                          //0: jusqu'au prochain changement de bail
+                }
+            }
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    //Exécute la commande par bash et affiche son erreur s'il y en a une (le programme Java doit être démarré par le root)
+    static void Commande(String Commande) throws IOException, InterruptedException
+    {
+        String[] sCmd = {"/bin/bash", "-c", Commande};
+
+        System.out.println(sCmd[0] + " " + sCmd[1] + " " + sCmd[2]);
+        Process p = Runtime.getRuntime().exec(sCmd);
+
+        p.waitFor();
+
+        if (p.getErrorStream().available() > 0)
+        {
+            BufferedReader brCommande = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+            System.out.println(brCommande.readLine());
+            brCommande.close();
+        }
+    }
+
+    public synchronized String Resume()
+    {
+        long DureeAllume = m_DureeAllume + (m_Alimente ? System.currentTimeMillis() - m_Allumage : 0);
+
+        return "Modem: " + (m_Alimente ? "allumé" + (m_Attache ? " et sur le réseau" : "") + ", " + m_Baux + " baux" : "coupé") + ", " + m_Allumages + " allumages, "
+             + m_Reutilisations + " réutilisations, allumé " + (DureeAllume / 1000) + " s en tout"
+             + (m_Attachements > 0 ? ", attachement moyen " + (m_AttacheTotale / m_Attachements / 1000) + " s (max " + (m_AttacheMax / 1000) + " s)" : "");
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * @file   AnneauLectures.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  File circulaire hors tas des lectures en transit dans le serveur, des cases de taille fixe lues par chaque étage.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+//File circulaire des lectures en transit dans le serveur: cases de taille fixe dans un tampon hors tas (ByteBuffer.allocateDirect) alloué au démarrage
+//Un seul écrivain (m_tService, qui décode les trames directement dans la prochaine case) et un curseur par étage lecteur (Enregistrement, Liaison)
+//Chaque étage lit toutes les lectures dans l'ordre, après l'étage précédent s'il en a un. Une case n'est réécrite que lorsque tous les étages l'ont lue: si la file est pleine,
+//m_tService suspend la lecture des connexions (refoulement TCP) au lieu de perdre des lectures. Aucun objet n'est créé par lecture.
+public class AnneauLectures
+{
+    static final int TAILLE_CASE = 40;                                      //Octets par lecture (voir les positions ci-dessous)
+    private static final int POS_ID = 0;                                    //2 caractères ASCII
+    private static final int POS_TYPE = 2;
+    private static final int POS_MODE = 3;                                  //ModeDebug à la réception
+    private static final int POS_T = 4;                                     //T, P, H, R en point fixe (entiers de 32 bits)
+    private static final int POS_P = 8;
+    private static final int POS_H = 12;
+    private static final int POS_R = 16;
+    private static final int POS_ENVOYEE = 20;                              //1 quand l'étage Liaison a envoyé la lecture
+    private static final int POS_HEURE_CLIENT = 24;                         //Entiers de 64 bits
+    static final int POS_HEURE_RECEPTION = 32;
+    private static final long TEMPS_ATTENTE = 100;                          //Délai maximal (ms) d'un lecteur qui attend une nouvelle lecture
+
+    private ByteBuffer m_Cases;
+    private int m_NbCases;
+    private int m_Masque;                                                   //m_NbCases - 1, pour trouver la case d'un numéro de lecture
+    private AtomicLong m_Ecrites = new AtomicLong();                        //Nombre de lectures publiées, la prochaine sera écrite dans la case m_Ecrites & m_Masque
+    private final Object m_Signal = new Object();                           //Pour réveiller les lecteurs qui attendent une lecture
+    private volatile int m_EnAttente = 0;                                   //Nombre de lecteurs qui attendent sur m_Signal
+    Etage[] m_Lecteurs = new Etage[0];
+
+    public AnneauLectures(int NbCases)
+    {
+        if (NbCases <= 0 || (NbCases & (NbCases - 1)) != 0)
+        {
+            throw new IllegalArgumentException("Le nombre de cases doit être une puissance de 2: " + NbCases);
+        }
+
+        m_NbCases = NbCases;
+        m_Masque = NbCases - 1;
+        m_Cases = ByteBuffer.allocateDirect(NbCases * TAILLE_CASE);
+    }
+
+    public int Capacite()
+    {
+        return m_NbCases;
+    }
+
+    public long Ecrites()
+    {
+        return m_Ecrites.get();
+    }
+
+    //Nombre de lectures que le lecteur le plus lent n'a pas encore traitées
+    public long Occupation()
+    {
+        long PlusLent = m_Ecrites.get();
+
+        for (Etage Lecteur : m_Lecteurs)
+        {
+            PlusLent = Math.min(PlusLent, Lecteur.Curseur());
+        }
+
+        return m_Ecrites.get() - PlusLent;
+    }
+
+    public boolean EstPlein()
+    {
+        return Occupation() >= m_NbCases;
+    }
+
+    //Copie une lecture dans la prochaine case et la publie aux lecteurs
+    //Appelée par m_tService seulement, après avoir vérifié que la file n'est pas pleine
+    public void Ecrire(Lecture Donnees)
+    {
+        long Numero = m_Ecrites.get();
+
+        EcrireCase(m_Cases, (int)(Numero & m_Masque) * TAILLE_CASE, Donnees);
+
+        m_Ecrites.set(Numero + 1);                                          //Publie la case: les lecteurs voient son contenu une fois ce compteur lu
+        Signaler();
+    }
+
+    //Réveille les lecteurs qui attendent une lecture (publiée, ou traitée par l'étage qu'ils suivent)
+    public void Signaler()
+    {
+        if (m_EnAttente > 0)
+        {
+            synchronized (m_Signal)
+            {
+                m_Signal.notifyAll();
+            }
+        }
+    }
+
+    //Appelée par l'étage Liaison quand il a envoyé la lecture numéro Numero: l'étage Enregistrement, qui le suit, ne la garde pas
+    public void MarquerEnvoyee(long Numero)
+    {
+        m_Cases.put((int)(Numero & m_Masque) * TAILLE_CASE + POS_ENVOYEE, (byte)1);
+    }
+
+    //Copie la lecture numéro Numero dans Destination (réutilisée par le lecteur), la lecture doit avoir été publiée
+    public void Lire(long Numero, Lecture Destination)
+    {
+        LireCase(m_Cases, (int)(Numero & m_Masque) * TAILLE_CASE, Destination);
+    }
+
+    //Une lecture en format binaire de TAILLE_CASE octets à Position dans Cases (aussi le format des enregistrements du journal)
+    static void EcrireCase(ByteBuffer Cases, int Position, Lecture Donnees)
+    {
+        Cases.put(Position + POS_ID, (byte)Donnees.m_ID1);
+        Cases.put(Position + POS_ID + 1, (byte)Donnees.m_ID2);
+        Cases.put(Position + POS_TYPE, (byte)Donnees.m_Type);
+        Cases.put(Position + POS_MODE, (byte)Donnees.m_Mode);
+        Cases.putInt(Position + POS_T, (int)Donnees.m_T);
+        Cases.putInt(Position + POS_P, (int)Donnees.m_P);
+        Cases.putInt(Position + POS_H, (int)Donnees.m_H);
+        Cases.putInt(Position + POS_R, (int)Donnees.m_R);
+        Cases.put(Position + POS_ENVOYEE, (byte)(Donnees.m_Envoyee ? 1 : 0));
+        Cases.putLong(Position + POS_HEURE_CLIENT, Donnees.m_HeureClient);
+        Cases.putLong(Position + POS_HEURE_RECEPTION, Donnees.m_HeureReception);
+    }
+
+    static void LireCase(ByteBuffer Cases, int Position, Lecture Destination)
+    {
+        Destination.m_ID1 = (char)Cases.get(Position + POS_ID);
+        Destination.m_ID2 = (char)Cases.get(Position + POS_ID + 1);
+        Destination.m_Type = Cases.get(Position + POS_TYPE);
+        Destination.m_Mode = Cases.get(Position + POS_MODE);
+        Destination.m_T = Cases.getInt(Position + POS_T);
+        Destination.m_P = Cases.getInt(Position + POS_P);
+        Destination.m_H = Cases.getInt(Position + POS_H);
+        Destination.m_R = Cases.getInt(Position + POS_R);
+        Destination.m_Envoyee = Cases.get(Position + POS_ENVOYEE) != 0;
+        Destination.m_HeureClient = Cases.getLong(Position + POS_HEURE_CLIENT);
+        Destination.m_HeureReception = Cases.getLong(Position + POS_HEURE_RECEPTION);
+    }
+
+    //Nombre de lectures qu'un étage peut traiter: celles publiées, et traitées par l'étage Precedent s'il n'est pas null
+    long Disponibles(Etage Precedent)
+    {
+        return Precedent != null ? Math.min(m_Ecrites.get(), Precedent.Curseur()) : m_Ecrites.get();
+    }
+
+    //Attend qu'une lecture plus récente que Numero soit disponible pour l'étage qui suit Precedent (null: aucun), au plus Delai ms (0 pour attendre
+    //sans limite). Retourne le nombre de lectures disponibles, qui n'est pas plus grand que Numero si le délai est écoulé
+    public long Attendre(long Numero, Etage Precedent, long Delai) throws InterruptedException
+    {
+        long Ecrites = Disponibles(Precedent);
+
+        if (Ecrites > Numero)
+        {
+            return Ecrites;
+        }
+
+        long Fin = System.currentTimeMillis() + Delai;
+
+        synchronized (m_Signal)
+        {
+            m_EnAttente++;
+
+            try
+            {
+                while ((Ecrites = Disponibles(Precedent)) <= Numero)
+                {
+                    long Attente = TEMPS_ATTENTE;
+
+                    if (Delai > 0)
+                    {
+                        Attente = Math.min(Attente, Fin - System.currentTimeMillis());
+
+                        if (Attente <= 0)
+                        {
+                            break;
+                        }
+                    }
+
+                    m_Signal.wait(Attente);
+                }
+            }
+
+            finally
+            {
+                m_EnAttente--;
+            }
+        }
+
+        return Ecrites;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * @file   BailModem.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Bail sur l'alimentation du modem (AlimentationModem): le modem reste alimenté tant qu'un bail n'est pas libéré.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+//Bail pris sur l'alimentation du modem, Liberer peut être appelée plus d'une fois
+public class BailModem
+{
+    private AlimentationModem m_Modem;
+    private String m_Utilisateur;
+    private boolean m_Libere = false;
+
+    BailModem(AlimentationModem Modem, String Utilisateur)
+    {
+        m_Modem = Modem;
+        m_Utilisateur = Utilisateur;
+    }
+
+    public synchronized void Liberer()
+    {
+        if (m_Libere == false)
+        {
+            m_Libere = true;
+            m_Modem.Liberer(m_Utilisateur);
+        }
+    }
+}
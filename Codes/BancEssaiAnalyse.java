@@ -0,0 +1,148 @@
+/**
+ * @file   BancEssaiAnalyse.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Banc d'essai qui compare l'analyse des trames texte "ID,T,P,H,R" du serveur: le chemin Regex d'origine (Pattern.compile, Matcher, group())
+ *         et l'analyseur en une passe de Serveur.AnalyserTrameTexte. Vérifie d'abord que les deux acceptent et rejettent les mêmes trames,
+ *         puis affiche le temps et le nombre d'octets alloués par trame pour chacun.
+ *         Le code doit être compilé avec /javac BancEssaiAnalyse.java (dans le même dossier que Serveur.java) et lancé avec /java BancEssaiAnalyse
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.lang.management.ManagementFactory;
+import java.nio.*;
+import java.util.regex.*;
+
+public class BancEssaiAnalyse
+{
+    static final int NB_ITERATIONS = 2000000;                       //Nombre de trames analysées pour chaque mesure
+    static final int NB_RECHAUFFEMENT = 200000;                     //Trames analysées avant les mesures (compilation JIT)
+
+    //"Pattern" d'origine du serveur
+    static final String Pattern_TrameClient = "^(\\w{2}),(\\d+\\.?(?:\\d+)?),(\\d+\\.?(?:\\d+)?),(\\d+\\.?(?:\\d+)?),(\\d+\\.?(?:\\d+)?)$";
+
+    //Trames envoyées par les clients, puis trames que le "pattern" d'origine rejetait
+    static final String[] TRAMES_VALIDES = { "CE,0,0,0,87", "EC,21.5625,0,0,62", "EN,21.123,101.325,45.678,0", "CE,0,0,0,0", "EN,3.,1.0,0.12345678,12\n" };
+    static final String[] TRAMES_INVALIDES = { "", "C,0,0,0,0", "CE,0,0,0", "CE,0,0,0,0,0", "CE,-1,0,0,0", "CE,.5,0,0,0", "CE,0,0,0,8a", "C-,0,0,0,0", "CE;0,0,0,0", "CE,1..2,0,0,0", "CE,0,0,0,0 " };
+
+    static com.sun.management.ThreadMXBean Mesures = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args)
+    {
+        Lecture Destination = new Lecture();
+        int NbErreurs = 0;
+
+        for (String Texte : TRAMES_VALIDES)
+        {
+            NbErreurs += Verifier(Texte, true, Destination);
+        }
+
+        for (String Texte : TRAMES_INVALIDES)
+        {
+            NbErreurs += Verifier(Texte, false, Destination);
+        }
+
+        System.out.println("Vérification: " + (TRAMES_VALIDES.length + TRAMES_INVALIDES.length) + " trames, " + NbErreurs + " différences avec le \"pattern\" d'origine");
+
+        ByteBuffer[] Tampons = new ByteBuffer[TRAMES_VALIDES.length];
+        for (int i = 0; i < Tampons.length; i++)
+        {
+            Tampons[i] = VersTampon(TRAMES_VALIDES[i]);
+        }
+
+        MesurerRegex(NB_RECHAUFFEMENT);
+        MesurerAnalyseur(Tampons, Destination, NB_RECHAUFFEMENT);
+
+        long Debut = System.nanoTime();
+        long Alloues = Mesures.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long Acceptees = MesurerRegex(NB_ITERATIONS);
+        Afficher("Regex d'origine", Acceptees, System.nanoTime() - Debut, Mesures.getThreadAllocatedBytes(Thread.currentThread().getId()) - Alloues);
+
+        Debut = System.nanoTime();
+        Alloues = Mesures.getThreadAllocatedBytes(Thread.currentThread().getId());
+        Acceptees = MesurerAnalyseur(Tampons, Destination, NB_ITERATIONS);
+        Afficher("AnalyserTrameTexte", Acceptees, System.nanoTime() - Debut, Mesures.getThreadAllocatedBytes(Thread.currentThread().getId()) - Alloues);
+    }
+
+    //Compare le résultat de l'analyseur avec celui du "pattern" d'origine (acceptation et valeurs), retourne 1 s'ils diffèrent
+    static int Verifier(String Texte, boolean Attendu, Lecture Destination)
+    {
+        Matcher m1 = Pattern.compile(Pattern_TrameClient).matcher(Texte);
+        boolean Regex = m1.find();
+        ByteBuffer Tampon = VersTampon(Texte);
+        boolean Analyseur = Serveur.AnalyserTrameTexte(Tampon, 0, Tampon.limit(), Destination);
+
+        if (Regex != Attendu || Analyseur != Attendu)
+        {
+            System.out.println("Différence pour \"" + Texte + "\": Regex " + Regex + ", AnalyserTrameTexte " + Analyseur + ", attendu " + Attendu);
+            return 1;
+        }
+
+        if (Regex && (Destination.m_T != Trame.PointFixe(Double.parseDouble(m1.group(2))) || Destination.m_R != Trame.PointFixe(Double.parseDouble(m1.group(5)))))
+        {
+            System.out.println("Valeurs différentes pour \"" + Texte + "\"");
+            return 1;
+        }
+
+        return 0;
+    }
+
+    //Le chemin d'origine de Serveur.run(): compile le "pattern", crée un Matcher et extrait les cinq groupes pour chaque trame
+    static long MesurerRegex(int NbIterations)
+    {
+        long Acceptees = 0;
+        long Somme = 0;
+
+        for (int i = 0; i < NbIterations; i++)
+        {
+            Pattern r1 = Pattern.compile(Pattern_TrameClient);
+            Matcher m1 = r1.matcher(TRAMES_VALIDES[i % TRAMES_VALIDES.length]);
+
+            if (m1.find())
+            {
+                Acceptees++;
+                Somme += m1.group(1).charAt(0) + m1.group(2).length() + m1.group(3).length() + m1.group(4).length() + m1.group(5).length();
+            }
+        }
+
+        return Acceptees + (Somme == 0 ? 1 : 0);                    //Utilise Somme pour que le JIT ne retire pas les appels à group()
+    }
+
+    static long MesurerAnalyseur(ByteBuffer[] Tampons, Lecture Destination, int NbIterations)
+    {
+        long Acceptees = 0;
+        long Somme = 0;
+
+        for (int i = 0; i < NbIterations; i++)
+        {
+            ByteBuffer Tampon = Tampons[i % Tampons.length];
+
+            if (Serveur.AnalyserTrameTexte(Tampon, 0, Tampon.limit(), Destination))
+            {
+                Acceptees++;
+                Somme += Destination.m_ID1 + Destination.m_T + Destination.m_R;
+            }
+        }
+
+        return Acceptees + (Somme == 0 ? 1 : 0);
+    }
+
+    static ByteBuffer VersTampon(String Texte)
+    {
+        byte[] Octets = Texte.getBytes();
+        ByteBuffer Tampon = ByteBuffer.allocateDirect(Octets.length);   //Direct comme les tampons de réception du serveur
+
+        Tampon.put(Octets);
+        Tampon.flip();
+
+        return Tampon;
+    }
+
+    static void Afficher(String Nom, long Acceptees, long Duree, long Alloues)
+    {
+        System.out.println(Nom + ": " + NB_ITERATIONS + " trames (" + Acceptees + " acceptées), " + (Duree / NB_ITERATIONS) + " ns/trame, " + (Alloues / NB_ITERATIONS) + " octets alloués/trame");
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * @file   BancEssaiCompression.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Banc d'essai qui compare le nombre d'octets envoyés à Hologram par lecture: une trame json par lecture (ancien envoi de Data.txt),
+ *         les lots json (LotEnvoi) et les lots compacts (CompressionLot). Chaque lot compact est décodé et comparé aux lectures d'origine.
+ *         Les lectures viennent d'un Data.txt enregistré (premier argument) ou sont simulées (centrifugeuse et écrémeuse à chaque minute,
+ *         entrepôt à chaque heure) si aucun fichier n'est donné.
+ *         Le code doit être compilé avec /javac Serveur.java BancEssaiCompression.java (dans le même dossier que Serveur.java)
+ *         et lancé avec /java BancEssaiCompression [Data.txt]
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.nio.*;
+import java.nio.file.*;
+import java.time.*;
+import java.util.*;
+import java.util.regex.*;
+
+public class BancEssaiCompression
+{
+    static final int TAILLE_MAX = 4000;                             //envoi.taille_max par défaut
+    static final int NB_SIMULEES = 20000;
+
+    //Trame json d'une lecture, telle qu'écrite dans Data.txt (avec ou sans les \ devant les guillemets)
+    static final Pattern TRAME_JSON = Pattern.compile("\"ID\":\"(\\w{2})\", \"T\":\"([-\\d.]+)\", \"P\":\"([-\\d.]+)\", \"H\":\"([-\\d.]+)\", \"R\":\"([-\\d.]+)\", \"D\":\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception
+    {
+        List<Lecture> Lectures = args.length > 0 ? Charger(Paths.get(args[0])) : Simuler(NB_SIMULEES);
+
+        System.out.println(Lectures.size() + " lectures" + (args.length > 0 ? " de " + args[0] : " simulées"));
+
+        if (Lectures.isEmpty())
+        {
+            return;
+        }
+
+        EncodeurJson Encodeur = new EncodeurJson();
+        ByteBuffer Json = ByteBuffer.allocate(EncodeurJson.TAILLE_MAX);
+        long OctetsTrames = 0;
+
+        for (Lecture Donnees : Lectures)
+        {
+            Json.clear();
+            Encodeur.Encoder(Donnees, Json);
+            OctetsTrames += Json.position();
+        }
+
+        Afficher("Une trame json par lecture", Lectures.size(), Lectures.size(), OctetsTrames, 0);
+
+        for (String Format : new String[] { "json", "compact" })
+        {
+            LotEnvoi Lot = new LotEnvoi(TAILLE_MAX, Format);
+            Lecture[] Decodees = new Lecture[LotEnvoi.MAX_LECTURES];
+            long Octets = 0;
+            long Messages = 0;
+            long Duree = 0;
+            int Erreurs = 0;
+            int Suivante = 0;
+
+            for (int i = 0; i < Decodees.length; i++)
+            {
+                Decodees[i] = new Lecture();
+            }
+
+            while (Suivante < Lectures.size())
+            {
+                int Premiere = Suivante;
+                long Debut = System.nanoTime();
+
+                Lot.Vider();
+
+                while (Suivante < Lectures.size() && Lot.Ajouter(Lectures.get(Suivante)))
+                {
+                    Suivante++;
+                }
+
+                String Message = Lot.Message();
+
+                Duree += System.nanoTime() - Debut;
+                Octets += Message.length();
+                Messages++;
+
+                if (Message.length() != Lot.Taille() || (Message.length() > TAILLE_MAX && Lot.NbLectures() > 1))
+                {
+                    System.out.println("Taille du message " + Message.length() + " différente de la taille calculée " + Lot.Taille());
+                    Erreurs++;
+                }
+
+                if (Format.equals("compact"))
+                {
+                    Erreurs += Verifier(Lectures.subList(Premiere, Suivante), Decodees, CompressionLot.Decoder(Message, Decodees));
+                }
+            }
+
+            Afficher("Lots " + Format, Lectures.size(), Messages, Octets, Duree);
+
+            if (Format.equals("compact"))
+            {
+                System.out.println("Vérification du décodage: " + Erreurs + " différences");
+            }
+        }
+    }
+
+    //Les lectures décodées sont groupées par appareil: compare chaque appareil dans l'ordre du lot
+    static int Verifier(List<Lecture> Originales, Lecture[] Decodees, int NbDecodees)
+    {
+        int Erreurs = 0;
+        int Position = 0;
+        List<String> Appareils = new ArrayList<String>();
+
+        for (Lecture Donnees : Originales)
+        {
+            if (Appareils.contains(Donnees.ID()) == false)
+            {
+                Appareils.add(Donnees.ID());
+            }
+        }
+
+        for (String Appareil : Appareils)
+        {
+            for (Lecture Donnees : Originales)
+            {
+                if (Donnees.ID().equals(Appareil))
+                {
+                    Lecture D = Position < NbDecodees ? Decodees[Position] : null;
+
+                    if (D == null || D.ID().equals(Appareil) == false || D.m_T != Donnees.m_T || D.m_P != Donnees.m_P || D.m_H != Donnees.m_H
+                        || D.m_R != Donnees.m_R || D.m_HeureReception != Donnees.m_HeureReception)
+                    {
+                        Erreurs++;
+                    }
+
+                    Position++;
+                }
+            }
+        }
+
+        return Erreurs + (Position != NbDecodees ? 1 : 0);
+    }
+
+    static List<Lecture> Charger(Path Fichier) throws Exception
+    {
+        List<Lecture> Lectures = new ArrayList<Lecture>();
+        String Texte = new String(Files.readAllBytes(Fichier), "UTF-8").replace("\\\"", "\"");
+        Matcher m = TRAME_JSON.matcher(Texte);
+
+        while (m.find())
+        {
+            Lecture Donnees = new Lecture();
+
+            Donnees.m_ID1 = m.group(1).charAt(0);
+            Donnees.m_ID2 = m.group(1).charAt(1);
+            Donnees.m_T = Trame.PointFixe(Double.parseDouble(m.group(2)));
+            Donnees.m_P = Trame.PointFixe(Double.parseDouble(m.group(3)));
+            Donnees.m_H = Trame.PointFixe(Double.parseDouble(m.group(4)));
+            Donnees.m_R = Trame.PointFixe(Double.parseDouble(m.group(5)));
+            Donnees.m_HeureReception = LocalDateTime.parse(m.group(6)).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            Lectures.add(Donnees);
+        }
+
+        return Lectures;
+    }
+
+    //Centrifugeuse et écrémeuse: RPM moyen à chaque minute. Entrepôt: BME280 à chaque heure (58.75 minutes + temps de lecture)
+    static List<Lecture> Simuler(int NbLectures)
+    {
+        List<Lecture> Lectures = new ArrayList<Lecture>();
+        Random Hasard = new Random(2019);
+        long Heure = LocalDateTime.of(2019, 2, 14, 8, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long ProchaineCE = Heure;
+        long ProchaineEC = Heure + 20000;
+        long ProchaineEN = Heure + 40000;
+        double RpmCE = 87;
+        double RpmEC = 62;
+        double T = 21.5, P = 101.325, H = 45.6;
+
+        while (Lectures.size() < NbLectures)
+        {
+            long Prochaine = Math.min(ProchaineCE, Math.min(ProchaineEC, ProchaineEN));
+
+            if (Prochaine == ProchaineCE)
+            {
+                RpmCE = Math.max(0, RpmCE + Hasard.nextGaussian() * 0.5);
+                Lectures.add(Simulee("CE", 0, 0, 0, Math.rint(RpmCE * 100) / 100, Prochaine));
+                ProchaineCE += 60000 + Hasard.nextInt(40);
+            }
+
+            else if (Prochaine == ProchaineEC)
+            {
+                RpmEC = Math.max(0, RpmEC + Hasard.nextGaussian() * 0.5);
+                Lectures.add(Simulee("EC", Math.rint((18 + Hasard.nextGaussian() * 0.2) * 16) / 16, 0, 0, Math.rint(RpmEC * 100) / 100, Prochaine));
+                ProchaineEC += 60000 + Hasard.nextInt(40);
+            }
+
+            else
+            {
+                T += Hasard.nextGaussian() * 0.3;
+                P += Hasard.nextGaussian() * 0.05;
+                H += Hasard.nextGaussian() * 0.8;
+                Lectures.add(Simulee("EN", Math.rint(T * 1000) / 1000, Math.rint(P * 1000) / 1000, Math.rint(H * 1000) / 1000, 0, Prochaine));
+                ProchaineEN += 3525000 + 1500 + Hasard.nextInt(200);
+            }
+        }
+
+        return Lectures;
+    }
+
+    static Lecture Simulee(String ID, double T, double P, double H, double R, long Heure)
+    {
+        Lecture Donnees = new Lecture();
+
+        Donnees.m_ID1 = ID.charAt(0);
+        Donnees.m_ID2 = ID.charAt(1);
+        Donnees.m_T = Trame.PointFixe(T);
+        Donnees.m_P = Trame.PointFixe(P);
+        Donnees.m_H = Trame.PointFixe(H);
+        Donnees.m_R = Trame.PointFixe(R);
+        Donnees.m_HeureReception = Heure;
+
+        return Donnees;
+    }
+
+    static void Afficher(String Nom, long NbLectures, long Messages, long Octets, long Duree)
+    {
+        System.out.println(Nom + ": " + Messages + " messages, " + Octets + " octets, " + String.format("%.1f", (double)Octets / NbLectures) + " octets/lecture"
+                         + (Duree > 0 ? ", " + (Duree / NbLectures) + " ns/lecture" : ""));
+    }
+}
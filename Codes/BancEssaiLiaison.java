@@ -0,0 +1,103 @@
+/**
+ * @file   BancEssaiLiaison.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Banc d'essai du débit et des reprises de l'envoi, sans modem: des lectures simulées (BancEssaiCompression.Simuler) sont groupées
+ *         en lots (LotEnvoi) et envoyées par une LiaisonMontante, avec jusqu'à [fenêtre] lots en vol (FenetreEnvoi, comme EnvoieInformations).
+ *         Un lot refusé est réessayé après DELAI_REPRISE. Le curseur (dans un dossier temporaire) doit finir après la dernière lecture.
+ *         Sans argument, un RecepteurEssai est démarré sur un port libre avec de la latence et des erreurs, et la LiaisonHttp l'utilise.
+ *         Avec une URL, les lots sont envoyés à cette adresse. Avec "hologram", ils passent par LiaisonHologram (sur le Pi seulement).
+ *         Le code doit être compilé avec /javac Serveur.java BancEssaiLiaison.java (dans le même dossier que Serveur.java)
+ *         et lancé avec /java BancEssaiLiaison [url | hologram] [format] [nombre de lectures] [fenêtre]
+ *
+ * @version 1.0 : Première version
+ * @version 1.1 : Attend que LiaisonHologram.py soit prêt (PRET) au lieu de 5 secondes
+ * @version 1.2 : Envois en vol dans une FenetreEnvoi, clés d'idempotence
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.nio.file.*;
+import java.util.*;
+
+public class BancEssaiLiaison
+{
+    static final long DELAI_REPRISE = 100;                          //Délai (ms) avant de réessayer un message refusé (30 s sur le Pi)
+    static final long LATENCE = 50;                                 //Paramètres du récepteur d'essai démarré par le banc
+    static final double TAUX_ERREUR = 0.05;
+    static final double TAUX_COUPURE = 0.02;
+    static final long ATTENTE_PRET = 60000;                         //Attente maximale (ms) du processus LiaisonHologram.py
+
+    public static void main(String[] args) throws Exception
+    {
+        String Cible = args.length > 0 ? args[0] : "";
+        String Format = args.length > 1 ? args[1] : "json";
+        List<Lecture> Lectures = BancEssaiCompression.Simuler(args.length > 2 ? Integer.parseInt(args[2]) : 20000);
+        int Taille = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        RecepteurEssai Recepteur = null;
+        LiaisonMontante Liaison;
+
+        if (Cible.equals("hologram"))
+        {
+            LiaisonHologram Hologram = new LiaisonHologram();
+
+            if (Hologram.AttendrePret(ATTENTE_PRET) == false)       //Attend que LiaisonHologram.py ait répondu PRET
+            {
+                System.out.println("LiaisonHologram.py pas prêt après " + ATTENTE_PRET + " ms, les messages passent par la commande hologram");
+            }
+
+            Liaison = Hologram;
+        }
+
+        else
+        {
+            if (Cible.isEmpty())
+            {
+                Recepteur = new RecepteurEssai(0, LATENCE, TAUX_ERREUR, TAUX_COUPURE, null);
+                Cible = "http://localhost:" + Recepteur.Port() + "/lectures";
+                System.out.println("Récepteur d'essai: latence " + LATENCE + " ms, " + (int)(TAUX_ERREUR * 100) + " % d'erreurs, " + (int)(TAUX_COUPURE * 100) + " % de coupures");
+            }
+
+            Liaison = new LiaisonHttp(Cible, 10000);
+        }
+
+        Path Dossier = Files.createTempDirectory("BancEssaiLiaison");
+        CurseurEnvoi Curseur = new CurseurEnvoi(Dossier, 0);
+        FenetreEnvoi Fenetre = new FenetreEnvoi(Liaison, Curseur, Taille, DELAI_REPRISE);
+        LotEnvoi Lot = new LotEnvoi(BancEssaiCompression.TAILLE_MAX, Format);
+        long Messages = 0;
+        int Suivante = 0;
+        long Debut = System.nanoTime();
+
+        while (Suivante < Lectures.size())
+        {
+            Lot.Vider("banc-0-" + Suivante);
+
+            while (Suivante < Lectures.size() && Lot.Ajouter(Lectures.get(Suivante)))
+            {
+                Suivante++;
+            }
+
+            Fenetre.Ajouter(0, Suivante, Lot.Message(), Lot.Cle());
+            Messages++;
+        }
+
+        Fenetre.Terminer();
+
+        long Duree = Math.max((System.nanoTime() - Debut) / 1000000, 1);
+
+        System.out.println(Lectures.size() + " lectures en " + Messages + " messages (" + Format + ", fenêtre de " + Taille + "), " + Fenetre.m_Reprises + " reprises, au plus "
+                         + Fenetre.m_EnVolMax + " en vol, en " + Duree + " ms: " + (Messages * 1000 / Duree) + " messages/s, " + (Lectures.size() * 1000L / Duree) + " lectures/s");
+        System.out.println("Curseur: position " + Curseur.m_Position + (Curseur.m_Position == Lectures.size() ? " (toutes les lectures confirmées)" : " (attendu: " + Lectures.size() + ")"));
+        System.out.println(Liaison.Resume());
+
+        if (Recepteur != null)
+        {
+            System.out.println(Recepteur.Resume());
+            Recepteur.Arreter();
+        }
+
+        Files.deleteIfExists(Dossier.resolve("curseur"));
+        Files.deleteIfExists(Dossier);
+    }
+}
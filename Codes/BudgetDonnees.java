@@ -0,0 +1,208 @@
+/**
+ * @file   BudgetDonnees.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Budget de données cellulaires: octets envoyés comptés par jour et par mois, envoi réduit quand le budget s'épuise.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Properties;
+
+//Compte les octets de chaque message envoyé par la LiaisonMontante (chaque essai, plus budget.surcout_octets pour les en-têtes et TCP/IP),
+//par jour et par mois du calendrier, et les compare aux budgets (budget.quotidien_octets, budget.mensuel_octets, 0: pas de budget).
+//Les totaux sont enregistrés dans budget.fichier après chaque message (remplacé de façon atomique), pour survivre aux redémarrages.
+//Le niveau d'envoi baisse à mesure que le budget le plus entamé s'épuise, EnvoieInformations l'applique:
+// - compression        : 50 % du budget utilisé, ou la projection à la fin du mois dépasse le budget mensuel: format compact
+// - lectures réduites  : 80 %: en plus, les mesures sont remplacées par les cumuls de chaque appareil par budget.intervalle_reduit_ms
+// - alarmes seulement  : 95 %: le journal n'est plus envoyé (il est gardé sur la carte SD jusqu'à la prochaine période)
+//Peut être appelée par plusieurs threads (FenetreEnvoi, étage Liaison en mode debug).
+public class BudgetDonnees implements LiaisonMontante
+{
+    static final int NORMAL = 0;
+    static final int COMPRESSION = 1;
+    static final int REDUIT = 2;
+    static final int ALARMES = 3;
+    static final String[] NOMS = { "normal", "compression", "lectures réduites", "alarmes seulement" };
+
+    LiaisonMontante m_Liaison;
+    private Path m_Fichier = Paths.get(Configuration.Texte("budget.fichier", "/home/pi/ProjetNepal/budget.properties"));
+    private long m_BudgetJour = Configuration.Entier("budget.quotidien_octets", 1000000);
+    private long m_BudgetMois = Configuration.Entier("budget.mensuel_octets", 10000000);
+    private long m_Surcout = Configuration.Entier("budget.surcout_octets", 100);
+
+    private java.time.LocalDate m_Jour = java.time.LocalDate.now();        //Jour des octets comptés dans m_OctetsJour
+    private long m_OctetsJour = 0;
+    private long m_OctetsMois = 0;
+    private long m_MessagesMois = 0;
+    private volatile int m_Niveau = NORMAL;
+
+    public BudgetDonnees(LiaisonMontante Liaison)
+    {
+        m_Liaison = Liaison;
+        Charger();
+    }
+
+    public boolean Envoyer(String Message) throws IOException, InterruptedException
+    {
+        return Envoyer(Message, null);
+    }
+
+    public boolean Envoyer(String Message, String Cle) throws IOException, InterruptedException
+    {
+        Compter(Message.getBytes("UTF-8").length + m_Surcout);             //Avant l'envoi: un message pas confirmé a pu être transmis quand même
+
+        return m_Liaison.Envoyer(Message, Cle);
+    }
+
+    synchronized void Compter(long Octets)
+    {
+        Periode(java.time.LocalDate.now());
+        m_OctetsJour += Octets;
+        m_OctetsMois += Octets;
+        m_MessagesMois++;
+        Niveau(java.time.LocalDateTime.now());
+        Enregistrer();
+    }
+
+    //Niveau d'envoi permis par le budget (NORMAL à ALARMES), change aussi au début d'un nouveau jour ou mois
+    public synchronized int Niveau()
+    {
+        if (Periode(java.time.LocalDate.now()))
+        {
+            Enregistrer();
+        }
+
+        return Niveau(java.time.LocalDateTime.now());
+    }
+
+    private int Niveau(java.time.LocalDateTime Maintenant)
+    {
+        double Utilise = Math.max(Fraction(m_OctetsJour, m_BudgetJour), Fraction(m_OctetsMois, m_BudgetMois));
+        int Niveau = NORMAL;
+
+        if (Utilise >= 0.95)
+        {
+            Niveau = ALARMES;
+        }
+
+        else if (Utilise >= 0.8)
+        {
+            Niveau = REDUIT;
+        }
+
+        else if (Utilise >= 0.5 || (m_BudgetMois > 0 && Projection(Maintenant) > m_BudgetMois))
+        {
+            Niveau = COMPRESSION;
+        }
+
+        if (Niveau != m_Niveau)
+        {
+            System.out.println("Budget de données: niveau d'envoi " + NOMS[m_Niveau] + " -> " + NOMS[Niveau]);
+            m_Niveau = Niveau;
+        }
+
+        return Niveau;
+    }
+
+    static double Fraction(long Octets, long Budget)
+    {
+        return Budget > 0 ? (double)Octets / Budget : 0;
+    }
+
+    //Octets prévus à la fin du mois au rythme moyen depuis le début du mois (au moins une journée écoulée, pour ne pas exagérer le premier envoi)
+    long Projection(java.time.LocalDateTime Maintenant)
+    {
+        java.time.LocalDateTime Debut = Maintenant.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        double Ecoule = Math.max(java.time.Duration.between(Debut, Maintenant).toMillis(), 86400000);
+        double Mois = java.time.Duration.between(Debut, Debut.plusMonths(1)).toMillis();
+
+        return (long)(m_OctetsMois * Math.max(Mois / Ecoule, 1));
+    }
+
+    //Remet les compteurs à 0 au début d'un nouveau jour ou d'un nouveau mois, retourne true s'ils ont changé
+    private boolean Periode(java.time.LocalDate Aujourdhui)
+    {
+        if (Aujourdhui.equals(m_Jour))
+        {
+            return false;
+        }
+
+        if (Aujourdhui.getYear() != m_Jour.getYear() || Aujourdhui.getMonth() != m_Jour.getMonth())
+        {
+            m_OctetsMois = 0;
+            m_MessagesMois = 0;
+        }
+
+        m_OctetsJour = 0;
+        m_Jour = Aujourdhui;
+
+        return true;
+    }
+
+    private void Charger()
+    {
+        Properties Totaux = new Properties();
+
+        try (InputStream Entree = Files.newInputStream(m_Fichier))
+        {
+            Totaux.load(Entree);
+            m_Jour = java.time.LocalDate.parse(Totaux.getProperty("jour"));
+            m_OctetsJour = Long.parseLong(Totaux.getProperty("octets_jour"));
+            m_OctetsMois = Long.parseLong(Totaux.getProperty("octets_mois"));
+            m_MessagesMois = Long.parseLong(Totaux.getProperty("messages_mois"));
+            Periode(java.time.LocalDate.now());
+        }
+
+        catch (NoSuchFileException e)
+        {
+            System.out.println("Pas de fichier " + m_Fichier + ", budget de données compté à partir de 0");
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString() + ", budget de données compté à partir de 0");
+            m_Jour = java.time.LocalDate.now();
+        }
+
+        Niveau(java.time.LocalDateTime.now());
+        System.out.println(Resume());
+    }
+
+    private void Enregistrer()
+    {
+        Properties Totaux = new Properties();
+        Path Temporaire = m_Fichier.resolveSibling(m_Fichier.getFileName() + ".tmp");
+
+        Totaux.setProperty("jour", m_Jour.toString());
+        Totaux.setProperty("octets_jour", "" + m_OctetsJour);
+        Totaux.setProperty("octets_mois", "" + m_OctetsMois);
+        Totaux.setProperty("messages_mois", "" + m_MessagesMois);
+
+        try
+        {
+            try (OutputStream Sortie = Files.newOutputStream(Temporaire))
+            {
+                Totaux.store(Sortie, "Totaux de BudgetDonnees");
+            }
+
+            Files.move(Temporaire, m_Fichier, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    public synchronized String Resume()
+    {
+        return "Budget de données: aujourd'hui " + m_OctetsJour + (m_BudgetJour > 0 ? " / " + m_BudgetJour : "") + " octets, ce mois " + m_OctetsMois + (m_BudgetMois > 0 ? " / " + m_BudgetMois : "")
+             + " octets en " + m_MessagesMois + " messages, projection à la fin du mois " + Projection(java.time.LocalDateTime.now()) + " octets, niveau d'envoi: " + NOMS[m_Niveau];
+    }
+}
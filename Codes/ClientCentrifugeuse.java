@@ -10,6 +10,7 @@
  * @version 1.0 : Première version
  * @version 1.1 : Distinction entre les codes clients. Ce code sera seulement utilisé par la centrifugeuse (RPM)
  * @version 1.2 : N'envoie pas une trame json au serveur.
+ * @version 1.3 : Garde la connexion au serveur ouverte et envoie des trames binaires (Trame.java doit être dans le même dossier)
  * Environnement de développement: GitKraken
  * Compilateur: javac (Java version 1.8)
  * Matériel: Raspberry Pi Zero W
@@ -23,6 +24,7 @@ import java.io.*;
 public class ClientCentrifugeuse
 {
     Socket m_sClient;           						//Référence de l'objet Socket
+	OutputStream m_osOut;								//Flux vers le serveur, gardé ouvert entre les envois
 	
 	public Shutdown m_objShutdown;						//Objet pour la classe qui éteint le Pi après un délai d'inactivité
 	public CalculeRPM m_objCalculeRPM;					//Objet pour la classe qui calcule le RPM avec la reed switch branchée sur GPIO 3 et GND
@@ -80,7 +82,7 @@ public class ClientCentrifugeuse
 				{
 					while(gpioReadBit("gpio2") == 0);
 					Thread.sleep(25); //Rebond
-					EnvoyerAuServeur(m_IP, m_Port, String.valueOf("CE,0,0,0,0"));					
+					EnvoyerAuServeur(m_IP, m_Port, "CE", Trame.TYPE_BOUTON, 0, 0, 0, 0);					
 				}
 				
 				Thread.sleep(100); 
@@ -94,22 +96,47 @@ public class ClientCentrifugeuse
     }
 	
 	//Envoie le RPM au serveur (Pi 3b)
+	//La connexion au serveur reste ouverte entre les envois, elle est refaite seulement si elle à été perdue
 	//Fonction faite par Pierre Bergeron (Modifiée par Samuel Montminy)
-	public void EnvoyerAuServeur(String sIP, int nPort, String Message)
+	//Les valeurs sont envoyées dans une trame binaire (voir Trame.java), Type est Trame.TYPE_MESURE, Trame.TYPE_BOUTON ou Trame.TYPE_ARRET
+	public synchronized void EnvoyerAuServeur(String sIP, int nPort, String ID, int Type, double T, double P, double H, double R)
 	{   
         try
         {		
 			///*		Mettre en commentaire le bloc pour ne pas envoyer au serveur<- DÉBUT DU BLOC
-			System.out.println(Message + " -> sera envoyé au serveur");
-            m_sClient = new Socket(sIP, nPort);                                     //Objet Socket pour établir la connexion au miniserveur
-            
-            OutputStream osOut = m_sClient.getOutputStream();                       //Requête vers le serveur... (flux de données)
-            ObjectOutputStream oosOut = new ObjectOutputStream(osOut);
-            oosOut.writeObject(Message);
+			System.out.println(ID + "," + T + "," + P + "," + H + "," + R + " -> sera envoyé au serveur");
+			byte[] Octets = Trame.Encoder(ID, Type, T, P, H, R);
+
+			for (int Essai = 1; Essai <= 2; Essai++)                                 //Deuxième essai avec une nouvelle connexion si le serveur à fermé l'ancienne
+			{
+				try
+				{
+					if (m_osOut != null && ServeurDeconnecte())
+					{
+						FermerConnexion();                                               //Le serveur a été redémarré: la trame serait perdue dans l'ancienne connexion
+					}
+
+					if (m_osOut == null)
+					{
+						m_sClient = new Socket(sIP, nPort);                             //Objet Socket pour établir la connexion au miniserveur
+						m_sClient.setTcpNoDelay(true);                                  //Envoie chaque trame tout de suite
+						m_osOut = m_sClient.getOutputStream();                          //Requête vers le serveur... (flux de données)
+					}
+
+					m_osOut.write(Octets);                                           //Une seule écriture par trame (TCP_NODELAY)
+					break;
+				}
+
+				catch (IOException e)
+				{
+					FermerConnexion();
 
-            //Fermeture des objets de flux de données
-            oosOut.close();
-            osOut.close();
+					if (Essai == 2)
+					{
+						throw e;
+					}
+				}
+			}
 			//*/																	//<- FIN DU BLOC
         }
         
@@ -131,6 +158,43 @@ public class ClientCentrifugeuse
         }
 	}
 
+	//Vrai si le serveur a fermé la connexion (fin de flux): le serveur n'envoie jamais rien aux clients, la lecture n'attend que 1 ms
+	//Une écriture dans une connexion fermée par le serveur réussit quand même, elle ne lance une IOException qu'à l'écriture suivante
+	boolean ServeurDeconnecte() throws IOException
+	{
+		m_sClient.setSoTimeout(1);
+
+		try
+		{
+			return m_sClient.getInputStream().read() == -1;
+		}
+
+		catch (SocketTimeoutException e)
+		{
+			return false;                                                        //Rien à lire: la connexion est encore ouverte
+		}
+	}
+
+	//Ferme la connexion au serveur, elle sera refaite au prochain envoi
+	void FermerConnexion()
+	{
+		try
+		{
+			if (m_sClient != null)
+			{
+				m_sClient.close();
+			}
+		}
+
+		catch (IOException e)
+		{
+			System.out.println(e.toString());
+		}
+
+		m_sClient = null;
+		m_osOut = null;
+	}
+
     public static void main(String[] args)
     {
         int argc = 0;																//Variable pour le compte du nombre d'arguments lors de l'appel du code
@@ -480,7 +544,7 @@ class EnvoieMoyenne implements Runnable
 
 					//ID (CE) = Centrifugeuse, T,P,H à 0 puisque nous nous en servons pas. C'est une structure de fichier json qui sera ensuite transformée en fichier csv par Hologram
 					//Cette string sera envoyée au serveur qui l'envoiera ensuite à Hologram, qui lui va l'envoyer à S3 puis à QuickSight en fichier csv
-					m_Parent.EnvoyerAuServeur(m_Parent.m_IP, m_Parent.m_Port, String.valueOf("CE,0,0,0," + MoyenneRPM));
+					m_Parent.EnvoyerAuServeur(m_Parent.m_IP, m_Parent.m_Port, "CE", Trame.TYPE_MESURE, 0, 0, 0, MoyenneRPM);
 
 					m_Parent.m_TotalRPM = 0;
 					m_Parent.m_NbRPM = 0;
@@ -535,7 +599,7 @@ class Shutdown implements Runnable					//Runnable puisque la classe contient un
 				if (m_Countdown == 0)														//Si aucun front montant n'à été détecté dans les deux dernières minutes
 				{
 					//Envoie un 0 quand le Pi s'éteint pour pouvoir mieux visualiser dans les graphiques
-					m_Parent.EnvoyerAuServeur(m_Parent.m_IP, m_Parent.m_Port, String.valueOf("CE,0,0,0,0"));
+					m_Parent.EnvoyerAuServeur(m_Parent.m_IP, m_Parent.m_Port, "CE", Trame.TYPE_ARRET, 0, 0, 0, 0);
 					Thread.sleep(10000);
 
 					m_Countdown--;															//Pour pas que la commande soit éxécutée plusieurs fois (mets la variable à -1 donc on entre plus dans le if)
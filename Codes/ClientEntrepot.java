@@ -8,6 +8,7 @@
  * @version 1.0 : Première version
  * @version 1.1 : Distinction entre les codes clients. Ce code sera seulement utilisé par l'entrepot (BME280)
  * @version 1.2 : N'envoie pas une trame json au serveur.
+ * @version 1.3 : Garde la connexion au serveur ouverte et envoie des trames binaires (Trame.java doit être dans le même dossier)
  * Environnement de développement: GitKraken
  * Compilateur: Pi4J
  * Matériel: Raspberry Pi Zero W
@@ -25,15 +26,16 @@ import com.pi4j.io.i2c.I2CFactory;
 public class ClientEntrepot
 {
     Socket m_sClient;           						//Référence de l'objet Socket
+	OutputStream m_osOut;								//Flux vers le serveur, gardé ouvert entre les envois
 	
 	public LectureCapteur m_objCapteur;					//Objet pour la classe pour la lecture du capteur
 	
 	String m_IP;										//Adresse du serveur
 	int m_Port;											//Port de communication avec le serveur
 	
-	String Temperature;									//Variable contenant la température
-	String Pression;									//Variable contenant la pression
-	String Humidite;									//Variable contenant l'humidité
+	double Temperature;									//Variable contenant la température
+	double Pression;									//Variable contenant la pression
+	double Humidite;									//Variable contenant l'humidité
     
     public ClientEntrepot()
     {
@@ -61,7 +63,7 @@ public class ClientEntrepot
 				{
 					while(gpioReadBit("gpio4") == 0);
 					Thread.sleep(25); //Rebond
-					EnvoyerAuServeur(m_IP, m_Port, String.valueOf("EN," + Temperature + "," + Pression + "," + Humidite + ",0"));
+					EnvoyerAuServeur(m_IP, m_Port, "EN", Trame.TYPE_BOUTON, Temperature, Pression, Humidite, 0);
 				}
 
 				Thread.sleep(25); 
@@ -75,22 +77,48 @@ public class ClientEntrepot
     }
 	
 	//Envoie le RPM au serveur (Pi 3b)
+	//La connexion au serveur reste ouverte entre les envois, elle est refaite seulement si elle à été perdue
 	//Fonction faite par Pierre Bergeron (Modifiée par Samuel Montminy)
-	public void EnvoyerAuServeur(String sIP, int nPort, String Message)
+	//Les valeurs sont envoyées dans une trame binaire (voir Trame.java), Type est Trame.TYPE_MESURE, Trame.TYPE_BOUTON ou Trame.TYPE_ARRET
+	public synchronized void EnvoyerAuServeur(String sIP, int nPort, String ID, int Type, double T, double P, double H, double R)
 	{   
         try
-        {	
+        {		
 			///*		Mettre en commentaire le bloc pour ne pas envoyer au serveur<- DÉBUT DU BLOC
-			System.out.println(Message + " -> sera envoyé au serveur");
-            m_sClient = new Socket(sIP, nPort);                                     //Objet Socket pour établir la connexion au miniserveur
-            
-            OutputStream osOut = m_sClient.getOutputStream();                       //Requête vers le serveur... (flux de données)
-            ObjectOutputStream oosOut = new ObjectOutputStream(osOut);
-            oosOut.writeObject(Message);											//Envoie les données (qui sont dans la variable message)
+			System.out.println(ID + "," + T + "," + P + "," + H + "," + R + " -> sera envoyé au serveur");
+			byte[] Octets = Trame.Encoder(ID, Type, T, P, H, R);
+
+			for (int Essai = 1; Essai <= 2; Essai++)                                 //Deuxième essai avec une nouvelle connexion si le serveur à fermé l'ancienne
+			{
+				try
+				{
+					if (m_osOut != null && ServeurDeconnecte())
+					{
+						FermerConnexion();                                               //Le serveur a été redémarré: la trame serait perdue dans l'ancienne connexion
+					}
+
+					if (m_osOut == null)
+					{
+						m_sClient = new Socket(sIP, nPort);                             //Objet Socket pour établir la connexion au miniserveur
+						m_sClient.setTcpNoDelay(true);                                  //Envoie chaque trame tout de suite
+						m_osOut = m_sClient.getOutputStream();                          //Requête vers le serveur... (flux de données)
+					}
+
+					m_osOut.write(Octets);                                           //Une seule écriture par trame (TCP_NODELAY)
+					break;
+				}
+
+				catch (IOException e)
+				{
+					FermerConnexion();
 
-            oosOut.close();															//Fermeture des objets de flux de données
-            osOut.close();
-			//*/																	//- FIN DU BLOC
+					if (Essai == 2)
+					{
+						throw e;
+					}
+				}
+			}
+			//*/																	//<- FIN DU BLOC
         }
         
         catch(UnknownHostException e)
@@ -111,6 +139,43 @@ public class ClientEntrepot
         }
 	}
 
+	//Vrai si le serveur a fermé la connexion (fin de flux): le serveur n'envoie jamais rien aux clients, la lecture n'attend que 1 ms
+	//Une écriture dans une connexion fermée par le serveur réussit quand même, elle ne lance une IOException qu'à l'écriture suivante
+	boolean ServeurDeconnecte() throws IOException
+	{
+		m_sClient.setSoTimeout(1);
+
+		try
+		{
+			return m_sClient.getInputStream().read() == -1;
+		}
+
+		catch (SocketTimeoutException e)
+		{
+			return false;                                                        //Rien à lire: la connexion est encore ouverte
+		}
+	}
+
+	//Ferme la connexion au serveur, elle sera refaite au prochain envoi
+	void FermerConnexion()
+	{
+		try
+		{
+			if (m_sClient != null)
+			{
+				m_sClient.close();
+			}
+		}
+
+		catch (IOException e)
+		{
+			System.out.println(e.toString());
+		}
+
+		m_sClient = null;
+		m_osOut = null;
+	}
+
     public static void main(String[] args)
     {
         int argc = 0;																//Variable pour le compte du nombre d'arguments lors de l'appel du code
@@ -504,13 +569,13 @@ class LectureCapteur implements Runnable				//Runnable puisque la classe contien
 		
 				pressure = pressure / 10;								//Pour avoir la pression en bars au lieu de deci-bars
 
-				m_Parent.Temperature = String.format("%1$.3f", cTemp);
-				m_Parent.Pression = String.format("%1$.3f", pressure);
-				m_Parent.Humidite = String.format("%1$.3f", humidity);
+				m_Parent.Temperature = cTemp;							//Arrondies au dix-millième dans la trame envoyée (Trame.ECHELLE)
+				m_Parent.Pression = pressure;
+				m_Parent.Humidite = humidity;
 				
 				//ID (EN) = Entrepot, R à 0 puisque nous nous en servons pas. C'est une structure de fichier json qui sera ensuite transformée en fichier csv par Hologram
 				//Cette string sera envoyée au serveur qui l'envoiera ensuite à Hologram, qui lui va l'envoyer à S3 puis à QuickSight en fichier csv
-				m_Parent.EnvoyerAuServeur(m_Parent.m_IP, m_Parent.m_Port, String.valueOf("EN," + m_Parent.Temperature + "," + m_Parent.Pression + "," + m_Parent.Humidite + ",0"));
+				m_Parent.EnvoyerAuServeur(m_Parent.m_IP, m_Parent.m_Port, "EN", Trame.TYPE_MESURE, m_Parent.Temperature, m_Parent.Pression, m_Parent.Humidite, 0);
 				
 				//-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
 				Thread.sleep(3525000);					//58.75 minutes
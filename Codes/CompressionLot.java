@@ -0,0 +1,584 @@
+/**
+ * @file   CompressionLot.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Format compact des lots de lectures envoyés à Hologram (envoi.format=compact), à la place du json.
+ *         Les lectures sont groupées par appareil et chaque série est compressée à la manière de Gorilla:
+ *         heures en delta de delta, T, P et H par XOR avec la valeur précédente, R (RPM) en varint de la différence.
+ *         Le message est {"Z":"<base64>"}, Decoder redonne les lectures (pour vérifier le format et pour le côté qui reçoit).
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java, Lecture.java et Trame.java.
+ *
+ *         Message (version 1), avant le base64:
+ *           Version (1 octet), heure de réception de la première lecture du lot (varint, ms depuis 1970), nombre d'appareils (varint)
+ *           Pour chaque appareil: ID (2 caractères ASCII), nombre de lectures (varint), puis les lectures en bits (complétées à l'octet):
+ *             Heure  : première lecture: varint zigzag du décalage avec l'heure du lot, deuxième: varint zigzag du delta,
+ *                      ensuite delta de delta: 0 -> '0', 7 bits -> '10', 9 bits -> '110', 12 bits -> '1110', sinon '1111' + 64 bits
+ *             T, P, H: première lecture: 32 bits, ensuite XOR avec la valeur précédente: 0 -> '0',
+ *                      dans la fenêtre de bits précédente -> '10' + bits de la fenêtre, sinon '11' + début (5 bits) + longueur - 1 (5 bits) + bits
+ *             R      : varint zigzag de R, puis de la différence avec la valeur précédente
+ *           Les varints sont écrits en groupes de 8 bits (7 bits de valeur, bit de poids fort à 1 s'il en reste).
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.util.Base64;
+
+public class CompressionLot
+{
+    static final int VERSION = 1;
+    static final int MAX_APPAREILS = 64;
+    static final int TAILLE_TEXTE = 8;                                      //{"Z":"" et "}
+
+    private SerieCompressee[] m_Series = new SerieCompressee[MAX_APPAREILS];     //Dans l'ordre où les appareils apparaissent dans le lot
+    private int m_NbSeries = 0;
+    private long m_HeureBase = 0;
+    private SerieCompressee m_Avant = new SerieCompressee();               //État d'une série avant l'ajout, pour annuler si le message devient trop gros
+    private FluxBits m_Compteur = new FluxBits(null);                       //Compte les bits sans les écrire
+
+    public CompressionLot()
+    {
+        for (int i = 0; i < MAX_APPAREILS; i++)
+        {
+            m_Series[i] = new SerieCompressee();
+        }
+    }
+
+    public void Vider()
+    {
+        m_NbSeries = 0;
+    }
+
+    //Ajoute une lecture au calcul de la taille, retourne false (sans l'ajouter) si le message dépasserait TailleMax octets
+    public boolean Ajouter(Lecture Donnees, int TailleMax)
+    {
+        if (m_NbSeries == 0)
+        {
+            m_HeureBase = Donnees.m_HeureReception;
+        }
+
+        int Appareil = (Donnees.m_ID1 << 16) | Donnees.m_ID2;
+        SerieCompressee S = Trouver(Appareil);
+        boolean Nouvelle = S == null;
+
+        if (Nouvelle)
+        {
+            if (m_NbSeries >= MAX_APPAREILS)
+            {
+                return false;
+            }
+
+            S = m_Series[m_NbSeries++];
+            S.Vider(Appareil);
+        }
+
+        m_Avant.CopierDe(S);
+        m_Compteur.m_NbBits = S.m_NbBits;
+        EncoderLecture(S, Donnees, m_HeureBase, m_Compteur);
+        S.m_NbBits = m_Compteur.m_NbBits;
+
+        if (m_NbSeries > 1 || S.m_NbLectures > 1)                           //La première lecture est toujours acceptée
+        {
+            if (Taille() > TailleMax)
+            {
+                if (Nouvelle)
+                {
+                    m_NbSeries--;
+                }
+
+                else
+                {
+                    S.CopierDe(m_Avant);
+                }
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //Taille (octets) du message texte {"Z":"<base64>"}
+    public int Taille()
+    {
+        return TAILLE_TEXTE + (TailleBinaire() + 2) / 3 * 4;
+    }
+
+    //Taille (octets) du message avant le base64
+    public int TailleBinaire()
+    {
+        int Taille = 1 + TailleVarint(m_HeureBase) + TailleVarint(m_NbSeries);
+
+        for (int i = 0; i < m_NbSeries; i++)
+        {
+            Taille += 2 + TailleVarint(m_Series[i].m_NbLectures) + (int)((m_Series[i].m_NbBits + 7) / 8);
+        }
+
+        return Taille;
+    }
+
+    //Encode les lectures (les mêmes que celles passées à Ajouter, dans le même ordre) dans Sortie, retourne le nombre d'octets
+    public int Encoder(Lecture[] Lectures, int NbLectures, byte[] Sortie)
+    {
+        FluxBits Flux = new FluxBits(Sortie);
+        SerieCompressee S = new SerieCompressee();
+
+        Flux.EcrireVarint(VERSION);
+        Flux.EcrireVarint(m_HeureBase);
+        Flux.EcrireVarint(m_NbSeries);
+
+        for (int a = 0; a < m_NbSeries; a++)
+        {
+            S.Vider(m_Series[a].m_Appareil);
+            Flux.Ecrire(S.m_Appareil >> 16, 8);
+            Flux.Ecrire(S.m_Appareil & 0xFF, 8);
+            Flux.EcrireVarint(m_Series[a].m_NbLectures);
+
+            for (int i = 0; i < NbLectures; i++)
+            {
+                if (((Lectures[i].m_ID1 << 16) | Lectures[i].m_ID2) == S.m_Appareil)
+                {
+                    EncoderLecture(S, Lectures[i], m_HeureBase, Flux);
+                }
+            }
+
+            Flux.AlignerOctet();
+        }
+
+        return (int)(Flux.m_NbBits / 8);
+    }
+
+    //Le message texte envoyé à Hologram
+    public String Texte(Lecture[] Lectures, int NbLectures)
+    {
+        byte[] Binaire = new byte[TailleBinaire()];
+
+        Encoder(Lectures, NbLectures, Binaire);
+
+        return "{\"Z\":\"" + Base64.getEncoder().encodeToString(Binaire) + "\"}";
+    }
+
+    //Décode un message binaire dans Destination (groupé par appareil), retourne le nombre de lectures
+    //Le type, l'heure du client et l'ordre entre les appareils ne sont pas transmis
+    public static int Decoder(byte[] Donnees, int Longueur, Lecture[] Destination)
+    {
+        FluxBits Flux = new FluxBits(Donnees);
+        SerieCompressee S = new SerieCompressee();
+        int NbLectures = 0;
+
+        Flux.m_Limite = (long)Longueur * 8;
+
+        if (Flux.LireVarint() != VERSION)
+        {
+            throw new IllegalArgumentException("Version du format compact inconnue");
+        }
+
+        long HeureBase = Flux.LireVarint();
+        long NbSeries = Flux.LireVarint();
+
+        for (long a = 0; a < NbSeries; a++)
+        {
+            int ID1 = (int)Flux.Lire(8);
+            int ID2 = (int)Flux.Lire(8);
+            long Nb = Flux.LireVarint();
+
+            S.Vider((ID1 << 16) | ID2);
+
+            for (long i = 0; i < Nb; i++)
+            {
+                if (NbLectures >= Destination.length)
+                {
+                    throw new IllegalArgumentException("Trop de lectures pour la destination");
+                }
+
+                Lecture Sortie = Destination[NbLectures++];
+
+                Sortie.m_ID1 = (char)ID1;
+                Sortie.m_ID2 = (char)ID2;
+                DecoderLecture(S, Sortie, HeureBase, Flux);
+            }
+
+            Flux.AlignerOctet();
+        }
+
+        return NbLectures;
+    }
+
+    public static int Decoder(String Texte, Lecture[] Destination)
+    {
+        String Base = Texte.substring(Texte.indexOf("\"Z\":\"") + 5, Texte.lastIndexOf('"'));
+        byte[] Binaire = Base64.getDecoder().decode(Base);
+
+        return Decoder(Binaire, Binaire.length, Destination);
+    }
+
+    private SerieCompressee Trouver(int Appareil)
+    {
+        for (int i = 0; i < m_NbSeries; i++)
+        {
+            if (m_Series[i].m_Appareil == Appareil)
+            {
+                return m_Series[i];
+            }
+        }
+
+        return null;
+    }
+
+    static void EncoderLecture(SerieCompressee S, Lecture Donnees, long HeureBase, FluxBits Flux)
+    {
+        long Heure = Donnees.m_HeureReception;
+        int[] Valeurs = { (int)Donnees.m_T, (int)Donnees.m_P, (int)Donnees.m_H };
+
+        if (S.m_NbLectures == 0)
+        {
+            Flux.EcrireVarint(ZigZag(Heure - HeureBase));
+
+            for (int k = 0; k < 3; k++)
+            {
+                Flux.Ecrire(Valeurs[k] & 0xFFFFFFFFL, 32);
+            }
+
+            Flux.EcrireVarint(ZigZag(Donnees.m_R));
+        }
+
+        else
+        {
+            long Delta = Heure - S.m_Heure;
+
+            if (S.m_NbLectures == 1)
+            {
+                Flux.EcrireVarint(ZigZag(Delta));
+            }
+
+            else
+            {
+                EcrireDeltaDeDelta(Flux, Delta - S.m_Delta);
+            }
+
+            S.m_Delta = Delta;
+
+            for (int k = 0; k < 3; k++)
+            {
+                EcrireXor(S, k, Valeurs[k] ^ S.m_Valeurs[k], Flux);
+            }
+
+            Flux.EcrireVarint(ZigZag(Donnees.m_R - S.m_R));
+        }
+
+        S.m_Heure = Heure;
+        S.m_Valeurs[0] = Valeurs[0];
+        S.m_Valeurs[1] = Valeurs[1];
+        S.m_Valeurs[2] = Valeurs[2];
+        S.m_R = Donnees.m_R;
+        S.m_NbLectures++;
+    }
+
+    static void DecoderLecture(SerieCompressee S, Lecture Donnees, long HeureBase, FluxBits Flux)
+    {
+        if (S.m_NbLectures == 0)
+        {
+            S.m_Heure = HeureBase + DeZigZag(Flux.LireVarint());
+
+            for (int k = 0; k < 3; k++)
+            {
+                S.m_Valeurs[k] = (int)Flux.Lire(32);
+            }
+
+            S.m_R = DeZigZag(Flux.LireVarint());
+        }
+
+        else
+        {
+            if (S.m_NbLectures == 1)
+            {
+                S.m_Delta = DeZigZag(Flux.LireVarint());
+            }
+
+            else
+            {
+                S.m_Delta += LireDeltaDeDelta(Flux);
+            }
+
+            S.m_Heure += S.m_Delta;
+
+            for (int k = 0; k < 3; k++)
+            {
+                S.m_Valeurs[k] ^= LireXor(S, k, Flux);
+            }
+
+            S.m_R += DeZigZag(Flux.LireVarint());
+        }
+
+        Donnees.m_Type = Trame.TYPE_MESURE;
+        Donnees.m_HeureClient = 0;
+        Donnees.m_HeureReception = S.m_Heure;
+        Donnees.m_T = S.m_Valeurs[0];
+        Donnees.m_P = S.m_Valeurs[1];
+        Donnees.m_H = S.m_Valeurs[2];
+        Donnees.m_R = S.m_R;
+        S.m_NbLectures++;
+    }
+
+    static void EcrireDeltaDeDelta(FluxBits Flux, long DeltaDeDelta)
+    {
+        if (DeltaDeDelta == 0)
+        {
+            Flux.Ecrire(0, 1);
+        }
+
+        else if (DeltaDeDelta >= -64 && DeltaDeDelta < 64)
+        {
+            Flux.Ecrire(0b10, 2);
+            Flux.Ecrire(DeltaDeDelta, 7);
+        }
+
+        else if (DeltaDeDelta >= -256 && DeltaDeDelta < 256)
+        {
+            Flux.Ecrire(0b110, 3);
+            Flux.Ecrire(DeltaDeDelta, 9);
+        }
+
+        else if (DeltaDeDelta >= -2048 && DeltaDeDelta < 2048)
+        {
+            Flux.Ecrire(0b1110, 4);
+            Flux.Ecrire(DeltaDeDelta, 12);
+        }
+
+        else
+        {
+            Flux.Ecrire(0b1111, 4);
+            Flux.Ecrire(DeltaDeDelta, 64);
+        }
+    }
+
+    static long LireDeltaDeDelta(FluxBits Flux)
+    {
+        int NbBits;
+
+        if (Flux.Lire(1) == 0)
+        {
+            return 0;
+        }
+
+        else if (Flux.Lire(1) == 0)
+        {
+            NbBits = 7;
+        }
+
+        else if (Flux.Lire(1) == 0)
+        {
+            NbBits = 9;
+        }
+
+        else if (Flux.Lire(1) == 0)
+        {
+            NbBits = 12;
+        }
+
+        else
+        {
+            NbBits = 64;
+        }
+
+        return (Flux.Lire(NbBits) << (64 - NbBits)) >> (64 - NbBits);      //Extension du signe
+    }
+
+    static void EcrireXor(SerieCompressee S, int k, int Xor, FluxBits Flux)
+    {
+        if (Xor == 0)
+        {
+            Flux.Ecrire(0, 1);
+            return;
+        }
+
+        int Debut = Integer.numberOfLeadingZeros(Xor);
+        int Fin = Integer.numberOfTrailingZeros(Xor);
+
+        if (S.m_Longueurs[k] != 0 && Debut >= S.m_Debuts[k] && Fin >= 32 - S.m_Debuts[k] - S.m_Longueurs[k])
+        {
+            Flux.Ecrire(0b10, 2);
+            Flux.Ecrire((Xor >>> (32 - S.m_Debuts[k] - S.m_Longueurs[k])) & 0xFFFFFFFFL, S.m_Longueurs[k]);
+        }
+
+        else
+        {
+            int Longueur = 32 - Debut - Fin;
+
+            Flux.Ecrire(0b11, 2);
+            Flux.Ecrire(Debut, 5);
+            Flux.Ecrire(Longueur - 1, 5);
+            Flux.Ecrire((Xor >>> Fin) & 0xFFFFFFFFL, Longueur);
+
+            S.m_Debuts[k] = Debut;
+            S.m_Longueurs[k] = Longueur;
+        }
+    }
+
+    static int LireXor(SerieCompressee S, int k, FluxBits Flux)
+    {
+        if (Flux.Lire(1) == 0)
+        {
+            return 0;
+        }
+
+        if (Flux.Lire(1) == 1)
+        {
+            S.m_Debuts[k] = (int)Flux.Lire(5);
+            S.m_Longueurs[k] = (int)Flux.Lire(5) + 1;
+        }
+
+        return (int)Flux.Lire(S.m_Longueurs[k]) << (32 - S.m_Debuts[k] - S.m_Longueurs[k]);
+    }
+
+    static long ZigZag(long Valeur)
+    {
+        return (Valeur << 1) ^ (Valeur >> 63);
+    }
+
+    static long DeZigZag(long Valeur)
+    {
+        return (Valeur >>> 1) ^ -(Valeur & 1);
+    }
+
+    static int TailleVarint(long Valeur)
+    {
+        int Taille = 1;
+
+        while ((Valeur >>>= 7) != 0)
+        {
+            Taille++;
+        }
+
+        return Taille;
+    }
+}
+
+//État de la compression d'une série (un appareil), le même à l'encodage et au décodage
+class SerieCompressee
+{
+    int m_Appareil;                                                         //ID de l'appareil (2 caractères dans un int)
+    int m_NbLectures;
+    long m_NbBits;                                                          //Bits de la série déjà encodés
+    long m_Heure;                                                           //Heure de la lecture précédente
+    long m_Delta;                                                           //Delta précédent entre deux heures
+    int[] m_Valeurs = new int[3];                                           //T, P, H précédents
+    int[] m_Debuts = new int[3];                                            //Fenêtre de bits du XOR précédent (zéros au début, nombre de bits)
+    int[] m_Longueurs = new int[3];
+    long m_R;
+
+    void Vider(int Appareil)
+    {
+        m_Appareil = Appareil;
+        m_NbLectures = 0;
+        m_NbBits = 0;
+        m_Heure = 0;
+        m_Delta = 0;
+
+        for (int k = 0; k < 3; k++)
+        {
+            m_Valeurs[k] = 0;
+            m_Debuts[k] = 0;
+            m_Longueurs[k] = 0;
+        }
+
+        m_R = 0;
+    }
+
+    void CopierDe(SerieCompressee Source)
+    {
+        m_Appareil = Source.m_Appareil;
+        m_NbLectures = Source.m_NbLectures;
+        m_NbBits = Source.m_NbBits;
+        m_Heure = Source.m_Heure;
+        m_Delta = Source.m_Delta;
+        System.arraycopy(Source.m_Valeurs, 0, m_Valeurs, 0, 3);
+        System.arraycopy(Source.m_Debuts, 0, m_Debuts, 0, 3);
+        System.arraycopy(Source.m_Longueurs, 0, m_Longueurs, 0, 3);
+        m_R = Source.m_R;
+    }
+}
+
+//Écriture et lecture de bits, du bit de poids fort au bit de poids faible de chaque octet
+//Sans tableau (null), l'écriture compte seulement les bits
+class FluxBits
+{
+    byte[] m_Octets;
+    long m_NbBits = 0;                                                      //Position (en bits) de la prochaine écriture ou lecture
+    long m_Limite = Long.MAX_VALUE;                                         //Nombre de bits qui peuvent être lus
+
+    FluxBits(byte[] Octets)
+    {
+        m_Octets = Octets;
+    }
+
+    //Écrit les NbBits bits de poids faible de Valeur
+    void Ecrire(long Valeur, int NbBits)
+    {
+        if (m_Octets != null)
+        {
+            for (int i = NbBits - 1; i >= 0; i--)
+            {
+                if (((Valeur >>> i) & 1) != 0)
+                {
+                    m_Octets[(int)((m_NbBits + NbBits - 1 - i) >>> 3)] |= (byte)(0x80 >>> ((m_NbBits + NbBits - 1 - i) & 7));
+                }
+            }
+        }
+
+        m_NbBits += NbBits;
+    }
+
+    long Lire(int NbBits)
+    {
+        long Valeur = 0;
+
+        if (m_NbBits + NbBits > m_Limite)
+        {
+            throw new IllegalArgumentException("Message compact tronqué");
+        }
+
+        for (int i = 0; i < NbBits; i++, m_NbBits++)
+        {
+            Valeur = (Valeur << 1) | ((m_Octets[(int)(m_NbBits >>> 3)] >>> (7 - (m_NbBits & 7))) & 1);
+        }
+
+        return Valeur;
+    }
+
+    void EcrireVarint(long Valeur)
+    {
+        while ((Valeur & ~0x7FL) != 0)
+        {
+            Ecrire((Valeur & 0x7F) | 0x80, 8);
+            Valeur >>>= 7;
+        }
+
+        Ecrire(Valeur, 8);
+    }
+
+    long LireVarint()
+    {
+        long Valeur = 0;
+
+        for (int Decalage = 0; Decalage < 64; Decalage += 7)
+        {
+            long Octet = Lire(8);
+
+            Valeur |= (Octet & 0x7F) << Decalage;
+
+            if ((Octet & 0x80) == 0)
+            {
+                return Valeur;
+            }
+        }
+
+        throw new IllegalArgumentException("Varint trop long");
+    }
+
+    void AlignerOctet()
+    {
+        m_NbBits = (m_NbBits + 7) & ~7L;
+    }
+}
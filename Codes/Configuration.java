@@ -0,0 +1,83 @@
+/**
+ * @file   Configuration.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Paramètres du serveur lus dans /home/pi/ProjetNepal/serveur.properties (exemple commenté: Configs/serveur.properties).
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.*;
+import java.util.Properties;
+
+//Paramètres du serveur lus au démarrage dans /home/pi/ProjetNepal/serveur.properties (exemple commenté: Configs/serveur.properties)
+//Le fichier est optionnel, un paramètre absent ou invalide prend sa valeur par défaut
+public class Configuration
+{
+    static final String FICHIER = "/home/pi/ProjetNepal/serveur.properties";
+
+    private static volatile Properties m_Proprietes = Charger();
+    private static long m_Modification = new File(FICHIER).lastModified();  //0 si le fichier n'existe pas
+
+    static Properties Charger()
+    {
+        Properties Proprietes = new Properties();
+
+        try (FileInputStream Fichier = new FileInputStream(FICHIER))
+        {
+            Proprietes.load(Fichier);
+            System.out.println("Configuration lue dans " + FICHIER + ": " + Proprietes);
+        }
+
+        catch (FileNotFoundException e)
+        {
+            System.out.println("Pas de fichier " + FICHIER + ", configuration par défaut");
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());
+        }
+
+        return Proprietes;
+    }
+
+    //Relit le fichier s'il a changé depuis la dernière lecture, retourne true s'il a été relu
+    //Seuls les paramètres relus par l'appelant changent (ex: ceux de PlanificateurEnvoi), les autres sont lus au démarrage seulement
+    static synchronized boolean Recharger()
+    {
+        long Modification = new File(FICHIER).lastModified();
+
+        if (Modification == m_Modification)
+        {
+            return false;
+        }
+
+        m_Modification = Modification;
+        m_Proprietes = Charger();
+
+        return true;
+    }
+
+    static String Texte(String Cle, String Defaut)
+    {
+        return m_Proprietes.getProperty(Cle, Defaut).trim();
+    }
+
+    static long Entier(String Cle, long Defaut)
+    {
+        try
+        {
+            return Long.parseLong(Texte(Cle, "" + Defaut));
+        }
+
+        catch (NumberFormatException e)
+        {
+            System.out.println("Valeur invalide pour " + Cle + ", " + Defaut + " est utilisé");
+            return Defaut;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * @file   ConnexionClient.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  État d'une connexion ouverte par un client: tampon de réception et mesures de la connexion.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.zip.CRC32;
+
+//État d'une connexion ouverte par un client: tampon de réception réutilisé pour toutes les trames et mesures de la connexion
+//Le format est reconnu au premier octet reçu: trames binaires (Trame.DEBUT_TRAME) ou ancien format texte envoyé avec ObjectOutputStream
+//(en-tête 0xACED0005 puis une String par trame), décodé ici sans ObjectInputStream
+public class ConnexionClient
+{
+    private static final short STREAM_MAGIC = (short)0xACED;               //En-tête d'un flux ObjectOutputStream
+    private static final short STREAM_VERSION = 5;
+    private static final byte TC_STRING = 0x74;                             //Une String d'au plus 65535 octets
+    private static final byte TC_RESET = 0x79;                              //ObjectOutputStream.reset(), rien à faire de notre côté
+
+    private static final int FORMAT_INCONNU = 0;                            //Aucun octet reçu encore
+    private static final int FORMAT_BINAIRE = 1;
+    private static final int FORMAT_TEXTE = 2;
+
+    SocketChannel m_scClient;
+    ByteBuffer m_Tampon = ByteBuffer.allocateDirect(Serveur.TAILLE_TAMPON_CLIENT);
+    int m_Format = FORMAT_INCONNU;
+    CRC32 m_Crc = new CRC32();                                              //Réutilisé pour vérifier chaque trame binaire
+    Lecture m_Lecture = new Lecture();                                      //Réutilisée pour décoder chaque trame de la connexion
+
+    long m_Ouverture = System.nanoTime();                                   //Moment où la connexion à été acceptée
+    long m_Trames = 0;                                                      //Nombre de trames reçues sur cette connexion
+    long m_Invalides = 0;                                                   //Nombre de trames rejetées (CRC, version ou texte inconnu)
+    long m_Octets = 0;                                                      //Nombre d'octets reçus sur cette connexion
+
+    public ConnexionClient(SocketChannel scClient)
+    {
+        m_scClient = scClient;
+    }
+
+    //Décode la prochaine trame complète du tampon (en mode lecture) dans Destination
+    //Retourne Trame.TRAME_INCOMPLETE s'il faut attendre d'autres octets, Trame.TRAME_VALIDE ou Trame.TRAME_INVALIDE (trame sautée)
+    public int ProchaineTrame(Lecture Destination) throws IOException
+    {
+        if (m_Format == FORMAT_INCONNU)
+        {
+            if (m_Tampon.hasRemaining() == false)
+            {
+                return Trame.TRAME_INCOMPLETE;
+            }
+
+            if (m_Tampon.get(m_Tampon.position()) == Trame.DEBUT_TRAME)
+            {
+                m_Format = FORMAT_BINAIRE;
+            }
+
+            else
+            {
+                if (m_Tampon.remaining() < 4)
+                {
+                    return Trame.TRAME_INCOMPLETE;
+                }
+
+                if (m_Tampon.getShort() != STREAM_MAGIC || m_Tampon.getShort() != STREAM_VERSION)
+                {
+                    throw new IOException("En-tête de flux inconnu");
+                }
+
+                m_Format = FORMAT_TEXTE;
+                System.out.println("Client en ancien format texte (ObjectOutputStream)");
+            }
+        }
+
+        if (m_Format == FORMAT_BINAIRE)
+        {
+            return DecoderBinaire(m_Tampon, Destination, m_Crc);
+        }
+
+        while (m_Tampon.hasRemaining() && m_Tampon.get(m_Tampon.position()) == TC_RESET)
+        {
+            m_Tampon.get();
+        }
+
+        if (m_Tampon.remaining() < 3)
+        {
+            return Trame.TRAME_INCOMPLETE;
+        }
+
+        int Debut = m_Tampon.position();
+
+        if (m_Tampon.get(Debut) != TC_STRING)
+        {
+            throw new IOException("Type d'objet inattendu dans le flux: " + m_Tampon.get(Debut));
+        }
+
+        int Longueur = m_Tampon.getShort(Debut + 1) & 0xFFFF;
+
+        if (m_Tampon.remaining() < 3 + Longueur)
+        {
+            return Trame.TRAME_INCOMPLETE;
+        }
+
+        m_Tampon.position(Debut + 3 + Longueur);                            //La trame est consommée, qu'elle soit valide ou non
+
+        //Les trames ne contiennent que de l'ASCII (UTF modifié == ASCII), elles sont analysées directement dans le tampon
+        if (Serveur.AnalyserTrameTexte(m_Tampon, Debut + 3, Debut + 3 + Longueur, Destination) == false)
+        {
+            byte[] Octets = new byte[Longueur];                             //Seulement pour afficher la trame invalide
+            for (int i = 0; i < Longueur; i++)
+            {
+                Octets[i] = m_Tampon.get(Debut + 3 + i);
+            }
+
+            System.out.println("Trame inconnue reçue: " + new String(Octets, "UTF-8"));
+            return Trame.TRAME_INVALIDE;
+        }
+
+        return Trame.TRAME_VALIDE;
+    }
+
+    //Décode la prochaine trame du tampon (en mode lecture) dans Destination
+    //Retourne Trame.TRAME_INCOMPLETE s'il faut attendre d'autres octets (le tampon n'est pas avancé), Trame.TRAME_VALIDE si Destination contient la trame,
+    //Trame.TRAME_INVALIDE si la trame à été sautée (CRC invalide ou version inconnue). Lance une exception si le flux n'est plus synchronisé.
+    static int DecoderBinaire(ByteBuffer Tampon, Lecture Destination, CRC32 Crc) throws IOException
+    {
+        if (Tampon.remaining() < Trame.TAILLE_ENTETE)
+        {
+            return Trame.TRAME_INCOMPLETE;
+        }
+
+        int Debut = Tampon.position();
+
+        if (Tampon.get(Debut) != Trame.DEBUT_TRAME)
+        {
+            throw new IOException("Début de trame invalide: " + Tampon.get(Debut));
+        }
+
+        int Version = Tampon.get(Debut + 1);
+        int Longueur = Tampon.getShort(Debut + 2) & 0xFFFF;
+
+        if (Tampon.remaining() < Trame.TAILLE_ENTETE + Longueur + Trame.TAILLE_CRC)
+        {
+            return Trame.TRAME_INCOMPLETE;
+        }
+
+        Tampon.position(Debut + Trame.TAILLE_ENTETE + Longueur + Trame.TAILLE_CRC);     //La trame est consommée, qu'elle soit valide ou non
+
+        if (Version != Trame.VERSION || Longueur != Trame.TAILLE_CORPS)                 //Version plus récente que ce serveur: la longueur permet de la sauter
+        {
+            return Trame.TRAME_INVALIDE;
+        }
+
+        Crc.reset();
+        for (int i = Debut; i < Debut + Trame.TAILLE_ENTETE + Longueur; i++)
+        {
+            Crc.update(Tampon.get(i));
+        }
+
+        if ((int)Crc.getValue() != Tampon.getInt(Debut + Trame.TAILLE_ENTETE + Longueur))
+        {
+            return Trame.TRAME_INVALIDE;
+        }
+
+        Destination.m_ID1 = (char)Tampon.get(Debut + 4);
+        Destination.m_ID2 = (char)Tampon.get(Debut + 5);
+        Destination.m_Type = Tampon.get(Debut + 6);
+        Destination.m_T = Tampon.getInt(Debut + 7);
+        Destination.m_P = Tampon.getInt(Debut + 11);
+        Destination.m_H = Tampon.getInt(Debut + 15);
+        Destination.m_R = Tampon.getInt(Debut + 19);
+        Destination.m_HeureClient = Tampon.getLong(Debut + 23);
+
+        return Trame.TRAME_VALIDE;
+    }
+}
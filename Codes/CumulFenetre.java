@@ -0,0 +1,146 @@
+/**
+ * @file   CumulFenetre.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Cumul d'un appareil sur une fenêtre de temps (nombre, min, max, moyenne et dernière valeur).
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+//Cumul d'un appareil sur une fenêtre de m_Duree ms: chaque lecture est ajoutée en O(1), les valeurs restent en point fixe
+public class CumulFenetre
+{
+    static final long MINUTE = 60000;
+    static final long HEURE = 3600000;
+    static final int TAILLE_ETAT = 12 + 16 * 8;                             //Octets écrits par Ecrire(ByteBuffer)
+
+    char m_ID1;
+    char m_ID2;
+    long m_Duree;
+    long m_Debut = 0;                                                       //Début (ms) de la fenêtre en cours
+    int m_Nombre = 0;                                                       //0: aucune lecture dans la fenêtre
+    long[] m_Min = new long[4];                                             //T, P, H, R
+    long[] m_Max = new long[4];
+    long[] m_Somme = new long[4];
+    long[] m_Derniere = new long[4];
+
+    public CumulFenetre(char ID1, char ID2, long Duree)
+    {
+        m_ID1 = ID1;
+        m_ID2 = ID2;
+        m_Duree = Duree;
+    }
+
+    //Début de la fenêtre de Duree ms qui contient Heure, alignée sur l'heure locale (le Népal est à UTC+5:45)
+    static long Debut(long Heure, long Duree, TimeZone Fuseau)
+    {
+        return Heure - Math.floorMod(Heure + Fuseau.getOffset(Heure), Duree);
+    }
+
+    void Ajouter(long Debut, Lecture Donnees)
+    {
+        if (m_Nombre == 0)
+        {
+            m_Debut = Debut;
+            Arrays.fill(m_Min, Long.MAX_VALUE);
+            Arrays.fill(m_Max, Long.MIN_VALUE);
+            Arrays.fill(m_Somme, 0);
+        }
+
+        m_Nombre++;
+        Ajouter(0, Donnees.m_T);
+        Ajouter(1, Donnees.m_P);
+        Ajouter(2, Donnees.m_H);
+        Ajouter(3, Donnees.m_R);
+    }
+
+    private void Ajouter(int Champ, long Valeur)
+    {
+        m_Min[Champ] = Math.min(m_Min[Champ], Valeur);
+        m_Max[Champ] = Math.max(m_Max[Champ], Valeur);
+        m_Somme[Champ] += Valeur;
+        m_Derniere[Champ] = Valeur;
+    }
+
+    //Durée de la fenêtre: "m" (minute), "h" (heure), sinon en minutes (ex: "15m")
+    String Fenetre()
+    {
+        return m_Duree == MINUTE ? "m" : m_Duree == HEURE ? "h" : (m_Duree / MINUTE) + "m";
+    }
+
+    //État de la fenêtre, pour l'état enregistré par EtageCumuls
+    void Ecrire(ByteBuffer Etat)
+    {
+        Etat.putLong(m_Debut);
+        Etat.putInt(m_Nombre);
+
+        for (long[] Valeurs : new long[][] { m_Min, m_Max, m_Somme, m_Derniere })
+        {
+            for (long Valeur : Valeurs)
+            {
+                Etat.putLong(Valeur);
+            }
+        }
+    }
+
+    void Lire(ByteBuffer Etat)
+    {
+        m_Debut = Etat.getLong();
+        m_Nombre = Etat.getInt();
+
+        for (long[] Valeurs : new long[][] { m_Min, m_Max, m_Somme, m_Derniere })
+        {
+            for (int i = 0; i < Valeurs.length; i++)
+            {
+                Valeurs[i] = Etat.getLong();
+            }
+        }
+    }
+
+    //Lecture qui remplace celles de la fenêtre quand un segment est compacté (RetentionJournal): moyennes, heure du début de la fenêtre
+    Lecture Moyenne(int Type)
+    {
+        Lecture Donnees = new Lecture();
+
+        Donnees.m_ID1 = m_ID1;
+        Donnees.m_ID2 = m_ID2;
+        Donnees.m_Type = Type;
+        Donnees.m_T = Math.round((double)m_Somme[0] / m_Nombre);
+        Donnees.m_P = Math.round((double)m_Somme[1] / m_Nombre);
+        Donnees.m_H = Math.round((double)m_Somme[2] / m_Nombre);
+        Donnees.m_R = Math.round((double)m_Somme[3] / m_Nombre);
+        Donnees.m_HeureClient = m_Debut;
+        Donnees.m_HeureReception = m_Debut;
+
+        return Donnees;
+    }
+
+    //{"ID":"CE","F":"15m","D":"2019-02-14T10:00","N":58,"T":[min,max,moyenne,dernière],"P":[...],"H":[...],"R":[...]}
+    void Ecrire(StringBuilder sb)
+    {
+        sb.append("{\"ID\":\"").append(m_ID1).append(m_ID2).append("\",\"F\":\"").append(Fenetre());
+        sb.append("\",\"D\":\"").append(java.time.LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(m_Debut), java.time.ZoneId.systemDefault()));
+        sb.append("\",\"N\":").append(m_Nombre);
+
+        for (int Champ = 0; Champ < 4; Champ++)
+        {
+            sb.append(",\"").append("TPHR".charAt(Champ)).append("\":[");
+            Trame.AjouterValeur(sb, m_Min[Champ]);
+            sb.append(',');
+            Trame.AjouterValeur(sb, m_Max[Champ]);
+            sb.append(',');
+            Trame.AjouterValeur(sb, Math.round((double)m_Somme[Champ] / m_Nombre));
+            sb.append(',');
+            Trame.AjouterValeur(sb, m_Derniere[Champ]);
+            sb.append(']');
+        }
+
+        sb.append('}');
+    }
+}
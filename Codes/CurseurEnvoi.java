@@ -0,0 +1,115 @@
+/**
+ * @file   CurseurEnvoi.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Position de la prochaine lecture à envoyer (segment et position), enregistrée de façon atomique dans le fichier "curseur".
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+//Position de la prochaine lecture à envoyer (numéro de segment et position dans le segment), enregistrée dans le fichier "curseur" du journal
+//Le fichier est remplacé de façon atomique: le nouveau contenu est écrit et forcé dans "curseur.tmp", qui est ensuite renommé par-dessus l'ancien.
+//Une panne de courant laisse donc toujours l'ancienne ou la nouvelle position, jamais un mélange des deux.
+public class CurseurEnvoi
+{
+    private static final int TAILLE = 16;                                   //Segment (64 bits), position (32 bits), CRC32 des 12 premiers octets
+
+    private Path m_Dossier;
+    private Path m_Fichier;
+    private Path m_Temporaire;
+    private ByteBuffer m_Tampon = ByteBuffer.allocate(TAILLE);
+    private CRC32 m_Crc = new CRC32();
+
+    volatile long m_Segment = 0;                                            //Les segments avant celui-ci ont tous été envoyés
+    volatile int m_Position;                                                //Prochaine lecture à envoyer dans m_Segment
+    volatile long m_Ecritures = 0;                                          //Nombre de positions enregistrées (une page du fichier et une du dossier chacune)
+
+    //Debut: position de la première lecture d'un segment (après son en-tête)
+    public CurseurEnvoi(Path Dossier, int Debut)
+    {
+        m_Position = Debut;
+        m_Dossier = Dossier;
+        m_Fichier = Dossier.resolve("curseur");
+        m_Temporaire = Dossier.resolve("curseur.tmp");
+    }
+
+    //Lit la position enregistrée, le journal est envoyé depuis le début s'il n'y en a pas ou si elle est invalide
+    public void Charger()
+    {
+        try
+        {
+            byte[] Octets = Files.readAllBytes(m_Fichier);
+            ByteBuffer Tampon = ByteBuffer.wrap(Octets);
+
+            m_Crc.reset();
+            m_Crc.update(Octets, 0, Math.min(Octets.length, TAILLE - 4));
+
+            if (Octets.length != TAILLE || Tampon.getInt(TAILLE - 4) != (int)m_Crc.getValue())
+            {
+                System.out.println("Curseur d'envoi invalide, le journal sera envoyé depuis le début");
+                return;
+            }
+
+            m_Segment = Tampon.getLong(0);
+            m_Position = Tampon.getInt(8);
+            System.out.println("Curseur d'envoi: segment " + m_Segment + ", position " + m_Position);
+        }
+
+        catch (NoSuchFileException e)
+        {
+            System.out.println("Pas de curseur d'envoi, le journal sera envoyé depuis le début");
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    //Enregistre la nouvelle position, appelée après chaque envoi confirmé ("Message sent successfully")
+    public void Avancer(long Segment, int Position) throws IOException
+    {
+        m_Tampon.clear();
+        m_Tampon.putLong(Segment);
+        m_Tampon.putInt(Position);
+        m_Crc.reset();
+        m_Crc.update(m_Tampon.array(), 0, TAILLE - 4);
+        m_Tampon.putInt((int)m_Crc.getValue());
+        m_Tampon.flip();
+
+        try (FileChannel Canal = FileChannel.open(m_Temporaire, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (m_Tampon.hasRemaining())
+            {
+                Canal.write(m_Tampon);
+            }
+
+            Canal.force(true);
+        }
+
+        Files.move(m_Temporaire, m_Fichier, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        m_Ecritures++;
+
+        try (FileChannel Dossier = FileChannel.open(m_Dossier, StandardOpenOption.READ))
+        {
+            Dossier.force(true);                                            //Le renommage aussi est sur la carte SD
+        }
+
+        catch (IOException e)
+        {
+            //Pas supporté par ce système de fichiers, le renommage sera écrit par le système
+        }
+
+        m_Segment = Segment;
+        m_Position = Position;
+    }
+}
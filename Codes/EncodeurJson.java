@@ -0,0 +1,135 @@
+/**
+ * @file   EncodeurJson.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Encode une lecture en trame json échappée, directement dans un ByteBuffer.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java, Lecture.java et Trame.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.nio.ByteBuffer;
+import java.util.TimeZone;
+
+//Encode une lecture en trame json, telle qu'elle est envoyée à Hologram (Data.txt contenait la même trame échappée pour bash):
+//{ "ID":"CE", "T":"21.5625", "P":"0", "H":"0", "R":"87", "D":"2019-02-14T10:32:05.123" }
+//Les octets sont écrits directement dans un ByteBuffer, la date "D" (heure de réception) dans le même format que LocalDateTime.toString()
+public class EncodeurJson
+{
+    static final int TAILLE_MAX = 192;                                      //Plus longue trame json possible (valeurs de 32 bits, année à 4 chiffres)
+    private static final long MS_PAR_JOUR = 86400000L;
+
+    private TimeZone m_Fuseau = TimeZone.getDefault();                      //Fuseau horaire du Pi, réutilisé pour chaque lecture
+
+    public void Encoder(Lecture Donnees, ByteBuffer Sortie)
+    {
+        Ajouter(Sortie, "{ \"ID\":\"");
+        Sortie.put((byte)Donnees.m_ID1);
+        Sortie.put((byte)Donnees.m_ID2);
+        Ajouter(Sortie, "\", \"T\":\"");
+        AjouterValeur(Sortie, Donnees.m_T);
+        Ajouter(Sortie, "\", \"P\":\"");
+        AjouterValeur(Sortie, Donnees.m_P);
+        Ajouter(Sortie, "\", \"H\":\"");
+        AjouterValeur(Sortie, Donnees.m_H);
+        Ajouter(Sortie, "\", \"R\":\"");
+        AjouterValeur(Sortie, Donnees.m_R);
+        Ajouter(Sortie, "\", \"D\":\"");
+        AjouterDate(Sortie, Donnees.m_HeureReception);
+        Ajouter(Sortie, "\" }");
+    }
+
+    //Les textes fixes de la trame sont en ASCII
+    static void Ajouter(ByteBuffer Sortie, String Texte)
+    {
+        for (int i = 0; i < Texte.length(); i++)
+        {
+            Sortie.put((byte)Texte.charAt(i));
+        }
+    }
+
+    //Même résultat que Trame.AjouterValeur (ex: 870000 -> "87", 215625 -> "21.5625")
+    static void AjouterValeur(ByteBuffer Sortie, long Fixe)
+    {
+        if (Fixe < 0)
+        {
+            Sortie.put((byte)'-');
+            Fixe = -Fixe;
+        }
+
+        AjouterEntier(Sortie, Fixe / Trame.ECHELLE, 1);
+
+        long Fraction = Fixe % Trame.ECHELLE;
+
+        if (Fraction != 0)
+        {
+            Sortie.put((byte)'.');
+
+            for (long Diviseur = Trame.ECHELLE / 10; Diviseur > 0 && Fraction != 0; Diviseur /= 10)
+            {
+                Sortie.put((byte)('0' + Fraction / Diviseur));
+                Fraction %= Diviseur;
+            }
+        }
+    }
+
+    //Entier positif avec au moins NbChiffres chiffres (complété par des 0 au début)
+    static void AjouterEntier(ByteBuffer Sortie, long Valeur, int NbChiffres)
+    {
+        long Diviseur = 1;
+
+        while (NbChiffres > 1 || Valeur / Diviseur >= 10)
+        {
+            Diviseur *= 10;
+            NbChiffres--;
+        }
+
+        for (; Diviseur > 0; Diviseur /= 10)
+        {
+            Sortie.put((byte)('0' + (Valeur / Diviseur) % 10));
+        }
+    }
+
+    //Heure locale au format de LocalDateTime.toString(): aaaa-MM-jjTHH:mm, puis :ss et .SSS seulement s'ils ne sont pas nuls
+    void AjouterDate(ByteBuffer Sortie, long Heure)
+    {
+        long Locale = Heure + m_Fuseau.getOffset(Heure);
+        long Jours = Math.floorDiv(Locale, MS_PAR_JOUR);
+        long Ms = Math.floorMod(Locale, MS_PAR_JOUR);
+
+        //Jour civil à partir du nombre de jours depuis 1970-01-01 (calendrier grégorien, années de mars à février)
+        long z = Jours + 719468;
+        long Ere = Math.floorDiv(z, 146097);
+        long JourEre = z - Ere * 146097;
+        long AnEre = (JourEre - JourEre / 1460 + JourEre / 36524 - JourEre / 146096) / 365;
+        long JourAn = JourEre - (365 * AnEre + AnEre / 4 - AnEre / 100);
+        long MoisMars = (5 * JourAn + 2) / 153;
+        long Jour = JourAn - (153 * MoisMars + 2) / 5 + 1;
+        long Mois = MoisMars < 10 ? MoisMars + 3 : MoisMars - 9;
+        long Annee = AnEre + Ere * 400 + (Mois <= 2 ? 1 : 0);
+
+        AjouterEntier(Sortie, Annee, 4);
+        Sortie.put((byte)'-');
+        AjouterEntier(Sortie, Mois, 2);
+        Sortie.put((byte)'-');
+        AjouterEntier(Sortie, Jour, 2);
+        Sortie.put((byte)'T');
+        AjouterEntier(Sortie, Ms / 3600000, 2);
+        Sortie.put((byte)':');
+        AjouterEntier(Sortie, Ms / 60000 % 60, 2);
+
+        if (Ms % 60000 != 0)
+        {
+            Sortie.put((byte)':');
+            AjouterEntier(Sortie, Ms / 1000 % 60, 2);
+
+            if (Ms % 1000 != 0)
+            {
+                Sortie.put((byte)'.');
+                AjouterEntier(Sortie, Ms % 1000, 3);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * @file   Etage.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Étage du pipeline d'ingestion du serveur: un thread qui traite les lectures une à la fois.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Un étage lecteur de la file des lectures (AnneauLectures): un thread qui traite toutes les lectures dans l'ordre, avec son propre curseur
+//La lecture traitée est copiée dans m_Lecture, réutilisée pour chaque lecture. Un étage qui a un m_Precedent ne traite une lecture qu'après lui
+public abstract class Etage implements Runnable
+{
+    String m_Nom;
+    AnneauLectures m_Anneau;
+    Etage m_Precedent;                                                      //Étage qui doit avoir traité une lecture avant celui-ci, null: aucun
+    Thread m_Thread;
+    private AtomicLong m_Curseur = new AtomicLong();                        //Nombre de lectures traitées par cet étage (prochaine lecture à traiter)
+    private Lecture m_Lecture = new Lecture();
+
+    AtomicLong m_Erreurs = new AtomicLong();                                //Nombre de lectures dont le traitement s'est terminé par une erreur
+    AtomicLong m_ServiceTotal = new AtomicLong();                           //Temps total (ns) de traitement
+    AtomicLong m_ServiceMax = new AtomicLong();                             //Plus long traitement (ns)
+    AtomicLong m_RetardMax = new AtomicLong();                              //Plus grand nombre de lectures en attente pour cet étage
+
+    public Etage(String Nom, AnneauLectures Anneau)
+    {
+        m_Nom = Nom;
+        m_Anneau = Anneau;
+    }
+
+    public void Demarrer()
+    {
+        m_Thread = new Thread(this, "Etage " + m_Nom);
+        m_Thread.start();
+    }
+
+    public long Curseur()
+    {
+        return m_Curseur.get();
+    }
+
+    //Traite une lecture, appelée par le thread de l'étage seulement
+    abstract void Traiter(Lecture Donnees) throws Exception;
+
+    //Délai maximal (ms) d'attente d'une nouvelle lecture avant d'appeler Pause, 0 pour attendre sans limite
+    long AttenteMaximale()
+    {
+        return 0;
+    }
+
+    //Appelée quand l'étage à traité toutes les lectures publiées ou que AttenteMaximale est écoulée
+    void Pause() throws Exception
+    {
+    }
+
+    public void run()
+    {
+        long Prochaine = m_Curseur.get();
+
+        while (true)
+        {
+            try
+            {
+                long Ecrites = m_Anneau.Attendre(Prochaine, m_Precedent, AttenteMaximale());
+
+                if (Ecrites - Prochaine > m_RetardMax.get())
+                {
+                    m_RetardMax.set(Ecrites - Prochaine);
+                }
+
+                while (Prochaine < Ecrites)                                 //Traite d'un coup toutes les lectures déjà publiées
+                {
+                    m_Anneau.Lire(Prochaine, m_Lecture);
+                    long Debut = System.nanoTime();
+
+                    try
+                    {
+                        Traiter(m_Lecture);
+                    }
+
+                    catch (InterruptedException e)
+                    {
+                        throw e;
+                    }
+
+                    catch (Exception e)
+                    {
+                        m_Erreurs.incrementAndGet();
+                        System.out.println(e.toString());                   //Affiche l'erreur survenue en Java
+                    }
+
+                    long Service = System.nanoTime() - Debut;
+                    m_ServiceTotal.addAndGet(Service);
+
+                    if (Service > m_ServiceMax.get())
+                    {
+                        m_ServiceMax.set(Service);
+                    }
+
+                    Prochaine++;
+                    m_Curseur.set(Prochaine);                               //Libère la case pour m_tService et pour l'étage suivant
+                    m_Anneau.Signaler();
+                }
+
+                try
+                {
+                    Pause();
+                }
+
+                catch (InterruptedException e)
+                {
+                    throw e;
+                }
+
+                catch (Exception e)
+                {
+                    m_Erreurs.incrementAndGet();
+                    System.out.println(e.toString());
+                }
+            }
+
+            catch (InterruptedException e)
+            {
+                System.out.println(e.toString());
+                return;
+            }
+        }
+    }
+
+    public String Resume()
+    {
+        long Traites = m_Curseur.get();
+
+        return "Étage " + m_Nom + ": " + (m_Anneau.Ecrites() - Traites) + "/" + m_Anneau.Capacite() + " lectures en attente (max " + m_RetardMax.get() + "), " + Traites + " traitées, " + m_Erreurs.get() + " erreurs"
+             + (Traites > 0 ? ", Service moyen: " + (m_ServiceTotal.get() / Traites / 1000) + " us, Service max: " + (m_ServiceMax.get() / 1000) + " us" : "");
+    }
+}
@@ -0,0 +1,580 @@
+/**
+ * @file   EtageCumuls.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Étage Cumuls du pipeline: cumuls de chaque appareil par minute et par heure, ajoutés à cumuls.fichier.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+//Étage Cumuls: nombre, min, max, moyenne et dernière valeur de T, P, H et R pour chaque appareil, par minute et par heure de l'heure locale.
+//Chaque lecture met à jour les fenêtres en cours de son appareil (CumulFenetre) en O(1), aucune lecture n'est gardée.
+//Une fenêtre est fermée par la première lecture de la fenêtre suivante, ou par Pause quand elle est finie. Les fenêtres de la durée
+//cumuls.envoi (heure ou minute) sont alors ajoutées à cumuls.fichier, une ligne json par fenêtre, envoyées par EnvoieInformations
+//avec envoi.contenu=cumuls. Seules les mesures sont cumulées: les trames du bouton et les trames à 0 envoyées à l'arrêt sont ignorées.
+//L'état (fenêtres en cours, cumuls à envoyer) est enregistré périodiquement; au démarrage, seules les lectures du journal reçues après sont relues.
+//Les lectures reçues avant que l'heure réelle soit connue ne sont pas cumulées: elles sont relues du journal une fois leur heure corrigée.
+public class EtageCumuls extends Etage
+{
+    static final long MINUTE = CumulFenetre.MINUTE;
+    static final long HEURE = CumulFenetre.HEURE;
+    private static final int NB_APPAREILS = 16;
+    private static final long TEMPS_VERIFICATION = 1000;                    //Délai maximal (ms) entre deux vérifications des fenêtres finies
+    private static final int MAGIE_ETAT = 0x4E455045;                       //"NEPE"
+    private static final int VERSION_ETAT = 1;
+    private static final int TAILLE_ETAT = 80 + NB_APPAREILS * (14 + 2 * CumulFenetre.TAILLE_ETAT);
+
+    private JournalSegmente m_Journal;
+    private HorlogePasserelle m_Horloge;
+    private long m_Provisoires = 0;                                         //Lectures pas cumulées parce que leur heure est provisoire
+    private Path m_Etat = Paths.get(Configuration.Texte("journal.dossier", "/home/pi/ProjetNepal/Journal")).resolve("etat");     //Dernier état enregistré, à côté du journal
+    private Path m_EtatTemporaire = m_Etat.resolveSibling("etat.tmp");
+    private long m_PeriodeEtat = Configuration.Entier("etat.periode_ms", 60000);
+    private long m_DelaiUrgence = Configuration.Entier("etat.arret_ms", 2000);   //Attente maximale de l'état à l'arrêt du serveur
+    private long m_DernierEtat = System.currentTimeMillis();
+    private volatile boolean m_EtatDemande = false;
+    private ByteBuffer m_Tampon = ByteBuffer.allocate(TAILLE_ETAT);
+    private CRC32 m_Crc = new CRC32();
+    private boolean m_Rejeu = false;                                        //Relecture du journal au démarrage: les fenêtres fermées ont déjà été écrites
+    private long[] m_DerniereHeure = new long[NB_APPAREILS];               //Heure de réception de la dernière lecture cumulée de chaque appareil,
+    private int[] m_NbDerniereHeure = new int[NB_APPAREILS];               //et nombre de lectures cumulées à cette heure (pour la relecture du journal)
+
+    private TimeZone m_Fuseau = TimeZone.getDefault();                      //Fuseau horaire du Pi, réutilisé pour chaque lecture
+    private Path m_Fichier = Paths.get(Configuration.Texte("cumuls.fichier", "/home/pi/ProjetNepal/cumuls.txt"));
+    private Path m_FichierEnvoi = m_Fichier.resolveSibling(m_Fichier.getFileName() + ".envoi");     //Cumuls pris par EnvoieInformations
+    private long m_DureeEnvoyee = Configuration.Texte("cumuls.envoi", "heure").equals("minute") ? MINUTE : HEURE;
+
+    private CumulFenetre[] m_Minutes = new CumulFenetre[NB_APPAREILS];      //Fenêtres en cours de chaque appareil (utilisées par le thread de l'étage seulement)
+    private CumulFenetre[] m_Heures = new CumulFenetre[NB_APPAREILS];
+    private int m_NbAppareils = 0;
+    private StringBuilder m_Ligne = new StringBuilder();
+    private Writer m_Sortie = null;                                         //cumuls.fichier ouvert en ajout (protégé par this)
+
+    private long m_NbFichier = 0;                                           //Cumuls en attente dans chaque fichier et début de la plus vieille fenêtre (protégés par this)
+    private long m_NbEnvoi = 0;
+    private long m_PlusAncienFichier = 0;
+    private long m_PlusAncienEnvoi = 0;
+
+    AtomicLong m_Fermees = new AtomicLong();                                //Fenêtres fermées (minutes et heures)
+    AtomicLong m_Ignorees = new AtomicLong();                               //Lectures qui ne sont pas des mesures, ou d'un appareil de trop
+    AtomicLong m_Etats = new AtomicLong();                                  //Nombre d'états enregistrés
+    AtomicLong m_EtatTotal = new AtomicLong();                              //Temps total (ns) des enregistrements de l'état
+    private String m_Rechargement = "pas encore rechargé";                  //Résultat du rechargement au démarrage
+
+    public EtageCumuls(AnneauLectures Anneau, JournalSegmente Journal, HorlogePasserelle Horloge)
+    {
+        super("Cumuls", Anneau);
+        m_Journal = Journal;
+        m_Horloge = Horloge;
+    }
+
+    //Recharge l'état enregistré et relit les lectures du journal reçues après, avant de démarrer le thread de l'étage
+    //(le journal doit être ouvert). Sans état, les fenêtres en cours avant le redémarrage sont perdues
+    public void Demarrer()
+    {
+        long Debut = System.nanoTime();
+
+        try
+        {
+            long Segment = ChargerEtat();
+
+            if (Segment > 0)
+            {
+                long Relues = Rejouer(Segment - 1, Long.MAX_VALUE, true);  //Le segment précédent aussi: l'étage pouvait avoir du retard sur l'étage Enregistrement
+
+                m_Rechargement = "état de " + m_NbAppareils + " appareils, " + Relues + " lectures relues depuis le segment " + (Segment - 1);
+            }
+
+            else
+            {
+                m_NbFichier = Compter(m_Fichier);                           //Cumuls pas encore envoyés avant le redémarrage
+                m_NbEnvoi = Compter(m_FichierEnvoi);
+                m_PlusAncienFichier = m_NbFichier > 0 ? System.currentTimeMillis() : 0;
+                m_PlusAncienEnvoi = m_NbEnvoi > 0 ? System.currentTimeMillis() : 0;
+                m_Rechargement = "pas d'état enregistré, " + (m_NbFichier + m_NbEnvoi) + " cumuls à envoyer comptés";
+            }
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());
+            m_Rechargement = "erreur: " + e.toString();
+        }
+
+        m_Rechargement += ", en " + ((System.nanoTime() - Debut) / 1000) + " us";
+        System.out.println("Cumuls: " + m_Rechargement);
+
+        super.Demarrer();
+    }
+
+    public String Rechargement()
+    {
+        return "cumuls: " + m_Rechargement;
+    }
+
+    //Lit l'état enregistré: retourne le segment actif du journal à ce moment, 0 s'il n'y a pas d'état valide
+    long ChargerEtat() throws IOException
+    {
+        byte[] Octets;
+
+        try
+        {
+            Octets = Files.readAllBytes(m_Etat);
+        }
+
+        catch (NoSuchFileException e)
+        {
+            return 0;
+        }
+
+        ByteBuffer Etat = ByteBuffer.wrap(Octets);
+
+        m_Crc.reset();
+        m_Crc.update(Octets, 0, Math.max(Octets.length - 4, 0));
+
+        if (Octets.length < 80 || Etat.getInt(0) != MAGIE_ETAT || Etat.getInt(4) != VERSION_ETAT || Etat.getInt(Octets.length - 4) != (int)m_Crc.getValue())
+        {
+            System.out.println("Cumuls: état " + m_Etat + " invalide, ignoré");
+            return 0;
+        }
+
+        Etat.position(8);
+        long Moment = Etat.getLong();
+        long Segment = Etat.getLong();
+        long NbFichier = Etat.getLong();
+        long PlusAncienFichier = Etat.getLong();
+        long TailleFichier = Etat.getLong();
+        long NbEnvoi = Etat.getLong();
+        long PlusAncienEnvoi = Etat.getLong();
+        long TailleEnvoi = Etat.getLong();
+        int NbAppareils = Etat.getInt();
+
+        for (int i = 0; i < NbAppareils && i < NB_APPAREILS; i++)
+        {
+            char ID1 = (char)Etat.get();
+            char ID2 = (char)Etat.get();
+
+            m_DerniereHeure[i] = Etat.getLong();
+            m_NbDerniereHeure[i] = Etat.getInt();
+            m_Minutes[i] = new CumulFenetre(ID1, ID2, MINUTE);
+            m_Heures[i] = new CumulFenetre(ID1, ID2, HEURE);
+            m_Minutes[i].Lire(Etat);
+            m_Heures[i].Lire(Etat);
+        }
+
+        m_NbAppareils = Math.min(NbAppareils, NB_APPAREILS);
+
+        //Les nombres de cumuls à envoyer sont gardés si les fichiers n'ont pas changé depuis (sinon ils sont recomptés)
+        m_NbFichier = Taille(m_Fichier) == TailleFichier ? NbFichier : Compter(m_Fichier);
+        m_PlusAncienFichier = m_NbFichier == 0 ? 0 : Taille(m_Fichier) == TailleFichier ? PlusAncienFichier : Moment;
+        m_NbEnvoi = Taille(m_FichierEnvoi) == TailleEnvoi ? NbEnvoi : Compter(m_FichierEnvoi);
+        m_PlusAncienEnvoi = m_NbEnvoi == 0 ? 0 : Taille(m_FichierEnvoi) == TailleEnvoi ? PlusAncienEnvoi : Moment;
+
+        return Segment;
+    }
+
+    static long Taille(Path Fichier) throws IOException
+    {
+        return Files.exists(Fichier) ? Files.size(Fichier) : -1;
+    }
+
+    //Relit les lectures du journal (et de l'archive) des segments Premier à Dernier, en sautant celles déjà cumulées dans l'état chargé.
+    //Avec DejaEcrites (redémarrage), les fenêtres fermées pendant la relecture, ou qui étaient finies à la dernière lecture, ont été écrites avant
+    long Rejouer(long Premier, long Dernier, boolean DejaEcrites) throws Exception
+    {
+        List<Path> Segments = new ArrayList<Path>();
+        Lecture Donnees = new Lecture();
+        int NbEtat = m_NbAppareils;
+        int[] ASauter = Arrays.copyOf(m_NbDerniereHeure, NB_APPAREILS);
+        long Relues = 0;
+        long Derniere = 0;
+
+        for (Path Segment : m_Journal.SegmentsScelles())
+        {
+            if (JournalSegmente.Numero(Segment) >= Premier && JournalSegmente.Numero(Segment) <= Dernier)
+            {
+                Segments.add(Segment);
+            }
+        }
+
+        for (Path Segment : RetentionJournal.Segments(m_Journal.m_Archive))
+        {
+            if (JournalSegmente.Numero(Segment) >= Premier && JournalSegmente.Numero(Segment) <= Dernier)
+            {
+                Segments.add(Segment);
+            }
+        }
+
+        Segments.sort((a, b) -> Long.compare(JournalSegmente.Numero(a), JournalSegmente.Numero(b)));
+        m_Rejeu = DejaEcrites;
+
+        try
+        {
+            for (Path Segment : Segments)
+            {
+                try (LecteurSegment Lecteur = new LecteurSegment(Segment))
+                {
+                    while (Lecteur.Suivante(Donnees))
+                    {
+                        int i = Appareil(Donnees, NbEtat);
+
+                        if (i >= 0 && (Donnees.m_HeureReception < m_DerniereHeure[i] || (Donnees.m_HeureReception == m_DerniereHeure[i] && ASauter[i]-- > 0)))
+                        {
+                            continue;                                       //Déjà dans l'état
+                        }
+
+                        Cumuler(Donnees);
+                        Derniere = Math.max(Derniere, Donnees.m_HeureReception);
+                        Relues++;
+                    }
+                }
+
+                catch (IOException e)
+                {
+                    System.out.println(e.toString());                       //Segment illisible, ses lectures ne sont pas cumulées
+                }
+            }
+
+            for (int i = 0; i < m_NbAppareils && Derniere > 0; i++)
+            {
+                if (m_Minutes[i].m_Nombre > 0 && Derniere >= m_Minutes[i].m_Debut + MINUTE)
+                {
+                    Fermer(m_Minutes[i]);
+                }
+
+                if (m_Heures[i].m_Nombre > 0 && Derniere >= m_Heures[i].m_Debut + HEURE)
+                {
+                    Fermer(m_Heures[i]);
+                }
+            }
+        }
+
+        finally
+        {
+            m_Rejeu = false;
+        }
+
+        return Relues;
+    }
+
+    //Index de l'appareil parmi les NbAppareils premiers, -1 s'il n'y est pas
+    int Appareil(Lecture Donnees, int NbAppareils)
+    {
+        for (int i = 0; i < NbAppareils; i++)
+        {
+            if (m_Minutes[i].m_ID1 == Donnees.m_ID1 && m_Minutes[i].m_ID2 == Donnees.m_ID2)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    static long Compter(Path Fichier)
+    {
+        try
+        {
+            return Files.exists(Fichier) ? Files.readAllLines(Fichier).size() : 0;
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());
+            return 0;
+        }
+    }
+
+    void Traiter(Lecture Donnees) throws Exception
+    {
+        if (m_Horloge.Provisoire(Curseur()))                                //Relue du journal quand son heure sera corrigée
+        {
+            m_Provisoires++;
+            return;
+        }
+
+        if (m_Provisoires > 0)
+        {
+            Recumuler();
+        }
+
+        Cumuler(Donnees);
+    }
+
+    //L'heure réelle est connue: attend que l'étage Enregistrement ait corrigé le journal, puis cumule les lectures reçues avant
+    void Recumuler() throws Exception
+    {
+        long Debut = System.nanoTime();
+
+        m_Horloge.Attendre();
+
+        long Provisoires = m_Provisoires;
+
+        m_Provisoires = 0;
+        System.out.println("Cumuls: " + Rejouer(m_Journal.m_PremierSegment, m_Journal.m_DernierProvisoire, false) + " lectures relues du journal corrigé (" + Provisoires + " reçues avant l'heure réelle) en "
+                         + ((System.nanoTime() - Debut) / 1000) + " us");
+    }
+
+    void Cumuler(Lecture Donnees) throws Exception
+    {
+        if (Donnees.m_Type != Trame.TYPE_MESURE)
+        {
+            m_Ignorees.incrementAndGet();
+            return;
+        }
+
+        int i = 0;
+
+        while (i < m_NbAppareils && (m_Minutes[i].m_ID1 != Donnees.m_ID1 || m_Minutes[i].m_ID2 != Donnees.m_ID2))
+        {
+            i++;
+        }
+
+        if (i == m_NbAppareils)
+        {
+            if (i == NB_APPAREILS)
+            {
+                m_Ignorees.incrementAndGet();
+                return;
+            }
+
+            m_Minutes[i] = new CumulFenetre(Donnees.m_ID1, Donnees.m_ID2, MINUTE);
+            m_Heures[i] = new CumulFenetre(Donnees.m_ID1, Donnees.m_ID2, HEURE);
+            m_NbAppareils++;
+        }
+
+        Ajouter(m_Minutes[i], Donnees);
+        Ajouter(m_Heures[i], Donnees);
+
+        if (Donnees.m_HeureReception != m_DerniereHeure[i])
+        {
+            m_DerniereHeure[i] = Donnees.m_HeureReception;
+            m_NbDerniereHeure[i] = 0;
+        }
+
+        m_NbDerniereHeure[i]++;
+    }
+
+    void Ajouter(CumulFenetre Cumul, Lecture Donnees) throws IOException
+    {
+        long Debut = CumulFenetre.Debut(Donnees.m_HeureReception, Cumul.m_Duree, m_Fuseau);
+
+        if (Cumul.m_Nombre > 0 && Debut != Cumul.m_Debut)
+        {
+            Fermer(Cumul);
+        }
+
+        Cumul.Ajouter(Debut, Donnees);
+    }
+
+    long AttenteMaximale()
+    {
+        return TEMPS_VERIFICATION;
+    }
+
+    //Ferme les fenêtres finies des appareils qui n'ont pas envoyé de lecture depuis, enregistre l'état à chaque etat.periode_ms
+    void Pause() throws Exception
+    {
+        long Maintenant = System.currentTimeMillis();
+
+        if (m_Provisoires > 0 && m_Horloge.Provisoire(Curseur()) == false)
+        {
+            Recumuler();
+        }
+
+        if (m_EtatDemande || (m_PeriodeEtat > 0 && Maintenant - m_DernierEtat >= m_PeriodeEtat))
+        {
+            m_DernierEtat = Maintenant;
+            EcrireEtat();
+            m_EtatDemande = false;
+        }
+
+        for (int i = 0; i < m_NbAppareils; i++)
+        {
+            if (m_Minutes[i].m_Nombre > 0 && Maintenant >= m_Minutes[i].m_Debut + MINUTE)
+            {
+                Fermer(m_Minutes[i]);
+            }
+
+            if (m_Heures[i].m_Nombre > 0 && Maintenant >= m_Heures[i].m_Debut + HEURE)
+            {
+                Fermer(m_Heures[i]);
+            }
+        }
+    }
+
+    void Fermer(CumulFenetre Cumul) throws IOException
+    {
+        m_Fermees.incrementAndGet();
+
+        if (Cumul.m_Duree == m_DureeEnvoyee && m_Rejeu == false)
+        {
+            m_Ligne.setLength(0);
+            Cumul.Ecrire(m_Ligne);
+            Ecrire(m_Ligne.append('\n').toString(), Cumul.m_Debut);
+        }
+
+        Cumul.m_Nombre = 0;
+    }
+
+    //Enregistre les fenêtres en cours et les cumuls à envoyer dans "etat" (écrit et forcé dans "etat.tmp", puis renommé: l'ancien ou le nouveau état,
+    //jamais un mélange des deux), avec le segment actif du journal: au démarrage, seules les lectures à partir de ce segment sont relues
+    void EcrireEtat() throws IOException
+    {
+        long Debut = System.nanoTime();
+
+        m_Tampon.clear();
+        m_Tampon.putInt(MAGIE_ETAT);
+        m_Tampon.putInt(VERSION_ETAT);
+        m_Tampon.putLong(System.currentTimeMillis());
+        m_Tampon.putLong(m_Journal.SegmentActif());
+
+        synchronized (this)
+        {
+            m_Tampon.putLong(m_NbFichier);
+            m_Tampon.putLong(m_PlusAncienFichier);
+            m_Tampon.putLong(Taille(m_Fichier));
+            m_Tampon.putLong(m_NbEnvoi);
+            m_Tampon.putLong(m_PlusAncienEnvoi);
+            m_Tampon.putLong(Taille(m_FichierEnvoi));
+        }
+
+        m_Tampon.putInt(m_NbAppareils);
+
+        for (int i = 0; i < m_NbAppareils; i++)
+        {
+            m_Tampon.put((byte)m_Minutes[i].m_ID1);
+            m_Tampon.put((byte)m_Minutes[i].m_ID2);
+            m_Tampon.putLong(m_DerniereHeure[i]);
+            m_Tampon.putInt(m_NbDerniereHeure[i]);
+            m_Minutes[i].Ecrire(m_Tampon);
+            m_Heures[i].Ecrire(m_Tampon);
+        }
+
+        m_Crc.reset();
+        m_Crc.update(m_Tampon.array(), 0, m_Tampon.position());
+        m_Tampon.putInt((int)m_Crc.getValue());
+        m_Tampon.flip();
+
+        Files.createDirectories(m_Etat.getParent());
+
+        try (FileChannel Canal = FileChannel.open(m_EtatTemporaire, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (m_Tampon.hasRemaining())
+            {
+                Canal.write(m_Tampon);
+            }
+
+            Canal.force(true);
+        }
+
+        Files.move(m_EtatTemporaire, m_Etat, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        m_Etats.incrementAndGet();
+        m_EtatTotal.addAndGet(System.nanoTime() - Debut);
+    }
+
+    //Crochet d'arrêt du serveur: attend que les lectures déjà reçues soient cumulées et que l'état soit enregistré (au plus etat.arret_ms),
+    //le prochain démarrage n'aura presque rien à relire
+    public void Urgence()
+    {
+        try
+        {
+            long Limite = System.currentTimeMillis() + m_DelaiUrgence;
+            long Ecrites = m_Anneau.Ecrites();
+
+            while (Curseur() < Ecrites && System.currentTimeMillis() < Limite)
+            {
+                Thread.sleep(10);
+            }
+
+            m_EtatDemande = true;
+
+            while (m_EtatDemande && System.currentTimeMillis() < Limite)
+            {
+                Thread.sleep(10);
+            }
+
+            System.out.println("Arrêt: état des cumuls " + (m_EtatDemande ? "pas enregistré" : "enregistré"));
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    synchronized void Ecrire(String Ligne, long Debut) throws IOException
+    {
+        if (m_Sortie == null)
+        {
+            m_Sortie = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_Fichier.toFile(), true), "UTF-8"));
+        }
+
+        m_Sortie.write(Ligne);
+        m_Sortie.flush();
+
+        m_NbFichier++;
+        m_PlusAncienFichier = m_PlusAncienFichier == 0 ? Debut : Math.min(m_PlusAncienFichier, Debut);
+    }
+
+    //Appelée par EnvoieInformations: fichier des cumuls à envoyer (les cumuls fermés ensuite iront dans un nouveau cumuls.fichier), null s'il n'y en a pas
+    //Si l'envoi précédent ne s'est pas terminé, ses cumuls sont renvoyés d'abord
+    public synchronized Path Prendre() throws IOException
+    {
+        if (Files.exists(m_FichierEnvoi) == false && Files.exists(m_Fichier))
+        {
+            if (m_Sortie != null)
+            {
+                m_Sortie.close();
+                m_Sortie = null;
+            }
+
+            Files.move(m_Fichier, m_FichierEnvoi, StandardCopyOption.ATOMIC_MOVE);
+            m_NbEnvoi = m_NbFichier;
+            m_PlusAncienEnvoi = m_PlusAncienFichier;
+            m_NbFichier = 0;
+            m_PlusAncienFichier = 0;
+        }
+
+        return Files.exists(m_FichierEnvoi) ? m_FichierEnvoi : null;
+    }
+
+    //Tous les cumuls du fichier pris par Prendre ont été confirmés
+    public synchronized void Envoyes(Path Fichier) throws IOException
+    {
+        Files.deleteIfExists(Fichier);
+        m_NbEnvoi = 0;
+        m_PlusAncienEnvoi = 0;
+    }
+
+    public synchronized long NbEnAttente()
+    {
+        return m_NbFichier + m_NbEnvoi;
+    }
+
+    //Début de la plus vieille fenêtre pas encore envoyée, 0 s'il n'y en a pas
+    public synchronized long PlusAncienEnAttente()
+    {
+        return m_PlusAncienEnvoi > 0 ? m_PlusAncienEnvoi : m_PlusAncienFichier;
+    }
+
+    public String Resume()
+    {
+        long Etats = m_Etats.get();
+
+        return super.Resume() + ", " + m_NbAppareils + " appareils, " + m_Fermees.get() + " fenêtres fermées, " + NbEnAttente() + " cumuls à envoyer, " + m_Ignorees.get() + " lectures pas cumulées"
+             + ", " + Etats + " états enregistrés" + (Etats > 0 ? " (" + (m_EtatTotal.get() / Etats / 1000) + " us en moyenne)" : "") + ", démarrage: " + m_Rechargement;
+    }
+}
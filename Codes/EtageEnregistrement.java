@@ -0,0 +1,308 @@
+/**
+ * @file   EtageEnregistrement.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Étage Enregistrement du pipeline: les lectures sont gardées sur la carte SD jusqu'à leur envoi.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Étage Enregistrement: ajoute au journal (JournalSegmente) les lectures que l'étage Liaison n'a pas envoyées (mode normal, ou envoi du mode debug
+//raté). Il passe après l'étage Liaison (m_Precedent)
+//Un ajout est une copie dans le segment projeté en mémoire. Les lectures ajoutées pendant la fenêtre (enregistrement.fenetre_ms),
+//ou jusqu'à enregistrement.max_lectures, forment un lot: avec enregistrement.fsync=lot, le segment est forcé sur la carte SD une fois par lot
+//Niveaux de durabilité (enregistrement.fsync), du moins sûr au plus sûr: memoire (segment actif dans journal.memoire, un tmpfs, copié sur la carte SD
+//quand il est scellé), aucune, periodique, lot, lecture (fsync après chaque lecture). À l'arrêt du serveur, le segment actif est scellé (Urgence)
+//S'occupe aussi de sceller le segment actif quand il est trop vieux ou quand EnvoieInformations le demande, et de corriger l'heure des lectures
+//reçues avant que l'heure réelle soit connue (HorlogePasserelle), gardées dans le journal même en mode debug
+public class EtageEnregistrement extends Etage
+{
+    private static final long TEMPS_VERIFICATION = 1000;                    //Délai maximal (ms) entre deux vérifications de l'âge du segment et des demandes de scellement
+    private static final long REPRISE_MIN = 100;                            //Délai (ms) avant de réessayer un ajout au journal qui a échoué, doublé à chaque échec
+    private static final long REPRISE_MAX = 5000;
+
+    static final int SYNCHRO_AUCUNE = 0;                                    //Le système écrit sur la carte SD quand il le décide
+    static final int SYNCHRO_LOT = 1;                                       //force() après chaque lot
+    static final int SYNCHRO_PERIODIQUE = 2;                                //force() au plus une fois par enregistrement.fsync_ms
+    static final int SYNCHRO_LECTURE = 3;                                   //force() après chaque lecture
+    static final int SYNCHRO_MEMOIRE = 4;                                   //Segment actif en mémoire (tmpfs), sur la carte SD seulement quand il est scellé
+
+    private Serveur m_Parent;
+    JournalSegmente m_Journal = new JournalSegmente();
+
+    private long m_Fenetre = Configuration.Entier("enregistrement.fenetre_ms", 100);
+    private int m_MaxLot = (int)Configuration.Entier("enregistrement.max_lectures", 64);
+    private int m_Synchro = Synchronisation(Configuration.Texte("enregistrement.fsync", "aucune"));
+    private long m_PeriodeSynchro = Configuration.Entier("enregistrement.fsync_ms", 5000);
+    private long m_DelaiUrgence = Configuration.Entier("enregistrement.arret_ms", 3000);   //Attente maximale du scellement à l'arrêt du serveur
+
+    private int m_NbLot = 0;                                                //Nombre de lectures ajoutées depuis la fin du dernier lot
+    private long m_DebutLot;                                                //Moment (ms) où la première lecture du lot à été ajoutée
+    private boolean m_NonSynchronise = false;                               //Des lectures n'ont pas encore été forcées sur la carte SD
+    private long m_DerniereSynchro = System.currentTimeMillis();
+
+    AtomicLong m_Lots = new AtomicLong();                                   //Nombre de lots terminés
+    AtomicLong m_LecturesLots = new AtomicLong();                           //Nombre de lectures dans les lots terminés
+    AtomicLong m_LotMax = new AtomicLong();                                 //Plus grand nombre de lectures dans un lot
+    AtomicLong m_Synchros = new AtomicLong();                               //Nombre de force() du segment actif
+    AtomicLong m_SynchroTotale = new AtomicLong();                          //Temps total (ns) des force()
+    AtomicLong m_SynchroMax = new AtomicLong();
+    AtomicLong m_Reprises = new AtomicLong();                               //Nombre d'ajouts au journal réessayés après une erreur d'écriture
+
+    public EtageEnregistrement(Serveur Parent, AnneauLectures Anneau)
+    {
+        super("Enregistrement", Anneau);
+        m_Parent = Parent;
+
+        if (m_Synchro == SYNCHRO_MEMOIRE)
+        {
+            m_Journal.Memoire(Paths.get(Configuration.Texte("journal.memoire", "/dev/shm/ProjetNepal")), Configuration.Entier("journal.memoire_taille", 262144), Configuration.Entier("journal.memoire_ms", 300000));
+        }
+
+        System.out.println("Enregistrement: fenêtre de " + m_Fenetre + " ms, " + m_MaxLot + " lectures au plus par lot, fsync " + Configuration.Texte("enregistrement.fsync", "aucune")
+                         + (m_Synchro == SYNCHRO_PERIODIQUE ? " (" + m_PeriodeSynchro + " ms)" : ""));
+    }
+
+    static int Synchronisation(String Texte)
+    {
+        if (Texte.equals("lot"))
+        {
+            return SYNCHRO_LOT;
+        }
+
+        if (Texte.equals("periodique"))
+        {
+            return SYNCHRO_PERIODIQUE;
+        }
+
+        if (Texte.equals("lecture"))
+        {
+            return SYNCHRO_LECTURE;
+        }
+
+        if (Texte.equals("memoire"))
+        {
+            return SYNCHRO_MEMOIRE;
+        }
+
+        return SYNCHRO_AUCUNE;
+    }
+
+    //Récupère le journal (fin de segment corrompue) avant de démarrer le thread de l'étage
+    public void Demarrer()
+    {
+        try
+        {
+            m_Journal.Ouvrir();
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());                               //Sera réessayé au premier ajout
+        }
+
+        super.Demarrer();
+    }
+
+    void Traiter(Lecture Donnees) throws Exception
+    {
+        boolean Provisoire = m_Parent.m_Horloge.Provisoire(Curseur());
+
+        if (Provisoire == false && m_Parent.m_Horloge.Corrigee() == false)  //Première lecture avec l'heure réelle
+        {
+            Corriger();
+        }
+
+        if (Donnees.m_Envoyee)                                              //Mode debug: déjà envoyée par l'étage Liaison
+        {
+            return;
+        }
+
+        if (m_NbLot == 0)
+        {
+            m_DebutLot = System.currentTimeMillis();
+        }
+
+        Ajouter(Donnees);
+        m_NbLot++;
+
+        if (m_Synchro == SYNCHRO_LECTURE)
+        {
+            Synchroniser();
+        }
+
+        if (m_NbLot >= m_MaxLot)
+        {
+            TerminerLot();
+        }
+    }
+
+    //Ajoute la lecture au journal. Une erreur d'écriture (carte SD pleine ou défectueuse) est réessayée avec un délai croissant, sans avancer
+    //le curseur de l'étage: la lecture n'est pas perdue, m_Anneau se remplit et m_tService suspend les connexions des clients jusqu'à ce que ça passe
+    void Ajouter(Lecture Donnees) throws InterruptedException
+    {
+        long Delai = REPRISE_MIN;
+
+        while (true)
+        {
+            try
+            {
+                m_Journal.Ajouter(Donnees);
+                return;
+            }
+
+            catch (IOException | InternalError e)                           //InternalError: écriture dans la projection d'un fichier sans espace disque
+            {
+                m_Reprises.incrementAndGet();
+                System.out.println("Enregistrement: " + e.toString() + ", nouvel essai dans " + Delai + " ms");
+                Thread.sleep(Delai);
+                Delai = Math.min(Delai * 2, REPRISE_MAX);
+            }
+        }
+    }
+
+    long AttenteMaximale()
+    {
+        long Maintenant = System.currentTimeMillis();
+        long Attente = TEMPS_VERIFICATION;
+
+        if (m_NbLot > 0)
+        {
+            Attente = Math.min(Attente, m_DebutLot + m_Fenetre - Maintenant);
+        }
+
+        if (m_NonSynchronise && m_Synchro == SYNCHRO_PERIODIQUE)
+        {
+            Attente = Math.min(Attente, m_DerniereSynchro + m_PeriodeSynchro - Maintenant);
+        }
+
+        return Math.max(1, Attente);
+    }
+
+    void Pause() throws Exception
+    {
+        long Maintenant = System.currentTimeMillis();
+
+        if (m_Parent.m_Horloge.Corrigee() == false && m_Parent.m_Horloge.Provisoire(Curseur()) == false)    //Aucune lecture reçue depuis que l'heure est connue
+        {
+            Corriger();
+        }
+
+        if (m_NbLot > 0 && Maintenant - m_DebutLot >= m_Fenetre)
+        {
+            TerminerLot();
+        }
+
+        if (m_NonSynchronise && m_Synchro == SYNCHRO_PERIODIQUE && Maintenant - m_DerniereSynchro >= m_PeriodeSynchro)
+        {
+            Synchroniser();
+        }
+
+        if (m_Journal.ScellementDemande() || m_Journal.TropVieux())
+        {
+            if (m_NbLot > 0)
+            {
+                TerminerLot();
+            }
+
+            m_Journal.Sceller();                                            //Force aussi le segment sur la carte SD
+            m_NonSynchronise = false;
+        }
+    }
+
+    void TerminerLot() throws IOException
+    {
+        m_Lots.incrementAndGet();
+        m_LecturesLots.addAndGet(m_NbLot);
+        m_LotMax.set(Math.max(m_LotMax.get(), m_NbLot));
+        m_NbLot = 0;
+        m_NonSynchronise = m_Synchro != SYNCHRO_LECTURE && m_Synchro != SYNCHRO_MEMOIRE;
+
+        if (m_Synchro == SYNCHRO_LOT)
+        {
+            Synchroniser();
+        }
+    }
+
+    void Synchroniser() throws IOException
+    {
+        long Debut = System.nanoTime();
+
+        m_Journal.Synchroniser();
+
+        long Duree = System.nanoTime() - Debut;
+
+        m_Synchros.incrementAndGet();
+        m_SynchroTotale.addAndGet(Duree);
+        m_SynchroMax.set(Math.max(m_SynchroMax.get(), Duree));
+        m_NonSynchronise = false;
+        m_DerniereSynchro = System.currentTimeMillis();
+    }
+
+    //L'heure réelle est connue: corrige l'heure de réception des lectures ajoutées au journal depuis le démarrage (toutes provisoires)
+    //et scelle le segment actif pour que l'étage Cumuls puisse les relire, puis libère les envois qui attendaient l'heure
+    void Corriger() throws IOException
+    {
+        long Debut = System.nanoTime();
+
+        if (m_NbLot > 0)
+        {
+            TerminerLot();
+        }
+
+        long NbCorrigees = m_Journal.Corriger(m_Parent.m_Horloge.Correction());
+
+        m_NonSynchronise = false;
+        m_Parent.m_Horloge.Corrigee(NbCorrigees, (System.nanoTime() - Debut) / 1000);
+    }
+
+    //Crochet d'arrêt du serveur (SIGTERM, SIGINT): attend que les lectures déjà reçues soient ajoutées au journal et que le thread de l'étage
+    //scelle le segment actif (forcé ou copié sur la carte SD), au plus enregistrement.arret_ms
+    public void Urgence()
+    {
+        try
+        {
+            long Limite = System.currentTimeMillis() + m_DelaiUrgence;
+            long Ecrites = m_Anneau.Ecrites();
+
+            while (Curseur() < Ecrites && System.currentTimeMillis() < Limite)
+            {
+                Thread.sleep(10);
+            }
+
+            if (m_Journal.ScellerAvant(Limite))
+            {
+                System.out.println("Arrêt: journal scellé, " + m_Journal.Niveaux());
+            }
+
+            else
+            {
+                m_Journal.Synchroniser();                                   //Le thread de l'étage ne répond pas, au moins le segment sur la carte SD
+                System.out.println("Arrêt: journal pas scellé après " + m_DelaiUrgence + " ms, " + m_Journal.Niveaux());
+            }
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    public String Resume()
+    {
+        long Lots = m_Lots.get();
+        long Synchros = m_Synchros.get();
+
+        return super.Resume() + (Lots > 0 ? ", Lots: " + Lots + " (" + (m_LecturesLots.get() / (double)Lots) + " lectures par lot, max " + m_LotMax.get() + ")" : "")
+             + (Synchros > 0 ? ", fsync: " + Synchros + " (moyenne " + (m_SynchroTotale.get() / Synchros / 1000) + " us, max " + (m_SynchroMax.get() / 1000) + " us)" : "")
+             + (m_Reprises.get() > 0 ? ", " + m_Reprises.get() + " ajouts réessayés après une erreur d'écriture" : "")
+             + "\n" + m_Journal.Resume();
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * @file   EtageLiaison.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Étage Liaison du pipeline: en mode debug, les lectures sont envoyées une à la fois.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.nio.ByteBuffer;
+
+//Étage Liaison: envoie chaque lecture reçue en mode debug tout de suite par LTE
+//En mode normal, EnvoieInformations envoie les segments scellés du journal, seules les alarmes (FileAlarmes) sont envoyées sans attendre.
+//L'étage Enregistrement passe après celui-ci: une lecture envoyée est marquée dans sa case (AnneauLectures.MarquerEnvoyee), les autres sont
+//ajoutées au journal, même si l'envoi a échoué ou que le mode a changé entre-temps
+public class EtageLiaison extends Etage
+{
+    private Serveur m_Parent;
+    private EncodeurJson m_Encodeur = new EncodeurJson();
+    private ByteBuffer m_Sortie = ByteBuffer.allocate(EncodeurJson.TAILLE_MAX);
+
+    public EtageLiaison(Serveur Parent, AnneauLectures Anneau)
+    {
+        super("Liaison", Anneau);
+        m_Parent = Parent;
+    }
+
+    void Traiter(Lecture Donnees) throws Exception
+    {
+        boolean Provisoire = m_Parent.m_Horloge.Provisoire(Curseur());
+
+        if (Donnees.m_Mode != 1)                                            //Mode à la réception de la lecture
+        {
+            m_Parent.m_Alarmes.Verifier(Donnees, Provisoire);              //La lecture est aussi dans le journal, envoyée plus tard avec les autres
+            return;
+        }
+
+        if (Provisoire)                                                     //Gardée dans le journal, envoyée avec lui quand son heure sera corrigée
+        {
+            System.out.println("Lecture de " + Donnees.ID() + " reçue avant l'heure réelle, gardée dans le journal");
+            return;
+        }
+
+        //Affiche les valeurs reçues (ID, T, P, H, R)
+        System.out.println("ID: "          + Donnees.ID() + " (type " + Donnees.m_Type + ")");
+        System.out.println("Température: " + Donnees.m_T / (double)Trame.ECHELLE);
+        System.out.println("Pression: "    + Donnees.m_P / (double)Trame.ECHELLE);
+        System.out.println("Humidité: "    + Donnees.m_H / (double)Trame.ECHELLE);
+        System.out.println("RPM: "         + Donnees.m_R / (double)Trame.ECHELLE);
+
+        m_Sortie.clear();
+        m_Encodeur.Encoder(Donnees, m_Sortie);
+
+        if (m_Parent.EnvoyerDirectement(new String(m_Sortie.array(), 0, m_Sortie.position(), "US-ASCII")))
+        {
+            m_Anneau.MarquerEnvoyee(Curseur());                             //Curseur(): numéro de la lecture en cours
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * @file   FenetreEnvoi.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Fenêtre des lots envoyés en même temps (envoi.fenetre): le curseur d'envoi n'avance que dans l'ordre du journal.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+
+//Fenêtre d'envois: jusqu'à m_Taille lots envoyés en même temps par la LiaisonMontante (un thread par envoi en vol), pour ne pas attendre
+//chaque aller-retour sur le réseau cellulaire. Chaque lot est réessayé à chaque 30 secondes jusqu'à ce qu'il soit confirmé.
+//Les confirmations arrivent dans n'importe quel ordre, mais le curseur n'avance (et les segments ne sont supprimés) que dans l'ordre du journal:
+//après un redémarrage, l'envoi reprend après le dernier lot confirmé dont tous les lots précédents le sont aussi. Les lots déjà reçus
+//seront renvoyés avec la même clé d'idempotence.
+//Ajouter, FinSegment et Terminer sont appelés par le thread de EnvoieInformations seulement.
+public class FenetreEnvoi
+{
+    static final long TEMPS_REPRISE = 30000;
+
+    private LiaisonMontante m_Liaison;
+    private CurseurEnvoi m_Curseur;
+    private int m_Taille;
+    private long m_Reprise;                                                 //Délai (ms) avant de réessayer un lot pas confirmé
+    private ExecutorService m_Envois;
+    private ArrayDeque<EnvoiEnVol> m_Ordre = new ArrayDeque<EnvoiEnVol>();    //Lots pas encore passés au curseur et fins de segments, dans l'ordre du journal
+    private int m_EnVol = 0;                                                //Lots pas encore confirmés (protégé par this)
+
+    SessionPPP m_Session = null;                                            //Informée de chaque envoi, reconnectée avant une reprise (null: pas de session à suivre)
+
+    volatile long m_Reprises = 0;                                           //Mesures de l'envoi en cours
+    volatile int m_EnVolMax = 0;
+
+    public FenetreEnvoi(LiaisonMontante Liaison, CurseurEnvoi Curseur, int Taille)
+    {
+        this(Liaison, Curseur, Taille, TEMPS_REPRISE);
+    }
+
+    public FenetreEnvoi(LiaisonMontante Liaison, CurseurEnvoi Curseur, int Taille, long Reprise)
+    {
+        m_Liaison = Liaison;
+        m_Reprise = Reprise;
+        m_Curseur = Curseur;
+        m_Taille = Math.max(Taille, 1);
+        m_Envois = Executors.newFixedThreadPool(m_Taille, Tache ->
+        {
+            Thread Envoi = new Thread(Tache, "Envoi");
+            Envoi.setDaemon(true);                                          //N'empêche pas la JVM de s'arrêter (bancs d'essai)
+            return Envoi;
+        });
+    }
+
+    //Envoie un lot qui se termine à la position Fin du segment, attend d'abord qu'une place se libère dans la fenêtre
+    //Segment < 0: lot hors de l'ordre du journal (lectures récentes), le curseur n'avance pas quand il est confirmé
+    public void Ajouter(long Segment, int Fin, String Message, String Cle) throws IOException, InterruptedException
+    {
+        synchronized (this)
+        {
+            while (m_EnVol >= m_Taille)
+            {
+                wait();
+            }
+
+            m_EnVol++;
+            m_EnVolMax = Math.max(m_EnVolMax, m_EnVol);
+        }
+
+        EnvoiEnVol Envoi = new EnvoiEnVol(this, Segment, Fin, Message, Cle, null);
+
+        m_Ordre.add(Envoi);
+        m_Envois.execute(Envoi);
+        Confirmer();
+    }
+
+    //Tous les lots du segment ont été ajoutés: il sera supprimé quand ils seront tous confirmés
+    public void FinSegment(Path Fichier) throws IOException
+    {
+        EnvoiEnVol Fin = new EnvoiEnVol(this, 0, 0, null, null, Fichier);
+
+        Fin.m_Confirme = true;
+        m_Ordre.add(Fin);
+        Confirmer();
+    }
+
+    //Attend que tous les lots soient confirmés
+    public void Terminer() throws IOException, InterruptedException
+    {
+        synchronized (this)
+        {
+            while (m_EnVol > 0)
+            {
+                wait();
+            }
+        }
+
+        Confirmer();
+    }
+
+    //Avance le curseur jusqu'au premier lot pas encore confirmé
+    private void Confirmer() throws IOException
+    {
+        while (m_Ordre.isEmpty() == false && m_Ordre.peek().m_Confirme)
+        {
+            EnvoiEnVol Envoi = m_Ordre.poll();
+
+            if (Envoi.m_Fichier != null)
+            {
+                Files.delete(Envoi.m_Fichier);
+            }
+
+            else if (Envoi.m_Segment >= 0)
+            {
+                m_Curseur.Avancer(Envoi.m_Segment, Envoi.m_Fin);
+            }
+        }
+    }
+
+    //Thread d'un envoi: réessaie jusqu'à ce que le lot soit confirmé
+    void Envoyer(EnvoiEnVol Envoi)
+    {
+        try
+        {
+            while (true)
+            {
+                boolean Envoye = false;
+
+                try
+                {
+                    Envoye = m_Liaison.Envoyer(Envoi.m_Message, Envoi.m_Cle);
+                }
+
+                catch (IOException e)
+                {
+                    System.out.println(e.toString());
+                }
+
+                if (m_Session != null)
+                {
+                    m_Session.Resultat(Envoye);
+                }
+
+                if (Envoye)
+                {
+                    break;
+                }
+
+                System.out.println("Lot " + Envoi.m_Cle + " pas confirmé, nouvel essai dans " + m_Reprise + " ms");
+
+                synchronized (this)
+                {
+                    m_Reprises++;
+                }
+
+                //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+                Thread.sleep(m_Reprise);        //Réessaie à chaque 30 secondes sur le Pi
+                //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+
+                if (m_Session != null)
+                {
+                    m_Session.Ouvrir("reprise");                            //Reconnecte si la session a été perdue (un seul thread s'en occupe)
+                }
+            }
+        }
+
+        catch (InterruptedException e)
+        {
+            return;
+        }
+
+        synchronized (this)
+        {
+            Envoi.m_Confirme = true;
+            m_EnVol--;
+            notifyAll();
+        }
+    }
+}
+
+//Un lot dans la fenêtre d'envois, ou la fin d'un segment (m_Fichier)
+class EnvoiEnVol implements Runnable
+{
+    private FenetreEnvoi m_Fenetre;
+    long m_Segment;
+    int m_Fin;                                                              //Position du curseur une fois le lot confirmé
+    String m_Message;
+    String m_Cle;
+    Path m_Fichier;
+    volatile boolean m_Confirme = false;
+
+    EnvoiEnVol(FenetreEnvoi Fenetre, long Segment, int Fin, String Message, String Cle, Path Fichier)
+    {
+        m_Fenetre = Fenetre;
+        m_Segment = Segment;
+        m_Fin = Fin;
+        m_Message = Message;
+        m_Cle = Cle;
+        m_Fichier = Fichier;
+    }
+
+    public void run()
+    {
+        m_Fenetre.Envoyer(this);
+    }
+}
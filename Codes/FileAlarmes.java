@@ -0,0 +1,212 @@
+/**
+ * @file   FileAlarmes.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  File prioritaire des alarmes, envoyées sans attendre l'envoi du journal.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+//File prioritaire des alarmes: une lecture qui correspond à une règle de alarme.regles (RegleAlarme) est envoyée au plus tard
+//alarme.delai_ms après sa réception (plus le temps de connexion si le modem est coupé), sans attendre l'envoi du journal.
+//Les alarmes reçues pendant ce délai partent dans le même lot (LotEnvoi, clé <passerelle>-A-<appareil>-<heure de réception>).
+//La lecture reste dans le journal et est envoyée une autre fois avec les autres, le lot d'alarmes est un message à part pour le tableau de bord.
+//Le niveau "alarmes seulement" du budget de données ne coupe pas ces envois, mais leurs octets sont comptés comme les autres.
+//Si la file est pleine (alarme.file_max), l'alarme est perdue: la lecture sera seulement envoyée avec le journal.
+public class FileAlarmes implements Runnable
+{
+    static final long TEMPS_REPRISE = 30000;
+
+    Thread m_Thread;
+    private Serveur m_Parent;
+    private RegleAlarme[] m_Regles = RegleAlarme.Configurees();
+    private ArrayBlockingQueue<Lecture> m_File = new ArrayBlockingQueue<Lecture>((int)Math.max(Configuration.Entier("alarme.file_max", 256), 1));
+    private long m_Delai = Configuration.Entier("alarme.delai_ms", 10000);
+    private String m_Passerelle = Configuration.Texte("envoi.passerelle", "PN");
+    private LotEnvoi m_Lot = new LotEnvoi((int)Configuration.Entier("envoi.taille_max", 4000));
+    private ArrayList<Lecture> m_Groupe = new ArrayList<Lecture>();        //Alarmes du prochain envoi (utilisé par m_Thread seulement)
+    private Set<Lecture> m_Provisoires = Collections.newSetFromMap(new ConcurrentHashMap<Lecture, Boolean>());    //Alarmes reçues avant l'heure réelle
+
+    private AtomicLong m_Alarmes = new AtomicLong();                        //Mesures
+    private AtomicLong m_Perdues = new AtomicLong();
+    private volatile long m_Messages = 0;
+    private volatile long m_Reprises = 0;
+
+    MesureAttente m_Attente = new MesureAttente("alarmes");                 //De la réception de chaque alarme à la confirmation de son envoi
+
+    public FileAlarmes(Serveur Parent)
+    {
+        try
+        {
+            m_Parent = Parent;
+
+            if (m_Regles.length > 0)
+            {
+                m_Thread = new Thread(this);
+                m_Thread.setDaemon(true);
+                m_Thread.start();
+            }
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    //Appelée par l'étage Liaison pour chaque lecture, une copie est mise dans la file si elle correspond à une règle
+    //Une alarme reçue avant l'heure réelle (Provisoire) attend que l'heure soit connue, son heure est corrigée avant l'envoi
+    public void Verifier(Lecture Donnees, boolean Provisoire)
+    {
+        for (RegleAlarme Regle : m_Regles)
+        {
+            if (Regle.Correspond(Donnees))
+            {
+                Lecture Copie = Donnees.Copie();
+
+                m_Alarmes.incrementAndGet();
+
+                if (Provisoire)
+                {
+                    m_Provisoires.add(Copie);
+                }
+
+                if (m_File.offer(Copie) == false)
+                {
+                    m_Perdues.incrementAndGet();
+                    System.out.println("File des alarmes pleine, l'alarme " + Regle + " de " + Donnees.ID() + " sera envoyée avec le journal");
+                }
+
+                return;
+            }
+        }
+    }
+
+    //Heure réelle d'une alarme reçue avant qu'elle soit connue (attend qu'elle le soit)
+    Lecture Corriger(Lecture Alarme) throws InterruptedException
+    {
+        if (m_Provisoires.remove(Alarme))
+        {
+            m_Parent.m_Horloge.Attendre();
+            Alarme.m_HeureReception += m_Parent.m_Horloge.Correction();
+        }
+
+        return Alarme;
+    }
+
+    public void run()
+    {
+        while (true)
+        {
+            try
+            {
+                Lecture Premiere = Corriger(m_File.take());
+                long Limite = Premiere.m_HeureReception + m_Delai;
+
+                m_Groupe.clear();
+                m_Groupe.add(Premiere);
+
+                System.out.println("Alarme reçue de " + Premiere.ID() + ", envoi dans " + Math.max(Limite - System.currentTimeMillis(), 0) / 1000 + " s au plus tard");
+
+                BailModem Modem = m_Parent.m_Modem.Acquerir("alarme");             //Alimente les ports USB pendant que d'autres alarmes peuvent arriver
+
+                try
+                {
+                    if (m_Parent.m_Session.Ouvrir("alarme") == false)
+                    {
+                        System.out.println("Connexion au réseau ratée, l'alarme sera réessayée à chaque " + (TEMPS_REPRISE / 1000) + " s");
+                    }
+
+                    Lecture Suivante;
+
+                    while ((Suivante = m_File.poll(Math.max(Limite - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS)) != null)
+                    {
+                        m_Groupe.add(Corriger(Suivante));
+                    }
+
+                    for (int i = 0; i < m_Groupe.size(); )                              //Un lot par message, comme le journal
+                    {
+                        int Premier = i;
+
+                        m_Lot.Vider(m_Passerelle + "-A-" + m_Groupe.get(i).ID() + "-" + m_Groupe.get(i).m_HeureReception);
+
+                        while (i < m_Groupe.size() && m_Lot.Ajouter(m_Groupe.get(i)))
+                        {
+                            i++;
+                        }
+
+                        if (i == Premier)                                               //Une lecture seule passe toujours, par sécurité
+                        {
+                            i++;
+                        }
+
+                        Envoyer(m_Lot.Message(), m_Lot.Cle());
+
+                        long Maintenant = System.currentTimeMillis();
+
+                        for (int j = Premier; j < i; j++)
+                        {
+                            m_Attente.Ajouter(Maintenant - m_Groupe.get(j).m_HeureReception);
+                        }
+                    }
+
+                    System.out.println(m_Groupe.size() + " alarmes envoyées. " + m_Attente.Resume());
+                }
+
+                finally
+                {
+                    Modem.Liberer();                                                    //Le modem est coupé après modem.garder_chaud_ms s'il ne sert plus
+                }
+            }
+
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            catch (Exception e)
+            {
+                System.out.println(e.toString());
+            }
+        }
+    }
+
+    //Réessaie à chaque 30 secondes jusqu'à ce que le lot soit confirmé
+    void Envoyer(String Message, String Cle) throws IOException, InterruptedException
+    {
+        while (true)
+        {
+            boolean Envoye = m_Parent.m_Montante.Envoyer(Message, Cle);
+
+            m_Parent.m_Session.Resultat(Envoye);
+
+            if (Envoye)
+            {
+                m_Messages++;
+                return;
+            }
+
+            m_Reprises++;
+
+            //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+            Thread.sleep(TEMPS_REPRISE);
+            //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+
+            m_Parent.m_Session.Ouvrir("alarme");                                        //Reconnecte si la session est perdue
+        }
+    }
+
+    public String Resume()
+    {
+        return "File des alarmes " + Arrays.toString(m_Regles) + ": " + m_Alarmes.get() + " alarmes, " + m_File.size() + " en attente, " + m_Perdues.get() + " perdues (file pleine), "
+             + m_Messages + " messages, " + m_Reprises + " reprises";
+    }
+}
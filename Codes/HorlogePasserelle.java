@@ -0,0 +1,107 @@
+/**
+ * @file   HorlogePasserelle.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Heure de réception des lectures, provisoire (horloge monotone) jusqu'à ce que l'heure réelle soit obtenue du modem.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+//Heure de réception des lectures. Sans pile, l'horloge du Pi est fausse au démarrage jusqu'à ce que l'heure soit obtenue du modem:
+//m_tService estampille les lectures avec une horloge monotone (System.nanoTime) qui part de l'heure du système au démarrage.
+//Quand l'heure réelle est obtenue (Obtenue), m_tService applique la correction entre les deux (Appliquer) et note l'index de la première lecture
+//estampillée avec l'heure réelle: les lectures avant cet index sont provisoires. L'étage Enregistrement les corrige en bloc dans le journal
+//(JournalSegmente.Corriger), puis les envois qui attendaient l'heure (Attendre) sont libérés.
+public class HorlogePasserelle
+{
+    private long m_DebutSysteme = System.currentTimeMillis();                //Heure du système au démarrage (peut-être fausse)
+    private long m_DebutMonotone = System.nanoTime();
+    private volatile long m_Correction = 0;                                 //Ajoutée aux heures provisoires pour obtenir l'heure réelle
+    private volatile long m_Obtenue = 0;                                    //Correction obtenue pas encore appliquée par m_tService (0: aucune)
+    private volatile long m_Limite = Long.MAX_VALUE;                        //Index de la première lecture estampillée avec l'heure réelle
+    private volatile boolean m_Corrigee = false;                            //Les lectures provisoires du journal ont été corrigées
+    private volatile String m_Resultat = "heure provisoire (horloge monotone depuis le démarrage)";
+
+    //Heure de réception d'une lecture (appelée par m_tService)
+    public long Maintenant()
+    {
+        return m_DebutSysteme + (System.nanoTime() - m_DebutMonotone) / 1000000 + m_Correction;
+    }
+
+    //Appelée par AcquisitionHeure quand l'heure du système a été réglée: HeureReelle est l'heure réelle en ce moment
+    public synchronized void Obtenue(long HeureReelle)
+    {
+        long Correction = HeureReelle - Maintenant();
+
+        m_Obtenue = Correction != 0 ? Correction : 1;                       //1 ms de plus plutôt que de perdre la demande
+    }
+
+    public boolean AAppliquer()
+    {
+        return m_Obtenue != 0;
+    }
+
+    //Appelée par m_tService entre deux trames: les lectures à partir de l'index Ecrites auront l'heure réelle
+    public synchronized void Appliquer(long Ecrites)
+    {
+        m_Correction = m_Obtenue;
+        m_Limite = Ecrites;
+        m_Obtenue = 0;
+
+        System.out.println("Heure réelle obtenue: correction de " + m_Correction + " ms des " + Ecrites + " lectures reçues avant");
+    }
+
+    public boolean Appliquee()
+    {
+        return m_Limite != Long.MAX_VALUE;
+    }
+
+    //Vrai si la lecture à cet index de m_Anneau a une heure provisoire (pas encore corrigée)
+    public boolean Provisoire(long Index)
+    {
+        return Index < m_Limite;
+    }
+
+    public long Limite()
+    {
+        return m_Limite;
+    }
+
+    public long Correction()
+    {
+        return m_Correction;
+    }
+
+    public boolean Corrigee()
+    {
+        return m_Corrigee;
+    }
+
+    //Appelée par l'étage Enregistrement quand les lectures provisoires du journal ont été corrigées
+    public synchronized void Corrigee(long NbCorrigees, long Duree)
+    {
+        m_Corrigee = true;
+        m_Resultat = "heure réelle, correction de " + m_Correction + " ms appliquée à " + NbCorrigees + " lectures du journal en " + Duree + " us";
+        notifyAll();
+
+        System.out.println("Heure: " + m_Resultat);
+    }
+
+    //Attend que l'heure réelle soit connue et que les lectures du journal soient corrigées (EnvoieInformations, FileAlarmes).
+    //AcquisitionHeure appelle toujours Obtenue, au plus tard après heure.attente_max_ms (l'heure du système est alors gardée)
+    public synchronized void Attendre() throws InterruptedException
+    {
+        while (m_Corrigee == false)
+        {
+            wait();
+        }
+    }
+
+    public String Resume()
+    {
+        return "Heure: " + m_Resultat;
+    }
+}
@@ -0,0 +1,672 @@
+/**
+ * @file   JournalSegmente.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Journal des lectures en segments numérotés projetés en mémoire, avec CRC par lecture (remplace Data.txt).
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+//Journal des lectures en segments numérotés (journal.dossier, ex: /home/pi/ProjetNepal/Journal/00000001.seg), remplace Data.txt
+//Un segment commence par un en-tête (MAGIE, VERSION), suivi d'enregistrements [longueur][CRC32][lecture de AnneauLectures.TAILLE_CASE octets]
+//Le segment actif est créé à sa taille maximale (rempli de 0) et projeté en mémoire (MappedByteBuffer): un ajout est une copie en mémoire, sans appel système
+//Quand il est plein ou plus vieux que journal.age_max_ms, il est scellé: forcé sur la carte SD et tronqué à sa longueur réelle
+//Avec Memoire, le segment actif est dans un tmpfs (journal.memoire): il est copié sur la carte SD quand il est scellé, ce qui limite l'usure
+//de la carte au prix des lectures du segment actif si le courant coupe. Les octets écrits sur la carte SD sont comptés en pages de 4 Ko
+//Seul le thread de l'étage Enregistrement écrit dans le journal, EnvoieInformations lit et supprime les segments scellés,
+//RetentionJournal remplace les segments scellés que l'envoi n'a pas encore ouverts par leur version compactée
+public class JournalSegmente
+{
+    static final int MAGIE = 0x4E45504A;                                    //"NEPJ"
+    static final int VERSION = 1;
+    static final int TAILLE_ENTETE = 8;
+    static final int TAILLE_ENREGISTREMENT = 8 + AnneauLectures.TAILLE_CASE;
+    static final String EXTENSION = ".seg";
+    static final int PAGE = 4096;                                           //Une écriture sur la carte SD touche au moins une page
+
+    private Path m_Dossier = Paths.get(Configuration.Texte("journal.dossier", "/home/pi/ProjetNepal/Journal"));
+    private int m_TailleSegment = (int)Math.max(TAILLE_ENTETE + TAILLE_ENREGISTREMENT, Math.min(Integer.MAX_VALUE, Configuration.Entier("journal.taille_segment", 1048576)));
+    private long m_AgeMax = Configuration.Entier("journal.age_max_ms", 3600000);
+
+    private FileChannel m_Canal = null;                                     //Segment actif, null s'il n'y en a pas (il est créé au prochain ajout)
+    private MappedByteBuffer m_Projection;
+    private CRC32 m_Crc = new CRC32();
+    private int m_Fin;                                                      //Position du prochain enregistrement dans le segment actif
+    private volatile long m_Ouverture;                                      //Moment (ms) où le segment actif à été créé
+    private volatile int m_NbActif = 0;                                     //Nombre de lectures dans le segment actif
+    private volatile long m_DernierScelle = 0;                              //Numéro du dernier segment scellé, les segments jusqu'à ce numéro peuvent être envoyés
+    private volatile boolean m_ScellementDemande = false;
+    private Path m_DossierMemoire = null;                                   //tmpfs du segment actif, null: le segment actif est sur la carte SD
+    private int m_FinForcee = 0;                                            //Fin du segment actif lors du dernier force() sur la carte SD
+    private volatile int m_NbForcees = 0;                                   //Nombre de lectures du segment actif déjà sur la carte SD
+    private Path m_ProchainFichier;                                         //Fichier du segment actif
+    private long m_SegmentCorrige = 0;                                      //Dernier segment scellé dont l'heure des lectures a été corrigée
+    private volatile long m_Version = 0;                                    //Augmentée à chaque correction de l'heure, pour RetentionJournal
+    long m_PremierSegment = 1;                                              //Premier segment de cette exécution, ses lectures et les suivantes peuvent avoir une heure provisoire
+    volatile long m_DernierProvisoire = 0;                                  //Dernier segment scellé par Corriger (les suivants ont l'heure réelle)
+    private long m_SegmentOuvert = 0;                                       //Dernier segment ouvert par l'envoi en cours, lui et les précédents ne sont pas remplacés (protégé par this)
+    private long m_SegmentProtege = 0;                                      //Dernier segment des lectures récentes déjà envoyées, gardé entre les envois (protégé par this)
+
+    Path m_Archive = Paths.get(Configuration.Texte("journal.archive", "/home/pi/ProjetNepal/Archive"));     //Segments gardés au lieu d'être envoyés (envoi.contenu=cumuls)
+    CurseurEnvoi m_Curseur = new CurseurEnvoi(m_Dossier, TAILLE_ENTETE);   //Prochaine lecture à envoyer, utilisé par EnvoieInformations
+
+    AtomicLong m_Ajouts = new AtomicLong();                                 //Nombre de lectures ajoutées depuis le démarrage
+    AtomicLong m_Scelles = new AtomicLong();                                //Nombre de segments scellés depuis le démarrage
+    volatile long m_SurCarte = 0;                                           //Nombre de lectures ajoutées depuis le démarrage qui sont sur la carte SD
+    volatile long m_OctetsCarte = 0;                                        //Octets écrits sur la carte SD pour ces lectures (pages de PAGE octets)
+    String m_Recuperation = "pas encore ouvert";                            //Résultat de la récupération au démarrage
+
+    //Récupère le dernier segment laissé par l'exécution précédente: vérifie ses enregistrements et tronque ce qui suit le dernier enregistrement valide
+    //(écriture interrompue par une panne de courant), puis le scelle. Le prochain ajout créera un nouveau segment.
+    public void Ouvrir() throws IOException
+    {
+        long Debut = System.nanoTime();
+
+        Files.createDirectories(m_Dossier);
+        m_Curseur.Charger();
+        m_DernierScelle = m_Curseur.m_Segment;                              //Les numéros continuent après le dernier segment envoyé, même si tous ont été supprimés
+
+        if (m_DossierMemoire != null)
+        {
+            RecupererMemoire();
+        }
+
+        List<Path> Segments = Segments(Long.MAX_VALUE);
+
+        if (Segments.isEmpty())
+        {
+            m_Recuperation = "aucun segment";
+        }
+
+        else
+        {
+            Path Dernier = Segments.get(Segments.size() - 1);
+            long Numero = Numero(Dernier);
+            long Taille;
+            int Fin;
+
+            try (FileChannel Canal = FileChannel.open(Dernier, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                Taille = Canal.size();
+                Fin = FinValide(Canal.map(FileChannel.MapMode.READ_ONLY, 0, Taille), m_Crc);
+
+                if (Fin < Taille)
+                {
+                    Canal.truncate(Fin);
+                    Canal.force(true);
+                }
+            }
+
+            if (Fin <= TAILLE_ENTETE)                                       //Aucune lecture dans le segment
+            {
+                Files.delete(Dernier);
+                Numero--;
+            }
+
+            m_DernierScelle = Math.max(m_DernierScelle, Numero);
+            m_Recuperation = Dernier.getFileName() + ": " + ((Math.max(Fin, TAILLE_ENTETE) - TAILLE_ENTETE) / TAILLE_ENREGISTREMENT) + " lectures, " + (Taille - Fin) + " octets tronqués";
+        }
+
+        m_PremierSegment = m_DernierScelle + 1;
+        m_Recuperation += ", " + Segments.size() + " segments, en " + ((System.nanoTime() - Debut) / 1000) + " us";
+        System.out.println("Journal " + m_Dossier + ": " + m_Recuperation);
+    }
+
+    //Le segment actif est gardé dans Dossier (un tmpfs) et copié sur la carte SD quand il est scellé: quand il atteint Taille octets
+    //ou qu'il est plus vieux que Age (ms). Appelée avant Ouvrir
+    public void Memoire(Path Dossier, long Taille, long Age)
+    {
+        m_DossierMemoire = Dossier;
+        m_TailleSegment = (int)Math.max(TAILLE_ENTETE + TAILLE_ENREGISTREMENT, Math.min(m_TailleSegment, Taille));
+        m_AgeMax = Math.min(m_AgeMax, Age);
+    }
+
+    //Copie sur la carte SD les segments laissés dans le tmpfs par l'exécution précédente (le serveur s'est arrêté sans sceller, le Pi n'a pas redémarré)
+    void RecupererMemoire() throws IOException
+    {
+        Files.createDirectories(m_DossierMemoire);
+
+        try (DirectoryStream<Path> Dossier = Files.newDirectoryStream(m_DossierMemoire, "*" + EXTENSION))
+        {
+            for (Path Fichier : Dossier)
+            {
+                int Fin;
+
+                try (FileChannel Canal = FileChannel.open(Fichier, StandardOpenOption.READ, StandardOpenOption.WRITE))
+                {
+                    Fin = FinValide(Canal.map(FileChannel.MapMode.READ_ONLY, 0, Canal.size()), m_Crc);
+                    Canal.truncate(Fin);
+                }
+
+                if (Fin > TAILLE_ENTETE && Numero(Fichier) > m_Curseur.m_Segment)
+                {
+                    CopierSurCarte(Fichier);
+                    System.out.println("Journal: " + Fichier + " récupéré du tmpfs, " + ((Fin - TAILLE_ENTETE) / TAILLE_ENREGISTREMENT) + " lectures");
+                }
+
+                Files.delete(Fichier);
+            }
+        }
+    }
+
+    //Copie un segment du tmpfs dans le dossier du journal: écrit et forcé sous <nom>.tmp, puis renommé (un segment est complet ou absent)
+    void CopierSurCarte(Path Fichier) throws IOException
+    {
+        Path Destination = m_Dossier.resolve(Fichier.getFileName());
+        Path Temporaire = m_Dossier.resolve(Fichier.getFileName() + ".tmp");
+
+        Files.copy(Fichier, Temporaire, StandardCopyOption.REPLACE_EXISTING);
+
+        try (FileChannel Canal = FileChannel.open(Temporaire, StandardOpenOption.WRITE))
+        {
+            Canal.force(true);
+        }
+
+        Files.move(Temporaire, Destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        m_OctetsCarte += Pages(0, Files.size(Destination));
+    }
+
+    //Octets des pages de la carte SD qui contiennent les octets Debut à Fin
+    static long Pages(long Debut, long Fin)
+    {
+        return Fin <= Debut ? 0 : ((Fin + PAGE - 1) / PAGE - Debut / PAGE) * PAGE;
+    }
+
+    //Position qui suit le dernier enregistrement valide du segment (TAILLE_ENTETE s'il est vide, 0 si l'en-tête est invalide)
+    static int FinValide(ByteBuffer Segment, CRC32 Crc)
+    {
+        if (Segment.limit() < TAILLE_ENTETE || Segment.getInt(0) != MAGIE || Segment.getInt(4) != VERSION)
+        {
+            return 0;
+        }
+
+        int Position = TAILLE_ENTETE;
+
+        while (Position + TAILLE_ENREGISTREMENT <= Segment.limit() && EnregistrementValide(Segment, Position, Crc))
+        {
+            Position += TAILLE_ENREGISTREMENT;
+        }
+
+        return Position;
+    }
+
+    //Un enregistrement est valide si sa longueur est celle d'une lecture et que son CRC correspond
+    //Une longueur de 0 est la fin des enregistrements (le reste du segment actif est rempli de 0)
+    static boolean EnregistrementValide(ByteBuffer Segment, int Position, CRC32 Crc)
+    {
+        if (Segment.getInt(Position) != AnneauLectures.TAILLE_CASE)
+        {
+            return false;
+        }
+
+        return Segment.getInt(Position + 4) == Crc(Segment, Position + 8, Crc);
+    }
+
+    //CRC32 de la lecture à Position, sans déplacer Segment
+    static int Crc(ByteBuffer Segment, int Position, CRC32 Crc)
+    {
+        int Limite = Segment.limit();
+        int Courante = Segment.position();
+
+        Crc.reset();
+        Segment.limit(Position + AnneauLectures.TAILLE_CASE);
+        Segment.position(Position);
+        Crc.update(Segment);
+        Segment.limit(Limite);
+        Segment.position(Courante);
+
+        return (int)Crc.getValue();
+    }
+
+    //Ajoute une lecture au segment actif (un nouveau segment est créé s'il n'y en a pas ou s'il est plein)
+    public void Ajouter(Lecture Donnees) throws IOException
+    {
+        if (m_Canal != null && m_Fin + TAILLE_ENREGISTREMENT > m_TailleSegment)
+        {
+            Sceller();
+        }
+
+        if (m_Canal == null)
+        {
+            NouveauSegment();
+        }
+
+        int Position = m_Fin;
+
+        AnneauLectures.EcrireCase(m_Projection, Position + 8, Donnees);
+        m_Projection.putInt(Position + 4, Crc(m_Projection, Position + 8, m_Crc));
+        m_Projection.putInt(Position, AnneauLectures.TAILLE_CASE);          //La longueur en dernier: l'enregistrement est complet
+
+        m_Fin += TAILLE_ENREGISTREMENT;
+        m_NbActif++;
+        m_Ajouts.incrementAndGet();
+    }
+
+    void NouveauSegment() throws IOException
+    {
+        if (m_Recuperation.startsWith("pas encore"))                        //Ouvrir à échoué au démarrage
+        {
+            Ouvrir();
+        }
+
+        Path Fichier = (m_DossierMemoire != null ? m_DossierMemoire : m_Dossier).resolve(String.format("%08d", m_DernierScelle + 1) + EXTENSION);
+
+        m_Canal = FileChannel.open(Fichier, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try
+        {
+            m_Projection = m_Canal.map(FileChannel.MapMode.READ_WRITE, 0, m_TailleSegment);    //Agrandit le fichier, rempli de 0
+            m_Projection.putInt(0, MAGIE);
+            m_Projection.putInt(4, VERSION);
+        }
+
+        catch (IOException | InternalError e)                               //Le segment sera créé une autre fois au prochain essai
+        {
+            m_Canal.close();
+            m_Canal = null;
+            m_Projection = null;
+            Files.deleteIfExists(Fichier);
+            throw e;
+        }
+        m_Fin = TAILLE_ENTETE;
+        m_FinForcee = 0;
+        m_NbActif = 0;
+        m_NbForcees = 0;
+        m_Ouverture = System.currentTimeMillis();
+        m_ProchainFichier = Fichier;
+    }
+
+    //Force le segment actif sur la carte SD (rien à faire s'il est dans le tmpfs)
+    public void Synchroniser()
+    {
+        MappedByteBuffer Projection = m_Projection;
+
+        if (Projection != null && m_DossierMemoire == null && m_Fin > m_FinForcee)
+        {
+            Projection.force();
+            Forcee();
+        }
+    }
+
+    //Les lectures du segment actif ajoutées depuis le dernier force() sont maintenant sur la carte SD
+    private void Forcee()
+    {
+        m_OctetsCarte += Pages(m_FinForcee, m_Fin);
+        m_SurCarte += m_NbActif - m_NbForcees;
+        m_FinForcee = m_Fin;
+        m_NbForcees = m_NbActif;
+    }
+
+    //Scelle le segment actif: forcé sur la carte SD, tronqué à sa longueur réelle et remis à EnvoieInformations
+    public void Sceller() throws IOException
+    {
+        try
+        {
+            ScellerActif();
+        }
+
+        finally
+        {
+            m_ScellementDemande = false;                                    //Après le scellement: ScellerMaintenant et ScellerAvant attendent qu'il soit fini
+        }
+    }
+
+    private void ScellerActif() throws IOException
+    {
+        if (m_Canal == null || m_NbActif == 0)
+        {
+            return;
+        }
+
+        try
+        {
+            if (m_DossierMemoire == null)
+            {
+                m_Projection.force();
+                Forcee();
+            }
+
+            m_Canal.truncate(m_Fin);
+
+            if (m_DossierMemoire == null)
+            {
+                m_Canal.force(true);                                        //La nouvelle taille aussi
+            }
+        }
+
+        finally
+        {
+            m_Canal.close();
+            m_Canal = null;
+            m_Projection = null;                                            //La projection sera libérée par le ramasse-miettes
+        }
+
+        if (m_DossierMemoire != null)
+        {
+            try
+            {
+                CopierSurCarte(m_ProchainFichier);
+                Files.delete(m_ProchainFichier);
+                m_SurCarte += m_NbActif;
+            }
+
+            catch (IOException e)                                           //Le segment reste dans le tmpfs, RecupererMemoire le copiera au prochain démarrage
+            {
+                System.out.println("Journal: " + m_ProchainFichier + " pas copié sur la carte SD: " + e.toString());
+            }
+        }
+
+        m_DernierScelle++;
+        m_NbActif = 0;                                                      //Ses lectures sont maintenant comptées dans les segments scellés
+        m_Scelles.incrementAndGet();
+    }
+
+    public boolean TropVieux()
+    {
+        return m_NbActif > 0 && System.currentTimeMillis() - m_Ouverture >= m_AgeMax;
+    }
+
+    public boolean ScellementDemande()
+    {
+        return m_ScellementDemande;
+    }
+
+    //Demande le scellement au thread de l'étage Enregistrement, faux s'il n'est pas fait avant Limite (ms). Appelée par EnvoieInformations
+    //(le segment actif est envoyé avec les autres) et par le crochet d'arrêt. Si c'est faux, la demande reste: le segment sera scellé plus tard
+    public boolean ScellerAvant(long Limite) throws InterruptedException
+    {
+        m_ScellementDemande = true;
+
+        while (m_ScellementDemande && System.currentTimeMillis() < Limite)
+        {
+            Thread.sleep(10);
+        }
+
+        return m_ScellementDemande == false;
+    }
+
+    //Où sont les lectures ajoutées depuis le démarrage: sur la carte SD, ou seulement en mémoire (page cache ou tmpfs) dans le segment actif
+    public String Niveaux()
+    {
+        long Ajouts = m_Ajouts.get();
+        long SurCarte = m_SurCarte;
+        int NbActif = m_NbActif;
+        int NbForcees = m_NbForcees;
+        long Octets = m_OctetsCarte;
+
+        return Ajouts + " lectures ajoutées, " + SurCarte + " sur la carte SD, " + (Ajouts - SurCarte) + " en mémoire seulement"
+             + (NbActif > 0 ? " (segment actif " + String.format("%08d", m_DernierScelle + 1) + (m_DossierMemoire != null ? " dans " + m_DossierMemoire : "") + ": lectures "
+                            + (NbForcees > 0 ? "1 à " + NbForcees + " sur la carte SD, " : "") + (NbForcees < NbActif ? (NbForcees + 1) + " à " + NbActif + " en mémoire" : "") + ")" : "")
+             + ", " + Octets + " octets écrits sur la carte SD" + (SurCarte > 0 ? " (amplification d'écriture: " + String.format("%.1f", (double)Octets / (SurCarte * AnneauLectures.TAILLE_CASE)) + ")" : "")
+             + ", curseur: " + m_Curseur.m_Ecritures + " écritures (" + (m_Curseur.m_Ecritures * 2 * PAGE) + " octets)";
+    }
+
+    //Vrai s'il y a des lectures à envoyer (segments scellés ou lectures dans le segment actif)
+    public boolean AEnvoyer() throws IOException
+    {
+        return m_NbActif > 0 || Segments(m_DernierScelle).isEmpty() == false;
+    }
+
+    //Nombre approximatif de lectures pas encore envoyées (un scellement en cours peut les compter deux fois), d'après la taille des segments
+    public long NbAEnvoyer() throws IOException
+    {
+        long Nb = m_NbActif;
+
+        for (Path Segment : Segments(m_DernierScelle))
+        {
+            long Numero = Numero(Segment);
+
+            if (Numero >= m_Curseur.m_Segment)
+            {
+                Nb += NbLectures(Segment, Numero == m_Curseur.m_Segment ? m_Curseur.m_Position : TAILLE_ENTETE);
+            }
+        }
+
+        return Nb;
+    }
+
+    //Nombre de lectures d'un segment scellé à partir de la position Debut, selon la taille du fichier
+    static long NbLectures(Path Segment, long Debut) throws IOException
+    {
+        return Math.max(0, Files.size(Segment) - Debut) / TAILLE_ENREGISTREMENT;
+    }
+
+    //Heure de réception (ms) de la plus vieille lecture pas encore envoyée, 0 s'il n'y en a pas
+    //Ouvre le premier segment scellé à envoyer: l'appelant garde le résultat jusqu'au prochain envoi
+    public long PlusAncienneAEnvoyer(Lecture Donnees) throws IOException
+    {
+        for (Path Segment : Segments(m_DernierScelle))
+        {
+            long Numero = Numero(Segment);
+
+            if (Numero < m_Curseur.m_Segment)
+            {
+                continue;
+            }
+
+            try (LecteurSegment Lecteur = new LecteurSegment(Segment))
+            {
+                if (Numero == m_Curseur.m_Segment)
+                {
+                    Lecteur.Aller(m_Curseur.m_Position);
+                }
+
+                if (Lecteur.Suivante(Donnees))
+                {
+                    return Donnees.m_HeureReception;
+                }
+            }
+
+            catch (IOException e)
+            {
+                System.out.println(e.toString());                           //Segment illisible, il sera mis de côté par EnvoieInformations
+            }
+        }
+
+        return m_NbActif > 0 ? m_Ouverture : 0;                             //Le segment actif est créé à la réception de sa première lecture
+    }
+
+    //Ouvre un segment scellé pour l'envoyer: RetentionJournal ne remplacera plus ce segment ni les précédents, le curseur y pointe peut-être
+    public synchronized LecteurSegment OuvrirPourEnvoi(Path Segment) throws IOException
+    {
+        m_SegmentOuvert = Math.max(m_SegmentOuvert, Numero(Segment));
+
+        return new LecteurSegment(Segment);
+    }
+
+    //Appelée à la fin de chaque envoi: les positions lues dans les segments pas encore envoyés ne servent plus (le curseur reste protégé)
+    public synchronized void FinEnvoi()
+    {
+        m_SegmentOuvert = 0;
+    }
+
+    //Appelée par EnvoieInformations quand le fichier "recentes" change: ses positions doivent rester valides jusqu'au passage du rattrapage,
+    //RetentionJournal ne remplace donc pas les segments jusqu'à Segment (0: aucune lecture récente en attente du rattrapage)
+    public synchronized void ProtegerRecentes(long Segment)
+    {
+        m_SegmentProtege = Segment;
+    }
+
+    //Déplace un segment scellé dans journal.archive au lieu de l'envoyer (envoi.contenu=cumuls)
+    public synchronized void Archiver(Path Segment) throws IOException
+    {
+        Files.createDirectories(m_Archive);
+        Files.move(Segment, m_Archive.resolve(Segment.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //Appelée par RetentionJournal: remplace un segment par sa version compactée (écrite à côté par EcrireSegment) si l'envoi ne l'a pas encore ouvert,
+    //qu'il ne contient pas de lectures récentes déjà envoyées et que l'heure des lectures n'a pas été corrigée depuis Version(),
+    //sinon la version compactée est supprimée. Retourne true si le segment a été remplacé
+    public synchronized boolean Remplacer(Path Segment, Path Compacte, long Version) throws IOException
+    {
+        long Numero = Numero(Segment);
+
+        if (Numero <= m_SegmentOuvert || Numero <= m_SegmentProtege || Numero <= m_Curseur.m_Segment || Version != m_Version || Files.exists(Segment) == false)
+        {
+            Files.delete(Compacte);
+            return false;
+        }
+
+        Files.move(Compacte, Segment, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    public long Version()
+    {
+        return m_Version;
+    }
+
+    //Ajoute Correction (ms) à l'heure de réception des lectures des segments de cette exécution (à partir de m_PremierSegment) et du segment actif,
+    //recalcule leur CRC, puis scelle le segment actif pour qu'il ne reçoive que des lectures avec l'heure réelle.
+    //Appelée par le thread de l'étage Enregistrement, avant que les envois soient permis. Retourne le nombre de lectures corrigées
+    public synchronized long Corriger(long Correction) throws IOException
+    {
+        long Nb = 0;
+
+        m_Version++;
+
+        for (Path Segment : Segments(m_DernierScelle))
+        {
+            long Numero = Numero(Segment);
+
+            if (Numero < m_PremierSegment || Numero <= m_SegmentCorrige)
+            {
+                continue;
+            }
+
+            try (FileChannel Canal = FileChannel.open(Segment, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                MappedByteBuffer Projection = Canal.map(FileChannel.MapMode.READ_WRITE, 0, Canal.size());
+
+                Nb += Corriger(Projection, FinValide(Projection, m_Crc), Correction);
+                Projection.force();
+            }
+
+            m_SegmentCorrige = Numero;                                      //Une erreur plus loin ne le corrigera pas deux fois
+        }
+
+        if (m_Projection != null)
+        {
+            Nb += Corriger(m_Projection, m_Fin, Correction);
+        }
+
+        Sceller();
+        m_DernierProvisoire = m_DernierScelle;
+
+        return Nb;
+    }
+
+    private int Corriger(ByteBuffer Segment, int Fin, long Correction)
+    {
+        int Nb = 0;
+
+        for (int Position = TAILLE_ENTETE; Position + TAILLE_ENREGISTREMENT <= Fin; Position += TAILLE_ENREGISTREMENT)
+        {
+            int Heure = Position + 8 + AnneauLectures.POS_HEURE_RECEPTION;
+
+            Segment.putLong(Heure, Segment.getLong(Heure) + Correction);
+            Segment.putInt(Position + 4, Crc(Segment, Position + 8, m_Crc));
+            Nb++;
+        }
+
+        return Nb;
+    }
+
+    //Écrit un segment scellé complet à côté de Segment (<nom>.seg.tmp, ignoré par Segments), forcé sur la carte SD, et retourne son chemin
+    static Path EcrireSegment(Path Segment, List<Lecture> Lectures) throws IOException
+    {
+        ByteBuffer Tampon = ByteBuffer.allocate(TAILLE_ENTETE + Lectures.size() * TAILLE_ENREGISTREMENT);
+        CRC32 Crc = new CRC32();
+        Path Fichier = Segment.resolveSibling(Segment.getFileName() + ".tmp");
+        int Position = TAILLE_ENTETE;
+
+        Tampon.putInt(0, MAGIE);
+        Tampon.putInt(4, VERSION);
+
+        for (Lecture Donnees : Lectures)
+        {
+            AnneauLectures.EcrireCase(Tampon, Position + 8, Donnees);
+            Tampon.putInt(Position + 4, Crc(Tampon, Position + 8, Crc));
+            Tampon.putInt(Position, AnneauLectures.TAILLE_CASE);
+            Position += TAILLE_ENREGISTREMENT;
+        }
+
+        try (FileChannel Canal = FileChannel.open(Fichier, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            while (Tampon.hasRemaining())
+            {
+                Canal.write(Tampon);
+            }
+
+            Canal.force(true);
+        }
+
+        return Fichier;
+    }
+
+    //Numéro du segment actif, ou de celui qui sera créé au prochain ajout
+    public long SegmentActif()
+    {
+        return m_DernierScelle + 1;
+    }
+
+    //Segments scellés, du plus vieux au plus récent (peut être appelée par EnvoieInformations)
+    public List<Path> SegmentsScelles() throws IOException
+    {
+        return Segments(m_DernierScelle);
+    }
+
+    //Segments du dossier dont le numéro est au plus NumeroMax, en ordre
+    List<Path> Segments(long NumeroMax) throws IOException
+    {
+        List<Path> Segments = new ArrayList<Path>();
+
+        try (DirectoryStream<Path> Dossier = Files.newDirectoryStream(m_Dossier, "*" + EXTENSION))
+        {
+            for (Path Fichier : Dossier)
+            {
+                long Numero = Numero(Fichier);
+
+                if (Numero > 0 && Numero <= NumeroMax)
+                {
+                    Segments.add(Fichier);
+                }
+            }
+        }
+
+        Collections.sort(Segments);                                         //Les numéros ont tous 8 chiffres
+        return Segments;
+    }
+
+    static long Numero(Path Fichier)
+    {
+        String Nom = Fichier.getFileName().toString();
+
+        try
+        {
+            return Long.parseLong(Nom.substring(0, Nom.length() - EXTENSION.length()));
+        }
+
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    public String Resume()
+    {
+        return "Journal: " + m_NbActif + " lectures dans le segment actif, " + m_Scelles.get() + " segments scellés, dernier scellé: " + m_DernierScelle + " (démarrage: " + m_Recuperation + ")\n"
+             + "Durabilité: " + Niveaux();
+    }
+}
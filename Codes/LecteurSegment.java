@@ -0,0 +1,77 @@
+/**
+ * @file   LecteurSegment.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Lit dans l'ordre les lectures d'un segment scellé du journal.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+//Lit les lectures d'un segment scellé du journal, dans l'ordre. S'arrête au premier enregistrement invalide.
+public class LecteurSegment implements Closeable
+{
+    private FileChannel m_Canal;
+    private ByteBuffer m_Segment;
+    private CRC32 m_Crc = new CRC32();
+    private int m_Position = JournalSegmente.TAILLE_ENTETE;
+
+    public LecteurSegment(Path Fichier) throws IOException
+    {
+        m_Canal = FileChannel.open(Fichier, StandardOpenOption.READ);
+        m_Segment = m_Canal.map(FileChannel.MapMode.READ_ONLY, 0, m_Canal.size());
+
+        if (JournalSegmente.FinValide(m_Segment, m_Crc) == 0)
+        {
+            close();
+            throw new IOException("En-tête de segment invalide: " + Fichier);
+        }
+    }
+
+    //Reprend la lecture à Position (obtenue de Position() plus tôt), ignorée si elle ne tombe pas sur un enregistrement du segment
+    public void Aller(int Position)
+    {
+        if (Position >= JournalSegmente.TAILLE_ENTETE && Position <= m_Segment.limit() && (Position - JournalSegmente.TAILLE_ENTETE) % JournalSegmente.TAILLE_ENREGISTREMENT == 0)
+        {
+            m_Position = Position;
+        }
+
+        else
+        {
+            System.out.println("Position " + Position + " invalide, le segment sera relu depuis le début");
+        }
+    }
+
+    //Position de la prochaine lecture dans le segment
+    public int Position()
+    {
+        return m_Position;
+    }
+
+    //Copie la prochaine lecture dans Destination, retourne false à la fin du segment
+    public boolean Suivante(Lecture Destination)
+    {
+        if (m_Position + JournalSegmente.TAILLE_ENREGISTREMENT > m_Segment.limit() || JournalSegmente.EnregistrementValide(m_Segment, m_Position, m_Crc) == false)
+        {
+            return false;
+        }
+
+        AnneauLectures.LireCase(m_Segment, m_Position + 8, Destination);
+        m_Position += JournalSegmente.TAILLE_ENREGISTREMENT;
+
+        return true;
+    }
+
+    public void close() throws IOException
+    {
+        m_Canal.close();
+    }
+}
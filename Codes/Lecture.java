@@ -0,0 +1,51 @@
+/**
+ * @file   Lecture.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Une lecture reçue d'un client par le serveur, décodée d'une trame binaire (Trame.java) ou de l'ancien format texte "ID,T,P,H,R".
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java et Trame.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+public class Lecture
+{
+    char m_ID1;                                                     //ID de l'appareil (ex: 'C', 'E')
+    char m_ID2;
+    int m_Type = Trame.TYPE_MESURE;                                 //Les trames texte n'ont pas de type
+    long m_T;                                                       //Température, pression, humidité et RPM en point fixe (Trame.ECHELLE)
+    long m_P;
+    long m_H;
+    long m_R;
+    long m_HeureClient;                                             //0 pour les trames texte
+    long m_HeureReception;                                          //Heure du serveur (millisecondes depuis 1970) à la réception de la trame
+    int m_Mode;                                                     //ModeDebug du serveur à la réception: les étages suivent ce mode, même s'il change entre-temps
+    boolean m_Envoyee;                                              //Envoyée tout de suite par l'étage Liaison (mode debug), pas besoin de l'enregistrer
+
+    //Copie de la lecture, pour la confier à un autre thread pendant que l'originale est réutilisée
+    public Lecture Copie()
+    {
+        Lecture Copie = new Lecture();
+
+        Copie.m_ID1 = m_ID1;
+        Copie.m_ID2 = m_ID2;
+        Copie.m_Type = m_Type;
+        Copie.m_T = m_T;
+        Copie.m_P = m_P;
+        Copie.m_H = m_H;
+        Copie.m_R = m_R;
+        Copie.m_HeureClient = m_HeureClient;
+        Copie.m_HeureReception = m_HeureReception;
+        Copie.m_Mode = m_Mode;
+        Copie.m_Envoyee = m_Envoyee;
+
+        return Copie;
+    }
+
+    public String ID()
+    {
+        return "" + m_ID1 + m_ID2;
+    }
+}
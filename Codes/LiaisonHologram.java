@@ -0,0 +1,345 @@
+/**
+ * @file   LiaisonHologram.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Commandes Hologram (send, network connect, modem location) passées au processus Python LiaisonHologram.py gardé en vie,
+ *         ou à la commande "hologram" par bash s'il n'est pas prêt.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+//Commandes Hologram (send, network connect, modem location) passées à un processus Python gardé en vie (LiaisonHologram.py):
+//chaque requête est une ligne "<numéro>\t<commande>\t<argument>" sur son entrée standard, la réponse "<numéro>\t<OK|ERREUR>\t<texte>" sur sa sortie.
+//Le texte est celui qu'afficherait la commande "hologram" (ex: "Message sent successfully"), les appelants le vérifient comme avant.
+//Le thread m_Thread lit les réponses et redémarre le processus s'il s'arrête. Tant qu'il n'est pas prêt (ou avec liaison.mode=commande),
+//chaque requête démarre "sudo hologram ..." par bash comme avant. La latence de chaque requête est mesurée pour comparer les deux chemins.
+public class LiaisonHologram implements Runnable, LiaisonMontante
+{
+    private static final int PROCESSUS = 0;                                 //Chemin d'une requête, pour les mesures
+    private static final int COMMANDE = 1;
+    private static final long REDEMARRAGE_MIN = 1000;                       //Délai (ms) avant de redémarrer le processus, doublé à chaque arrêt rapproché
+    private static final long REDEMARRAGE_MAX = 60000;
+
+    Thread m_Thread;
+    private boolean m_Processus = Configuration.Texte("liaison.mode", "processus").equals("processus");
+    private String m_Commande = Configuration.Texte("liaison.commande", "sudo python /home/pi/ProjetNepal/LiaisonHologram.py");
+    private long m_DelaiMax = Configuration.Entier("liaison.delai_ms", 180000);     //Temps maximal d'une requête avant d'arrêter le processus
+
+    private volatile boolean m_Pret = false;                                //Le processus a répondu PRET et lit les requêtes
+    private volatile Process m_Aide;
+    private volatile Writer m_Entree;
+    private AtomicLong m_Numeros = new AtomicLong();
+    private ConcurrentHashMap<Long, String[]> m_Attente = new ConcurrentHashMap<Long, String[]>();     //Requêtes envoyées au processus: { code, texte } remplis par m_Thread
+
+    private long[] m_Requetes = new long[2];                                //Mesures par chemin (PROCESSUS, COMMANDE)
+    private long[] m_DureeTotale = new long[2];
+    private long[] m_DureeMax = new long[2];
+    private long m_Erreurs = 0;                                             //Réponses ERREUR du processus
+    private long m_Expirations = 0;                                         //Requêtes sans réponse après m_DelaiMax
+    private long m_Redemarrages = 0;
+
+    public LiaisonHologram()
+    {
+        if (m_Processus)
+        {
+            m_Thread = new Thread(this);
+            m_Thread.setDaemon(true);
+            m_Thread.start();
+        }
+    }
+
+    //"hologram send": le message est envoyé si la commande (ou le processus) répond "Message sent successfully"
+    public boolean Envoyer(String Message) throws IOException, InterruptedException
+    {
+        String Retour = Requete("send", Message, "sudo hologram send " + Guillemets(Message));
+
+        if (Retour.isEmpty() == false)
+        {
+            System.out.println("Ligne trouvée: " + Retour);
+        }
+
+        return Retour.contains("Message sent successfully");
+    }
+
+    public String Connecter() throws IOException, InterruptedException
+    {
+        return Requete("connect", "", "sudo hologram network connect");
+    }
+
+    public String Localiser() throws IOException, InterruptedException
+    {
+        return Requete("location", "", "sudo hologram modem location");
+    }
+
+    private String Requete(String Commande, String Argument, String Bash) throws IOException, InterruptedException
+    {
+        long Debut = System.nanoTime();
+        int Chemin = PROCESSUS;
+        String Retour = m_Pret ? RequeteProcessus(Commande, Argument) : null;
+
+        if (Retour == null)                                                 //Processus pas prêt: une commande bash comme avant
+        {
+            Chemin = COMMANDE;
+            Retour = RequeteCommande(Bash);
+        }
+
+        long Duree = (System.nanoTime() - Debut) / 1000000;
+
+        synchronized (this)
+        {
+            m_Requetes[Chemin]++;
+            m_DureeTotale[Chemin] += Duree;
+            m_DureeMax[Chemin] = Math.max(m_DureeMax[Chemin], Duree);
+        }
+
+        return Retour;
+    }
+
+    //Retourne null si la requête n'a pas pu être passée au processus
+    private String RequeteProcessus(String Commande, String Argument) throws InterruptedException
+    {
+        long Numero = m_Numeros.incrementAndGet();
+        String[] Reponse = new String[2];
+
+        m_Attente.put(Numero, Reponse);
+
+        try
+        {
+            try
+            {
+                Writer Entree = m_Entree;
+
+                synchronized (Entree)
+                {
+                    Entree.write(Numero + "\t" + Commande + "\t" + Argument.replace('\n', ' ').replace('\r', ' ') + "\n");
+                    Entree.flush();
+                }
+            }
+
+            catch (Exception e)                                             //Processus arrêté entre temps
+            {
+                System.out.println(e.toString());
+                return null;
+            }
+
+            long Fin = System.currentTimeMillis() + m_DelaiMax;
+
+            synchronized (Reponse)
+            {
+                while (Reponse[0] == null && m_Pret && System.currentTimeMillis() < Fin)
+                {
+                    Reponse.wait(Math.max(Fin - System.currentTimeMillis(), 1));
+                }
+            }
+
+            if (Reponse[0] == null)
+            {
+                if (m_Pret)                                                 //Le processus ne répond plus: il est arrêté et sera redémarré
+                {
+                    System.out.println("Liaison Hologram: pas de réponse à \"" + Commande + "\" après " + m_DelaiMax + " ms");
+                    Compter(false);
+                    m_Aide.destroy();
+                }
+
+                return "";                                                  //La requête a peut-être été faite, l'appelant réessaiera
+            }
+
+            if (Reponse[0].equals("OK") == false)
+            {
+                Compter(true);
+            }
+
+            return Reponse[1];
+        }
+
+        finally
+        {
+            m_Attente.remove(Numero);
+        }
+    }
+
+    private String RequeteCommande(String Bash) throws IOException, InterruptedException
+    {
+        String[] sCmd = {"/bin/bash", "-c", Bash};                          //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+
+        System.out.println(sCmd[0] + " " + sCmd[1] + " " + sCmd[2]);        //Affiche la commande a executer dans la console Java
+        Process p = Runtime.getRuntime().exec(sCmd);                        //Execute la commande par le systeme Linux
+
+        p.waitFor();                                                        //Attend que la commande soit éxécutée soit terminée
+
+        if (p.getErrorStream().available() > 0)                             //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
+        {
+            BufferedReader brCommand = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+            System.out.println(brCommand.readLine());
+            brCommand.close();
+        }
+
+        BufferedReader Lecteur = new BufferedReader(new InputStreamReader(p.getInputStream()));
+        String Retour = Lecteur.readLine();                                 //Lis ce que la commande retourne dans le terminal
+
+        Lecteur.close();
+
+        return Retour == null ? "" : Retour;
+    }
+
+    //Superviseur: démarre le processus, lit ses réponses et le redémarre quand il s'arrête
+    public void run()
+    {
+        long Attente = REDEMARRAGE_MIN;
+
+        while (true)
+        {
+            long Debut = System.currentTimeMillis();
+
+            try
+            {
+                ProcessBuilder Constructeur = new ProcessBuilder(m_Commande.split(" "));
+                Constructeur.redirectError(ProcessBuilder.Redirect.INHERIT);   //Les erreurs de Python s'affichent avec celles du serveur
+
+                Process Aide = Constructeur.start();
+                BufferedReader Sortie = new BufferedReader(new InputStreamReader(Aide.getInputStream(), "UTF-8"));
+                String Ligne;
+
+                m_Aide = Aide;
+                m_Entree = new BufferedWriter(new OutputStreamWriter(Aide.getOutputStream(), "UTF-8"));
+
+                while ((Ligne = Sortie.readLine()) != null)
+                {
+                    String[] Champs = Ligne.split("\t", 3);
+
+                    if (Champs.length < 2)
+                    {
+                        continue;
+                    }
+
+                    if (Champs[1].equals("PRET"))
+                    {
+                        System.out.println("Liaison Hologram prête en " + (System.currentTimeMillis() - Debut) + " ms");
+
+                        synchronized (this)
+                        {
+                            m_Pret = true;
+                            notifyAll();                                    //AttendrePret
+                        }
+
+                        continue;
+                    }
+
+                    String[] Reponse = m_Attente.get(Long.valueOf(Champs[0]));
+
+                    if (Reponse != null)
+                    {
+                        synchronized (Reponse)
+                        {
+                            Reponse[1] = Champs.length > 2 ? Champs[2] : "";
+                            Reponse[0] = Champs[1];
+                            Reponse.notifyAll();
+                        }
+                    }
+                }
+
+                m_Pret = false;
+                System.out.println("Liaison Hologram arrêtée (code " + Aide.waitFor() + ")");
+            }
+
+            catch (Exception e)
+            {
+                m_Pret = false;
+                System.out.println(e.toString());
+            }
+
+            for (String[] Reponse : m_Attente.values())                     //Les requêtes en attente n'auront pas de réponse
+            {
+                synchronized (Reponse)
+                {
+                    Reponse.notifyAll();
+                }
+            }
+
+            synchronized (this)
+            {
+                m_Redemarrages++;
+            }
+
+            if (System.currentTimeMillis() - Debut > REDEMARRAGE_MAX)       //Le processus a bien fonctionné un moment: redémarre vite
+            {
+                Attente = REDEMARRAGE_MIN;
+            }
+
+            try
+            {
+                Thread.sleep(Attente);
+            }
+
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            Attente = Math.min(Attente * 2, REDEMARRAGE_MAX);
+        }
+    }
+
+    //Attend que le processus ait répondu PRET, au plus Delai (ms). Faux s'il n'est pas prêt: les requêtes passent alors par des commandes bash
+    public synchronized boolean AttendrePret(long Delai) throws InterruptedException
+    {
+        long Fin = System.currentTimeMillis() + Delai;
+
+        while (m_Processus && m_Pret == false && System.currentTimeMillis() < Fin)
+        {
+            wait(Math.max(Fin - System.currentTimeMillis(), 1));
+        }
+
+        return m_Pret;
+    }
+
+    private synchronized void Compter(boolean Erreur)
+    {
+        if (Erreur)
+        {
+            m_Erreurs++;
+        }
+
+        else
+        {
+            m_Expirations++;
+        }
+    }
+
+    public synchronized String Resume()
+    {
+        return "Liaison Hologram: processus " + (m_Processus ? (m_Pret ? "prêt" : "arrêté") : "désactivé") + ", " + Chemin("par le processus", PROCESSUS) + ", "
+             + Chemin("par commande bash", COMMANDE) + ", " + m_Erreurs + " erreurs, " + m_Expirations + " sans réponse, " + m_Redemarrages + " redémarrages";
+    }
+
+    private String Chemin(String Nom, int Chemin)
+    {
+        return m_Requetes[Chemin] + " requêtes " + Nom + (m_Requetes[Chemin] > 0 ? " (moyenne " + (m_DureeTotale[Chemin] / m_Requetes[Chemin]) + " ms, max " + m_DureeMax[Chemin] + " ms)" : "");
+    }
+
+    //Le message entre guillemets pour être passé en un seul argument par bash
+    static String Guillemets(String Message)
+    {
+        return "\"" + Message.replace("\\", "\\\\").replace("\"", "\\\"").replace("$", "\\$").replace("`", "\\`") + "\"";
+    }
+
+    //Retire les guillemets et les \ ajoutés pour bash (trames de l'ancien Data.txt)
+    static String SansGuillemets(String Commande)
+    {
+        String Texte = Commande.trim();
+
+        if (Texte.length() >= 2 && Texte.startsWith("\"") && Texte.endsWith("\""))
+        {
+            Texte = Texte.substring(1, Texte.length() - 1);
+        }
+
+        return Texte.replace("\\\"", "\"");
+    }
+}
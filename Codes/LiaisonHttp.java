@@ -0,0 +1,137 @@
+/**
+ * @file   LiaisonHttp.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Envoi des messages par POST HTTP vers liaison.url (ex: RecepteurEssai sur un poste de travail), à la place d'Hologram.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.*;
+import java.net.*;
+
+//Envoie chaque message (un lot complet) dans le corps d'un POST HTTP. La connexion est gardée ouverte entre les envois (keep-alive de
+//HttpURLConnection): la réponse est toujours lue au complet pour que la connexion puisse être réutilisée par le POST suivant.
+//Le message est confirmé par une réponse 2xx.
+public class LiaisonHttp implements LiaisonMontante
+{
+    private URL m_Url;
+    private int m_Delai;                                                    //Délai maximal (ms) de connexion et de lecture de la réponse
+
+    private long m_Requetes = 0;
+    private long m_Echecs = 0;
+    private long m_Octets = 0;
+    private long m_DureeTotale = 0;
+    private long m_DureeMax = 0;
+
+    public LiaisonHttp(String Url, int Delai)
+    {
+        try
+        {
+            m_Url = new URL(Url);
+        }
+
+        catch (MalformedURLException e)
+        {
+            throw new IllegalArgumentException("liaison.url invalide: " + Url);
+        }
+
+        m_Delai = Delai;
+    }
+
+    public boolean Envoyer(String Message) throws IOException
+    {
+        return Envoyer(Message, null);
+    }
+
+    //La clé est aussi passée dans l'en-tête Idempotency-Key
+    public boolean Envoyer(String Message, String Cle) throws IOException
+    {
+        long Debut = System.nanoTime();
+        byte[] Corps = Message.getBytes("UTF-8");
+        HttpURLConnection Connexion = (HttpURLConnection)m_Url.openConnection();
+        int Code = -1;
+
+        Connexion.setRequestMethod("POST");
+        Connexion.setDoOutput(true);
+        Connexion.setConnectTimeout(m_Delai);
+        Connexion.setReadTimeout(m_Delai);
+        Connexion.setFixedLengthStreamingMode(Corps.length);              //Sans tampon: HttpURLConnection ne refait pas le POST par lui-même après une coupure
+        Connexion.setRequestProperty("Content-Type", "application/json");
+
+        if (Cle != null)
+        {
+            Connexion.setRequestProperty("Idempotency-Key", Cle);
+        }
+
+        try
+        {
+            OutputStream Sortie = Connexion.getOutputStream();
+
+            Sortie.write(Corps);
+            Sortie.close();
+
+            Code = Connexion.getResponseCode();
+            Vider(Code / 100 == 2 ? Connexion.getInputStream() : Connexion.getErrorStream());
+        }
+
+        catch (IOException e)
+        {
+            System.out.println("POST " + m_Url + ": " + e.toString());
+            Vider(Connexion.getErrorStream());
+        }
+
+        boolean Envoye = Code / 100 == 2;
+        long Duree = (System.nanoTime() - Debut) / 1000000;
+
+        synchronized (this)
+        {
+            m_Requetes++;
+            m_Echecs += Envoye ? 0 : 1;
+            m_Octets += Envoye ? Corps.length : 0;
+            m_DureeTotale += Duree;
+            m_DureeMax = Math.max(m_DureeMax, Duree);
+        }
+
+        if (Envoye == false && Code != -1)
+        {
+            System.out.println("POST " + m_Url + ": réponse " + Code);
+        }
+
+        return Envoye;
+    }
+
+    //Lit la réponse jusqu'à la fin et la ferme, la connexion retourne dans le cache de connexions gardées ouvertes
+    private void Vider(InputStream Reponse)
+    {
+        if (Reponse == null)
+        {
+            return;
+        }
+
+        byte[] Tampon = new byte[512];
+
+        try
+        {
+            while (Reponse.read(Tampon) > 0)
+            {
+            }
+
+            Reponse.close();
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    public synchronized String Resume()
+    {
+        return "Liaison HTTP " + m_Url + ": " + m_Requetes + " requêtes, " + m_Echecs + " échecs, " + m_Octets + " octets envoyés"
+             + (m_Requetes > 0 ? ", moyenne " + (m_DureeTotale / m_Requetes) + " ms, max " + m_DureeMax + " ms" : "");
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * @file   LiaisonMontante.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Chemin par lequel les messages quittent le serveur (liaison.type dans serveur.properties): LiaisonHologram ou LiaisonHttp.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+
+//Chemin par lequel les messages (lots de lectures, trames json du mode debug) quittent le serveur. Choisi avec liaison.type:
+//hologram (LiaisonHologram, par défaut) ou http (LiaisonHttp, POST vers liaison.url, ex: RecepteurEssai sur un poste de travail).
+//La connexion au réseau cellulaire (network connect) reste faite par LiaisonHologram dans les deux cas.
+public interface LiaisonMontante
+{
+    //Retourne true si la réception du message est confirmée, l'appelant réessaie sinon
+    boolean Envoyer(String Message) throws IOException, InterruptedException;
+
+    //La clé d'idempotence est déjà dans le message ("K"), une liaison peut aussi la passer à part (ex: en-tête HTTP)
+    default boolean Envoyer(String Message, String Cle) throws IOException, InterruptedException
+    {
+        return Envoyer(Message);
+    }
+
+    String Resume();
+
+    static LiaisonMontante Configuree(LiaisonHologram Hologram)
+    {
+        String Type = Configuration.Texte("liaison.type", "hologram");
+
+        if (Type.equals("http"))
+        {
+            return new LiaisonHttp(Configuration.Texte("liaison.url", "http://localhost:8080/lectures"), (int)Configuration.Entier("liaison.delai_ms", 180000));
+        }
+
+        if (Type.equals("hologram") == false)
+        {
+            System.out.println("liaison.type=" + Type + " inconnu, les messages seront envoyés par Hologram");
+        }
+
+        return Hologram;
+    }
+}
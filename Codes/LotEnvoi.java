@@ -0,0 +1,275 @@
+/**
+ * @file   LotEnvoi.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Lot de lectures envoyé à Hologram en un seul message (json ou compact), les lectures groupées par appareil.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java, EncodeurJson.java et CompressionLot.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+//Lot de lectures envoyé à Hologram en un seul message, les lectures groupées par appareil dans l'ordre du journal:
+//{"D0":"2019-02-14T10:32:05.123","CE":[[0,0,0,0,87],[60012,0,0,0,90]],"EN":[[1500,21.123,101.325,45.678,0]]}
+//D0 est la date de réception de la première lecture du lot (même format que "D" dans les trames json d'une lecture),
+//chaque lecture est [décalage en ms par rapport à D0, T, P, H, R]. Le lot est rempli tant que le message reste sous TailleMax octets.
+//Avec envoi.format=compact, le message est {"Z":"<base64>"} (voir CompressionLot.java).
+//Une clé d'idempotence peut être ajoutée au début du message ("K":"<clé>"), pour que le côté qui reçoit ignore un lot reçu deux fois.
+public class LotEnvoi
+{
+    static final int MAX_LECTURES = 1024;                                   //Nombre maximal de lectures dans un lot, peu importe leur taille
+    private static final int TAILLE_BASE = 9;                               //{"D0":"" et }
+    private static final int TAILLE_APPAREIL = 8;                           //,"CE":[ et ]
+    static final int TAILLE_CLE_MAX = 64;
+
+    private int m_TailleMax;
+    private EncodeurJson m_Encodeur = new EncodeurJson();
+    private Lecture[] m_Lectures = new Lecture[MAX_LECTURES];               //Réutilisées d'un lot à l'autre
+    private int m_NbLectures = 0;
+    private int[] m_Appareils = new int[MAX_LECTURES];                      //ID des appareils du lot (2 caractères dans un int), dans l'ordre où ils apparaissent
+    private int m_NbAppareils = 0;
+    private int m_Taille = 0;                                               //Taille du message (octets) avec les lectures déjà ajoutées
+    private ByteBuffer m_Brouillon = ByteBuffer.allocate(EncodeurJson.TAILLE_MAX);     //Pour mesurer la taille d'une lecture encodée
+    private ByteBuffer m_Message;
+    private CompressionLot m_Compression = null;                            //null: format json
+    private String m_Cle = null;                                            //Clé d'idempotence du lot (null: pas de clé)
+
+    public LotEnvoi(int TailleMax)
+    {
+        this(TailleMax, Configuration.Texte("envoi.format", "json"));
+    }
+
+    public LotEnvoi(int TailleMax, String Format)
+    {
+        m_TailleMax = TailleMax;
+
+        if (Format.equals("compact"))
+        {
+            m_Compression = new CompressionLot();
+        }
+
+        else if (Format.equals("json") == false)
+        {
+            System.out.println("envoi.format=" + Format + " inconnu, les lots seront envoyés en json");
+        }
+
+        m_Message = ByteBuffer.allocate(Math.max(TailleMax, 0) + EncodeurJson.TAILLE_MAX + TAILLE_BASE + TAILLE_APPAREIL + TAILLE_CLE_MAX + 7);
+
+        for (int i = 0; i < MAX_LECTURES; i++)
+        {
+            m_Lectures[i] = new Lecture();
+        }
+    }
+
+    public void Vider()
+    {
+        Vider(null);
+    }
+
+    public void Vider(String Cle)
+    {
+        if (Cle != null && Cle.length() > TAILLE_CLE_MAX)
+        {
+            throw new IllegalArgumentException("Clé de lot trop longue: " + Cle);
+        }
+
+        m_Cle = Cle;
+        m_NbLectures = 0;
+        m_NbAppareils = 0;
+        m_Taille = 0;
+
+        if (m_Compression != null)
+        {
+            m_Compression.Vider();
+        }
+    }
+
+    public int NbLectures()
+    {
+        return m_NbLectures;
+    }
+
+    public String Cle()
+    {
+        return m_Cle;
+    }
+
+    //Taille (octets) du message que Hologram recevra
+    public int Taille()
+    {
+        return m_Taille + TailleCle();
+    }
+
+    //"K":"<clé>",
+    private int TailleCle()
+    {
+        return m_Cle == null ? 0 : m_Cle.length() + 7;
+    }
+
+    //Ajoute une lecture au lot, retourne false si le message dépasserait la taille maximale (la première lecture est toujours acceptée)
+    public boolean Ajouter(Lecture Donnees)
+    {
+        if (m_NbLectures >= MAX_LECTURES)
+        {
+            return false;
+        }
+
+        if (m_Compression != null)
+        {
+            if (m_Compression.Ajouter(Donnees, m_TailleMax - TailleCle()) == false)
+            {
+                return false;
+            }
+
+            Copier(Donnees, m_Lectures[m_NbLectures++]);
+            m_Taille = m_Compression.Taille();
+
+            return true;
+        }
+
+        int Taille = m_Taille;
+        int Appareil = (Donnees.m_ID1 << 16) | Donnees.m_ID2;
+        boolean Nouveau = true;
+
+        if (m_NbLectures == 0)
+        {
+            m_Brouillon.clear();
+            m_Encodeur.AjouterDate(m_Brouillon, Donnees.m_HeureReception);
+            Taille = TAILLE_BASE + m_Brouillon.position();
+        }
+
+        for (int i = 0; i < m_NbAppareils && Nouveau; i++)
+        {
+            Nouveau = m_Appareils[i] != Appareil;
+        }
+
+        m_Brouillon.clear();
+        EncoderLecture(m_Brouillon, Donnees, m_NbLectures == 0 ? Donnees.m_HeureReception : m_Lectures[0].m_HeureReception);
+        Taille += m_Brouillon.position() + (Nouveau ? TAILLE_APPAREIL : 1);  //Virgule avant la lecture si l'appareil à déjà des lectures
+
+        if (m_NbLectures > 0 && Taille + TailleCle() > m_TailleMax)
+        {
+            return false;
+        }
+
+        if (Nouveau)
+        {
+            m_Appareils[m_NbAppareils++] = Appareil;
+        }
+
+        Copier(Donnees, m_Lectures[m_NbLectures++]);
+        m_Taille = Taille;
+
+        return true;
+    }
+
+    //Le message que Hologram recevra
+    public String Message()
+    {
+        if (m_Compression != null)
+        {
+            String Texte = m_Compression.Texte(m_Lectures, m_NbLectures);
+
+            return m_Cle == null ? Texte : "{\"K\":\"" + m_Cle + "\"," + Texte.substring(1);
+        }
+
+        m_Message.clear();
+        m_Message.put((byte)'{');
+
+        if (m_Cle != null)
+        {
+            Champ("K");
+            EncodeurJson.Ajouter(m_Message, "\"" + m_Cle + "\",");
+        }
+
+        Champ("D0");
+        m_Message.put((byte)'"');
+        m_Encodeur.AjouterDate(m_Message, m_Lectures[0].m_HeureReception);
+        m_Message.put((byte)'"');
+
+        for (int a = 0; a < m_NbAppareils; a++)
+        {
+            boolean Premiere = true;
+
+            m_Message.put((byte)',');
+            Champ("" + (char)(m_Appareils[a] >> 16) + (char)(m_Appareils[a] & 0xFFFF));
+            m_Message.put((byte)'[');
+
+            for (int i = 0; i < m_NbLectures; i++)
+            {
+                if (((m_Lectures[i].m_ID1 << 16) | m_Lectures[i].m_ID2) == m_Appareils[a])
+                {
+                    if (Premiere == false)
+                    {
+                        m_Message.put((byte)',');
+                    }
+
+                    EncoderLecture(m_Message, m_Lectures[i], m_Lectures[0].m_HeureReception);
+                    Premiere = false;
+                }
+            }
+
+            m_Message.put((byte)']');
+        }
+
+        m_Message.put((byte)'}');
+
+        try
+        {
+            return new String(m_Message.array(), 0, m_Message.position(), "US-ASCII");
+        }
+
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);                             //US-ASCII existe sur toutes les JVM
+        }
+    }
+
+    //"Nom":
+    private void Champ(String Nom)
+    {
+        EncodeurJson.Ajouter(m_Message, "\"" + Nom + "\":");
+    }
+
+    //[décalage, T, P, H, R]
+    static void EncoderLecture(ByteBuffer Sortie, Lecture Donnees, long HeureBase)
+    {
+        long Decalage = Donnees.m_HeureReception - HeureBase;
+
+        Sortie.put((byte)'[');
+
+        if (Decalage < 0)
+        {
+            Sortie.put((byte)'-');
+            Decalage = -Decalage;
+        }
+
+        EncodeurJson.AjouterEntier(Sortie, Decalage, 1);
+        Sortie.put((byte)',');
+        EncodeurJson.AjouterValeur(Sortie, Donnees.m_T);
+        Sortie.put((byte)',');
+        EncodeurJson.AjouterValeur(Sortie, Donnees.m_P);
+        Sortie.put((byte)',');
+        EncodeurJson.AjouterValeur(Sortie, Donnees.m_H);
+        Sortie.put((byte)',');
+        EncodeurJson.AjouterValeur(Sortie, Donnees.m_R);
+        Sortie.put((byte)']');
+    }
+
+    static void Copier(Lecture Source, Lecture Destination)
+    {
+        Destination.m_ID1 = Source.m_ID1;
+        Destination.m_ID2 = Source.m_ID2;
+        Destination.m_Type = Source.m_Type;
+        Destination.m_T = Source.m_T;
+        Destination.m_P = Source.m_P;
+        Destination.m_H = Source.m_H;
+        Destination.m_R = Source.m_R;
+        Destination.m_HeureClient = Source.m_HeureClient;
+        Destination.m_HeureReception = Source.m_HeureReception;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * @file   MesureAttente.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Attente des lectures d'une classe d'envoi (alarmes, journal), de leur réception à leur envoi.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+//Attente des lectures d'une classe d'envoi (alarmes, journal): de leur réception par le serveur à leur envoi
+//Peut être appelée par plusieurs threads.
+public class MesureAttente
+{
+    private String m_Nom;
+    private long m_Lectures = 0;                                            //Protégés par this
+    private long m_Totale = 0;                                              //Temps total (ms)
+    private long m_Max = 0;
+
+    public MesureAttente(String Nom)
+    {
+        m_Nom = Nom;
+    }
+
+    public synchronized void Ajouter(long Attente)
+    {
+        m_Lectures++;
+        m_Totale += Math.max(Attente, 0);
+        m_Max = Math.max(m_Max, Attente);
+    }
+
+    public synchronized String Resume()
+    {
+        return "Attente des lectures (" + m_Nom + "): " + m_Lectures + " lectures" + (m_Lectures > 0 ? ", " + String.format("%.1f", m_Totale / 1000.0 / m_Lectures) + " s en moyenne, " + String.format("%.1f", m_Max / 1000.0) + " s au plus" : "");
+    }
+}
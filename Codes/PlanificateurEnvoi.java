@@ -0,0 +1,168 @@
+/**
+ * @file   PlanificateurEnvoi.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Planificateur des envois: décide quand alimenter le modem et envoyer le journal.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+
+//Décide quand alimenter le modem et envoyer le journal, évalué à chaque 5 secondes par EnvoieInformations. Un envoi est fait quand:
+// - fraîcheur : la plus vieille lecture pas envoyée aura envoi.fraicheur_ms d'âge (6 heures par défaut) à la fin de l'envoi prévu
+//               (durée moyenne de la connexion + durée moyenne d'envoi par lecture multipliée par le nombre de lectures en attente);
+// - arriéré   : les lectures en attente remplissent envoi.lots_min messages (nombre moyen de lectures par message des derniers envois),
+//               le réveil du modem est alors amorti, même si les lectures sont récentes;
+// - ancien fichier : il reste un Data.txt d'une version précédente.
+//Jamais plus d'un réveil par envoi.intervalle_min_ms. Une journée calme ne réveille le modem qu'une fois par envoi.fraicheur_ms au plus
+//(aucune fois sans lecture), une journée chargée envoie dès qu'un message est plein au lieu d'accumuler des heures de lectures.
+//Les paramètres sont relus quand serveur.properties change (Configuration.Recharger), sans redémarrer le serveur.
+public class PlanificateurEnvoi
+{
+    private static final double POIDS = 0.3;                                //Poids du dernier envoi dans les moyennes mobiles
+
+    private long m_Fraicheur;
+    private long m_IntervalleMin;
+    private double m_LotsMin;
+
+    private Lecture m_Lecture = new Lecture();
+    private long m_PlusAncienne = 0;                                        //Heure de la plus vieille lecture en attente (0: à relire dans le journal)
+    private long m_DernierReveil;                                           //Début du dernier envoi (ou démarrage du serveur)
+
+    volatile double m_DureeConnexion = 60000;                               //Moyennes mobiles des derniers envois (valeurs de départ prudentes)
+    volatile double m_DureeParLecture = 50;                                 //ms par lecture, reprises comprises
+    volatile double m_LecturesParMessage = 160;                             //Lectures par lot json de 4000 octets
+
+    volatile long m_Evaluations = 0;                                        //Mesures des décisions
+    volatile long m_Reveils = 0;
+    volatile long m_ParFraicheur = 0;
+    volatile long m_ParArriere = 0;
+    volatile long m_ParAncienFichier = 0;
+    volatile long m_AEnvoyer = 0;                                           //Lectures en attente à la dernière évaluation
+    volatile long m_AgeMax = 0;                                             //Âge (ms) de la plus vieille lecture en attente au début du dernier envoi
+    volatile long m_ProchainEnvoi = 0;                                      //Moment (ms) prévu du prochain envoi par fraîcheur (0: aucune lecture en attente)
+    volatile String m_DerniereDecision = "aucune";
+
+    public PlanificateurEnvoi()
+    {
+        Parametres();
+        m_DernierReveil = System.currentTimeMillis();
+    }
+
+    private void Parametres()
+    {
+        m_Fraicheur = Configuration.Entier("envoi.fraicheur_ms", 21600000);
+        m_IntervalleMin = Configuration.Entier("envoi.intervalle_min_ms", 600000);
+        m_LotsMin = Math.max(Configuration.Entier("envoi.lots_min", 1), 1);
+
+        System.out.println("Planificateur d'envoi: fraîcheur " + (m_Fraicheur / 60000) + " min, " + (m_IntervalleMin / 60000) + " min au moins entre deux réveils, " + (long)m_LotsMin + " messages pleins");
+    }
+
+    public void Demarrer(long Maintenant)
+    {
+        m_DernierReveil = Maintenant;
+    }
+
+    //Retourne la raison d'envoyer le journal maintenant, ou null s'il faut attendre
+    public String Evaluer(JournalSegmente Journal, boolean AncienFichier) throws IOException
+    {
+        if (Configuration.Recharger())
+        {
+            Parametres();
+        }
+
+        long AEnvoyer = Journal.NbAEnvoyer();
+
+        if (m_PlusAncienne == 0 && AEnvoyer > 0)
+        {
+            m_PlusAncienne = Journal.PlusAncienneAEnvoyer(m_Lecture);
+        }
+
+        return Decider(System.currentTimeMillis(), AEnvoyer, m_PlusAncienne, AncienFichier);
+    }
+
+    //Avec envoi.contenu=cumuls: les cumuls fermés pas encore envoyés remplacent les lectures du journal
+    public String Evaluer(EtageCumuls Cumuls, boolean AncienFichier)
+    {
+        if (Configuration.Recharger())
+        {
+            Parametres();
+        }
+
+        return Decider(System.currentTimeMillis(), Cumuls.NbEnAttente(), Cumuls.PlusAncienEnAttente(), AncienFichier);
+    }
+
+    public String Decider(long Maintenant, long AEnvoyer, long PlusAncienne, boolean AncienFichier)
+    {
+        long DureePrevue = (long)(m_DureeConnexion + m_DureeParLecture * AEnvoyer);
+        String Raison = null;
+
+        m_Evaluations++;
+        m_AEnvoyer = AEnvoyer;
+        m_ProchainEnvoi = AEnvoyer > 0 && PlusAncienne > 0 ? Math.max(PlusAncienne + m_Fraicheur - DureePrevue, m_DernierReveil + m_IntervalleMin) : 0;
+
+        if (Maintenant - m_DernierReveil < m_IntervalleMin)
+        {
+            return null;
+        }
+
+        if (AncienFichier)
+        {
+            Raison = "ancien fichier";
+            m_ParAncienFichier++;
+        }
+
+        else if (AEnvoyer > 0 && PlusAncienne > 0 && Maintenant + DureePrevue >= PlusAncienne + m_Fraicheur)
+        {
+            Raison = "fraîcheur";
+            m_ParFraicheur++;
+        }
+
+        else if (AEnvoyer >= m_LotsMin * m_LecturesParMessage)
+        {
+            Raison = "arriéré";
+            m_ParArriere++;
+        }
+
+        if (Raison != null)
+        {
+            m_Reveils++;
+            m_DernierReveil = Maintenant;
+            m_AgeMax = PlusAncienne > 0 ? Maintenant - PlusAncienne : 0;
+            m_DerniereDecision = Raison + ": " + AEnvoyer + " lectures, la plus vieille de " + (m_AgeMax / 60000) + " min, durée prévue " + (DureePrevue / 1000) + " s";
+        }
+
+        return Raison;
+    }
+
+    //Mesures de l'envoi terminé, pour les prochaines décisions
+    public void EnvoiTermine(long Maintenant, long DureeConnexion, long DureeEnvoi, long Lectures, long Messages)
+    {
+        m_PlusAncienne = 0;                                                 //Le journal a changé, sera relu à la prochaine évaluation
+        m_DureeConnexion += POIDS * (DureeConnexion - m_DureeConnexion);
+
+        if (Lectures > 0)
+        {
+            m_DureeParLecture += POIDS * ((double)DureeEnvoi / Lectures - m_DureeParLecture);
+        }
+
+        if (Messages > 1)                                                   //Le dernier message d'un envoi n'est pas plein
+        {
+            m_LecturesParMessage += POIDS * ((double)Lectures / Messages - m_LecturesParMessage);
+        }
+    }
+
+    public String Resume()
+    {
+        long Prochain = m_ProchainEnvoi;
+
+        return "Planificateur d'envoi: " + m_Reveils + " réveils du modem (fraîcheur: " + m_ParFraicheur + ", arriéré: " + m_ParArriere + ", ancien fichier: " + m_ParAncienFichier + ") en "
+             + m_Evaluations + " évaluations, " + m_AEnvoyer + " lectures en attente (seuil " + (long)(m_LotsMin * m_LecturesParMessage) + ")"
+             + (Prochain > 0 ? ", prochain envoi par fraîcheur dans " + Math.max(0, (Prochain - System.currentTimeMillis()) / 60000) + " min" : "")
+             + ", connexion moyenne " + (long)(m_DureeConnexion / 1000) + " s, " + String.format("%.1f", m_DureeParLecture) + " ms par lecture, dernière décision: " + m_DerniereDecision;
+    }
+}
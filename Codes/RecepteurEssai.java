@@ -0,0 +1,181 @@
+/**
+ * @file   RecepteurEssai.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Récepteur HTTP local qui remplace Hologram pour les essais sur un poste de travail (liaison.type=http dans serveur.properties).
+ *         Chaque POST est enregistré (une ligne par message dans le fichier donné), puis la réponse peut être retardée ou remplacée par
+ *         une erreur 503 ou par une connexion coupée sans réponse, pour mesurer le débit et les reprises de l'envoi sans modem.
+ *         Le message est enregistré avant que l'erreur soit choisie, comme un serveur qui a reçu le message mais dont la réponse est perdue.
+ *         Un message déjà reçu (même en-tête Idempotency-Key, ou même contenu sans clé) reçoit 200 sans être enregistré une autre fois.
+ *         GET /statistiques retourne les compteurs.
+ *         Le code doit être compilé avec /javac RecepteurEssai.java et lancé avec
+ *         /java RecepteurEssai [port] [latence_ms] [taux_erreur] [taux_coupure] [fichier]   (ex: java RecepteurEssai 8080 50 0.05 0.02 Recus.txt)
+ *
+ * @version 1.0 : Première version
+ * @version 1.1 : Messages reçus plus d'une fois ignorés selon leur clé d'idempotence
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class RecepteurEssai implements HttpHandler
+{
+    private HttpServer m_Serveur;
+    private ExecutorService m_Taches = Executors.newCachedThreadPool();    //Une tâche par requête, arrêtées avec le récepteur
+    private long m_Latence;                                         //Délai (ms) avant chaque réponse
+    private double m_TauxErreur;                                    //Proportion des POST qui reçoivent une erreur 503
+    private double m_TauxCoupure;                                   //Proportion des POST dont la connexion est coupée sans réponse
+    private Writer m_Fichier = null;                                //Messages reçus, un par ligne (null: pas enregistrés)
+    private Random m_Hasard = new Random();
+
+    AtomicLong m_Requetes = new AtomicLong();
+    AtomicLong m_Erreurs = new AtomicLong();
+    AtomicLong m_Coupures = new AtomicLong();
+    AtomicLong m_Octets = new AtomicLong();
+    Set<String> m_Connexions = ConcurrentHashMap.newKeySet();       //Adresse et port de chaque connexion, pour vérifier qu'elles sont réutilisées
+    Set<String> m_Messages = ConcurrentHashMap.newKeySet();         //Clé (ou contenu) des messages reçus, pour ignorer ceux reçus plus d'une fois
+    AtomicLong m_Doublons = new AtomicLong();
+
+    public static void main(String[] args) throws Exception
+    {
+        int Port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        RecepteurEssai Recepteur = new RecepteurEssai(Port, args.length > 1 ? Long.parseLong(args[1]) : 0, args.length > 2 ? Double.parseDouble(args[2]) : 0,
+                                                      args.length > 3 ? Double.parseDouble(args[3]) : 0, args.length > 4 ? args[4] : null);
+
+        System.out.println("Récepteur d'essai sur http://localhost:" + Recepteur.Port() + "/lectures");
+
+        while (true)
+        {
+            Thread.sleep(10000);
+            System.out.println(Recepteur.Resume());
+        }
+    }
+
+    public RecepteurEssai(int Port, long Latence, double TauxErreur, double TauxCoupure, String Fichier) throws IOException
+    {
+        m_Latence = Latence;
+        m_TauxErreur = TauxErreur;
+        m_TauxCoupure = TauxCoupure;
+
+        if (Fichier != null)
+        {
+            m_Fichier = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(Fichier, true), "UTF-8"));
+        }
+
+        System.setProperty("sun.net.httpserver.nodelay", "true");  //Sinon l'en-tête et le corps de la réponse attendent l'ACK retardé du client (40 ms)
+        m_Serveur = HttpServer.create(new InetSocketAddress(Port), 0);
+        m_Serveur.createContext("/", this);
+        m_Serveur.setExecutor(m_Taches);
+        m_Serveur.start();
+    }
+
+    public int Port()
+    {
+        return m_Serveur.getAddress().getPort();
+    }
+
+    public void Arreter() throws IOException
+    {
+        m_Serveur.stop(0);
+        m_Taches.shutdown();
+
+        if (m_Fichier != null)
+        {
+            m_Fichier.close();
+        }
+    }
+
+    public void handle(HttpExchange Echange) throws IOException
+    {
+        if (Echange.getRequestMethod().equals("GET"))
+        {
+            Repondre(Echange, 200, Resume());
+            return;
+        }
+
+        ByteArrayOutputStream Corps = new ByteArrayOutputStream();
+        InputStream Entree = Echange.getRequestBody();
+        byte[] Tampon = new byte[4096];
+        int Lus;
+
+        while ((Lus = Entree.read(Tampon)) > 0)
+        {
+            Corps.write(Tampon, 0, Lus);
+        }
+
+        String Message = Corps.toString("UTF-8");
+        String Cle = Echange.getRequestHeaders().getFirst("Idempotency-Key");
+        boolean Doublon = m_Messages.add(Cle != null ? Cle : Message) == false;
+
+        m_Requetes.incrementAndGet();
+        m_Octets.addAndGet(Corps.size());
+        m_Connexions.add(Echange.getRemoteAddress().toString());
+
+        if (Doublon)
+        {
+            m_Doublons.incrementAndGet();
+        }
+
+        else if (m_Fichier != null)
+        {
+            synchronized (m_Fichier)
+            {
+                m_Fichier.write(Message.replace('\n', ' ') + "\n");
+                m_Fichier.flush();
+            }
+        }
+
+        try
+        {
+            Thread.sleep(m_Latence);
+        }
+
+        catch (InterruptedException e)
+        {
+        }
+
+        double Tirage;
+
+        synchronized (m_Hasard)
+        {
+            Tirage = m_Hasard.nextDouble();
+        }
+
+        if (Tirage < m_TauxCoupure)                                 //Connexion fermée sans réponse
+        {
+            m_Coupures.incrementAndGet();
+            Echange.close();
+            return;
+        }
+
+        if (Tirage < m_TauxCoupure + m_TauxErreur)
+        {
+            m_Erreurs.incrementAndGet();
+            Repondre(Echange, 503, "Erreur simulée");
+            return;
+        }
+
+        Repondre(Echange, 200, "OK");
+    }
+
+    private void Repondre(HttpExchange Echange, int Code, String Texte) throws IOException
+    {
+        byte[] Reponse = Texte.getBytes("UTF-8");
+
+        Echange.sendResponseHeaders(Code, Reponse.length);
+        Echange.getResponseBody().write(Reponse);
+        Echange.close();
+    }
+
+    public String Resume()
+    {
+        return "Récepteur d'essai: " + m_Requetes.get() + " POST, " + m_Octets.get() + " octets, " + m_Erreurs.get() + " erreurs 503, " + m_Coupures.get() + " coupures, "
+             + m_Messages.size() + " messages différents, " + m_Doublons.get() + " doublons ignorés, " + m_Connexions.size() + " connexions";
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * @file   RegleAlarme.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Règle d'alarme de alarme.regles (ex: CE:R>75), comparée aux lectures en point fixe.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.util.ArrayList;
+import java.util.regex.*;
+
+//Règle d'alarme, une par virgule dans alarme.regles: <appareil ou *>:<T|P|H|R><'<' ou '>'><seuil>, ex: CE:R>75 (voyant rouge de la centrifugeuse)
+//Seules les mesures (Trame.TYPE_MESURE) sont vérifiées. Le seuil est gardé en point fixe pour être comparé aux lectures sans conversion.
+public class RegleAlarme
+{
+    static final Pattern FORMAT = Pattern.compile("^(\\w{2}|\\*):([TPHR])([<>])(-?\\d+(?:\\.\\d+)?)$");
+
+    private String m_Texte;
+    private char m_ID1;                                                     //'*' pour tous les appareils
+    private char m_ID2;
+    private char m_Champ;
+    private boolean m_Superieur;                                            //'>': alarme au-dessus du seuil, '<': en dessous
+    private long m_Seuil;
+
+    //Règles de alarme.regles, une règle invalide est affichée et ignorée
+    static RegleAlarme[] Configurees()
+    {
+        ArrayList<RegleAlarme> Regles = new ArrayList<RegleAlarme>();
+
+        for (String Texte : Configuration.Texte("alarme.regles", "CE:R>75,EC:T>30").split(","))
+        {
+            Matcher m = FORMAT.matcher(Texte.trim());
+
+            if (m.find())
+            {
+                Regles.add(new RegleAlarme(m));
+            }
+
+            else if (Texte.trim().isEmpty() == false)
+            {
+                System.out.println("Règle d'alarme invalide ignorée: " + Texte);
+            }
+        }
+
+        return Regles.toArray(new RegleAlarme[Regles.size()]);
+    }
+
+    private RegleAlarme(Matcher m)
+    {
+        m_Texte = m.group(0);
+        m_ID1 = m.group(1).charAt(0);
+        m_ID2 = m.group(1).equals("*") ? '*' : m.group(1).charAt(1);
+        m_Champ = m.group(2).charAt(0);
+        m_Superieur = m.group(3).equals(">");
+        m_Seuil = Trame.PointFixe(Double.parseDouble(m.group(4)));
+    }
+
+    boolean Correspond(Lecture Donnees)
+    {
+        if (Donnees.m_Type != Trame.TYPE_MESURE || (m_ID1 != '*' && (Donnees.m_ID1 != m_ID1 || Donnees.m_ID2 != m_ID2)))
+        {
+            return false;
+        }
+
+        long Valeur;
+
+        switch (m_Champ)
+        {
+            case 'T': Valeur = Donnees.m_T; break;
+            case 'P': Valeur = Donnees.m_P; break;
+            case 'H': Valeur = Donnees.m_H; break;
+            default: Valeur = Donnees.m_R; break;
+        }
+
+        return m_Superieur ? Valeur > m_Seuil : Valeur < m_Seuil;
+    }
+
+    public String toString()
+    {
+        return m_Texte;
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ * @file   RetentionJournal.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Budget d'espace disque du journal: les plus vieux segments sont compactés par minute, puis par heure.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+//Budget d'espace disque des segments du journal et de l'archive (retention.octets_max, 0: pas de budget), vérifié à chaque retention.verification_ms
+//par un thread de basse priorité: l'étage Enregistrement n'attend jamais après lui. Quand le budget est dépassé, les plus vieux segments sont
+//compactés d'un niveau à la fois, jusqu'à ce qu'il soit respecté: lectures -> moyenne de chaque appareil par minute -> moyenne par heure.
+//Les lectures compactées ont le type TYPE_MINUTE ou TYPE_HEURE (les clients envoient les types 1 à 3), c'est ce qui donne le niveau d'un segment.
+//Les segments pas encore envoyés ne sont jamais supprimés. Ceux de l'archive (déjà envoyés en cumuls) le sont, les plus vieux d'abord, en dernier recours.
+//Un segment du journal que l'envoi a déjà ouvert n'est pas remplacé (JournalSegmente.Remplacer), le curseur y pointe peut-être,
+//ni un segment qui contient des lectures récentes déjà envoyées (fichier "recentes"): le rattrapage doit les retrouver à la même position.
+public class RetentionJournal implements Runnable
+{
+    static final int TYPE_MINUTE = 4;
+    static final int TYPE_HEURE = 5;
+    private static final int NB_APPAREILS = 16;
+
+    Thread m_Thread;
+    private JournalSegmente m_Journal;
+    private Path m_Dossier = Paths.get(Configuration.Texte("journal.dossier", "/home/pi/ProjetNepal/Journal"));
+    private long m_OctetsMax = Configuration.Entier("retention.octets_max", 268435456);
+    private long m_Verification = Configuration.Entier("retention.verification_ms", 60000);
+    private Lecture m_Lecture = new Lecture();
+    private TimeZone m_Fuseau = TimeZone.getDefault();                      //Fuseau horaire des fenêtres, comme EtageCumuls
+
+    private volatile long m_Octets = 0;                                     //Mesures
+    private volatile long m_Compactages = 0;
+    private volatile long m_Recuperes = 0;                                  //Octets libérés par les compactages et suppressions
+    private volatile long m_DureeTotale = 0;                                //Temps total (ms) des compactages
+    private volatile long m_DureeMax = 0;
+    private volatile long m_Abandonnes = 0;                                 //Compactages abandonnés: le segment a été ouvert par l'envoi entre-temps
+    private volatile long m_Supprimes = 0;
+    private volatile long m_LecturesSupprimees = 0;
+
+    public RetentionJournal(JournalSegmente Journal)
+    {
+        try
+        {
+            m_Journal = Journal;
+
+            if (m_OctetsMax > 0)
+            {
+                m_Thread = new Thread(this, "Retention");
+                m_Thread.setDaemon(true);
+                m_Thread.setPriority(Thread.MIN_PRIORITY);
+                m_Thread.start();
+            }
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    public void run()
+    {
+        while (true)
+        {
+            try
+            {
+                Thread.sleep(m_Verification);
+                Verifier();
+            }
+
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            catch (Exception e)
+            {
+                System.out.println(e.toString());
+            }
+        }
+    }
+
+    //Compacte les plus vieux segments, niveau par niveau, jusqu'à ce que le budget soit respecté
+    void Verifier() throws IOException
+    {
+        List<Path> Segments = new ArrayList<Path>();
+
+        Segments.addAll(Segments(m_Journal.m_Archive));                     //Déjà envoyés, compactés d'abord
+        Segments.addAll(m_Journal.SegmentsScelles());
+        m_Octets = Octets(m_Dossier) + Octets(m_Journal.m_Archive);
+
+        if (m_Octets <= m_OctetsMax)
+        {
+            return;
+        }
+
+        System.out.println("Journal: " + m_Octets + " octets, budget de " + m_OctetsMax + " dépassé, compactage des plus vieux segments");
+
+        for (int Type = Trame.TYPE_MESURE; Type <= TYPE_HEURE && m_Octets > m_OctetsMax; Type = Type == Trame.TYPE_MESURE ? TYPE_MINUTE : Type + 1)
+        {
+            for (Path Segment : Segments)
+            {
+                if (m_Octets <= m_OctetsMax)
+                {
+                    break;
+                }
+
+                if (Files.exists(Segment) == false || Niveau(Segment) != Type)
+                {
+                    continue;
+                }
+
+                boolean Archive = Segment.getParent().equals(m_Journal.m_Archive);
+
+                if (Type == TYPE_HEURE && Archive)
+                {
+                    long Taille = Files.size(Segment);
+
+                    m_LecturesSupprimees += JournalSegmente.NbLectures(Segment, JournalSegmente.TAILLE_ENTETE);
+                    Files.delete(Segment);
+                    m_Supprimes++;
+                    m_Recuperes += Taille;
+                    m_Octets -= Taille;
+                }
+
+                else if (Type != TYPE_HEURE)
+                {
+                    Compacter(Segment, Type == Trame.TYPE_MESURE ? TYPE_MINUTE : TYPE_HEURE, Archive);
+                }
+            }
+        }
+
+        if (m_Octets > m_OctetsMax)
+        {
+            System.out.println("Journal: " + m_Octets + " octets après compactage, budget de " + m_OctetsMax + " encore dépassé (lectures pas encore envoyées)");
+        }
+
+        System.out.println(Resume());
+    }
+
+    //Type de la première mesure du segment (Trame.TYPE_MESURE, TYPE_MINUTE ou TYPE_HEURE), 0 si le segment n'a pas de mesure ou est illisible
+    int Niveau(Path Segment)
+    {
+        try (LecteurSegment Lecteur = new LecteurSegment(Segment))
+        {
+            while (Lecteur.Suivante(m_Lecture))
+            {
+                if (m_Lecture.m_Type == Trame.TYPE_MESURE || m_Lecture.m_Type == TYPE_MINUTE || m_Lecture.m_Type == TYPE_HEURE)
+                {
+                    return m_Lecture.m_Type;
+                }
+            }
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());
+        }
+
+        return 0;
+    }
+
+    //Remplace les mesures du segment par la moyenne de chaque appareil sur chaque fenêtre (minute ou heure), en ordre chronologique.
+    //Les boutons et les arrêts sont gardés tels quels
+    void Compacter(Path Segment, int Type, boolean Archive) throws IOException
+    {
+        long Debut = System.currentTimeMillis();
+        long Version = m_Journal.Version();
+        long Taille = Files.size(Segment);
+        CumulFenetre[] Fenetres = new CumulFenetre[NB_APPAREILS];
+        int NbAppareils = 0;
+        List<Lecture> Compactees = new ArrayList<Lecture>();
+
+        try (LecteurSegment Lecteur = new LecteurSegment(Segment))
+        {
+            while (Lecteur.Suivante(m_Lecture))
+            {
+                int i = 0;
+
+                while (i < NbAppareils && (Fenetres[i].m_ID1 != m_Lecture.m_ID1 || Fenetres[i].m_ID2 != m_Lecture.m_ID2))
+                {
+                    i++;
+                }
+
+                if (i == NB_APPAREILS || m_Lecture.m_Type == Trame.TYPE_BOUTON || m_Lecture.m_Type == Trame.TYPE_ARRET)    //Trop d'appareils: la lecture est gardée telle quelle
+                {
+                    Compactees.add(m_Lecture.Copie());
+                    continue;
+                }
+
+                if (i == NbAppareils)
+                {
+                    Fenetres[i] = new CumulFenetre(m_Lecture.m_ID1, m_Lecture.m_ID2, Type == TYPE_HEURE ? CumulFenetre.HEURE : CumulFenetre.MINUTE);
+                    NbAppareils++;
+                }
+
+                long Fenetre = CumulFenetre.Debut(m_Lecture.m_HeureReception, Fenetres[i].m_Duree, m_Fuseau);
+
+                if (Fenetres[i].m_Nombre > 0 && Fenetre != Fenetres[i].m_Debut)
+                {
+                    Compactees.add(Fenetres[i].Moyenne(Type));
+                    Fenetres[i].m_Nombre = 0;
+                }
+
+                Fenetres[i].Ajouter(Fenetre, m_Lecture);
+            }
+        }
+
+        for (int i = 0; i < NbAppareils; i++)
+        {
+            if (Fenetres[i].m_Nombre > 0)
+            {
+                Compactees.add(Fenetres[i].Moyenne(Type));
+            }
+        }
+
+        Compactees.sort((a, b) -> Long.compare(a.m_HeureReception, b.m_HeureReception));
+
+        Path Compacte = JournalSegmente.EcrireSegment(Segment, Compactees);
+
+        if (Archive)
+        {
+            Files.move(Compacte, Segment, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        else if (m_Journal.Remplacer(Segment, Compacte, Version) == false)
+        {
+            m_Abandonnes++;
+            return;
+        }
+
+        long Duree = System.currentTimeMillis() - Debut;
+        long Recuperes = Taille - Files.size(Segment);
+
+        m_Compactages++;
+        m_Recuperes += Recuperes;
+        m_Octets -= Recuperes;
+        m_DureeTotale += Duree;
+        m_DureeMax = Math.max(m_DureeMax, Duree);
+
+        System.out.println("Segment " + Segment + " compacté par " + (Type == TYPE_HEURE ? "heure" : "minute") + ": " + Taille + " -> " + (Taille - Recuperes) + " octets en " + Duree + " ms");
+    }
+
+    static List<Path> Segments(Path Dossier) throws IOException
+    {
+        List<Path> Segments = new ArrayList<Path>();
+
+        if (Files.isDirectory(Dossier))
+        {
+            try (DirectoryStream<Path> Contenu = Files.newDirectoryStream(Dossier, "*" + JournalSegmente.EXTENSION))
+            {
+                for (Path Fichier : Contenu)
+                {
+                    Segments.add(Fichier);
+                }
+            }
+        }
+
+        Collections.sort(Segments);                                         //Numéros sur 8 chiffres: l'ordre des noms est celui des numéros
+
+        return Segments;
+    }
+
+    //Taille des segments du dossier (le segment actif compte pour sa taille maximale, il est créé plein)
+    static long Octets(Path Dossier) throws IOException
+    {
+        long Octets = 0;
+
+        for (Path Segment : Segments(Dossier))
+        {
+            Octets += Files.size(Segment);
+        }
+
+        return Octets;
+    }
+
+    public String Resume()
+    {
+        return "Rétention du journal: " + m_Octets + " / " + m_OctetsMax + " octets, " + m_Compactages + " segments compactés" + (m_Compactages > 0 ? " (" + (m_DureeTotale / m_Compactages) + " ms en moyenne, max " + m_DureeMax + " ms)" : "")
+             + ", " + m_Recuperes + " octets libérés, " + m_Abandonnes + " compactages abandonnés, " + m_Supprimes + " segments de l'archive supprimés (" + m_LecturesSupprimees + " lectures)";
+    }
+}
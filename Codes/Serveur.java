@@ -9,6 +9,46 @@
  * @version 1.1 : Enregistre les données dans le système avant de les envoyer une fois par jour pour sauver du courant.
  * @version 1.2 : Un cavalier permet de décider si on est en mode debug ou normal. Le mode debug envoie directement les données par LTE quand elles sont reçues
  * @version 1.3 : Le Pi mets à jour son heure interne au démarrage par 2G/3G avec le module Hologram
+ * @version 1.4 : Les connexions des clients sont traitées par un bassin de threads, la boucle d'écoute ne fait plus qu'accepter les connexions
+ * @version 1.5 : Boucle d'événements NIO (Selector) sur le port 2228, les clients gardent leur connexion ouverte et envoient plusieurs trames
+ * @version 1.6 : Les clients envoient des trames binaires (Trame.java), les trames texte sérialisées sont encore acceptées
+ * @version 1.7 : Les trames texte sont analysées en une passe sans Regex ni allocation, les "patterns" de l'heure sont compilés une seule fois
+ * @version 1.8 : Pipeline d'ingestion (réception, analyse, encodage, enregistrement, envoi LTE), un thread et une file bornée par étage.
+ *                Quand une file est pleine, la lecture des connexions est suspendue et TCP refoule les clients au lieu de perdre des trames
+ * @version 1.9 : Les lectures en transit sont des cases de taille fixe dans une file circulaire hors tas (AnneauLectures), décodées une seule fois
+ *                à la réception et lues par les étages Enregistrement et Liaison sans créer d'objets
+ * @version 2.0 : Data.txt reste ouvert, les lectures sont regroupées pour l'écriture (fenêtre et taille de lot configurables dans serveur.properties)
+ * @version 2.1 : Data.txt est remplacé par un journal en segments numérotés (JournalSegmente), projetés en mémoire, avec CRC par lecture.
+ *                Les segments scellés sont envoyés puis supprimés par EnvoieInformations, une fin de segment corrompue est tronquée au démarrage
+ * @version 2.2 : La position de la prochaine lecture à envoyer est enregistrée après chaque envoi confirmé (CurseurEnvoi), l'envoi reprend là après un redémarrage
+ * @version 2.3 : Les lectures du journal sont envoyées en lots (LotEnvoi): un message json compact groupé par appareil, sous envoi.taille_max octets
+ * @version 2.4 : Format compact des lots (envoi.format=compact, CompressionLot.java): séries par appareil compressées à la manière de Gorilla, en base64
+ * @version 2.5 : Les commandes Hologram (send, network connect, modem location) passent par un processus Python gardé en vie (LiaisonHologram.py),
+ *                redémarré s'il s'arrête, au lieu de démarrer bash, sudo et hologram à chaque message
+ * @version 2.6 : Les messages passent par une LiaisonMontante (liaison.type): Hologram (LiaisonHologram) ou POST HTTP avec connexions gardées ouvertes (LiaisonHttp)
+ * @version 2.7 : Jusqu'à envoi.fenetre lots envoyés en même temps (FenetreEnvoi), chacun avec une clé d'idempotence "K", le curseur avance dans l'ordre du journal
+ * @version 2.8 : Les délais fixes avant les envois (5 minutes, puis 6 heures) sont remplacés par PlanificateurEnvoi: selon l'âge de la plus vieille lecture
+ *                pas envoyée, le nombre de lectures en attente et les durées des derniers envois. Ses paramètres sont relus quand serveur.properties change.
+ * @version 2.9 : Octets envoyés comptés par jour et par mois (BudgetDonnees, enregistrés dans budget.fichier), envoi réduit quand le budget s'épuise:
+ *                format compact, puis cumuls par appareil (CumulFenetre) à chaque budget.intervalle_reduit_ms, puis plus d'envoi du journal jusqu'à la prochaine période
+ * @version 3.0 : L'alimentation USB du modem passe par AlimentationModem (baux comptés, modem gardé allumé modem.garder_chaud_ms après le dernier),
+ *                au lieu des bind/unbind de Serveur.run(), LectureCavalier et EnvoieInformations qui pouvaient couper le modem des autres
+ * @version 3.1 : La session PPP est suivie par SessionPPP (coupée, attachement, connectée, dégradée): réutilisée par tous les envois pendant ppp.fenetre_ms,
+ *                déclarée perdue après ppp.echecs_max envois ratés de suite, reconnectée avec un délai qui double jusqu'à ppp.delai_max_ms
+ * @version 3.2 : File prioritaire des alarmes (FileAlarmes): une lecture hors des seuils de alarme.regles est envoyée dans les alarme.delai_ms qui suivent,
+ *                sans attendre l'envoi du journal ni être coupée par le budget. Attente des lectures mesurée pour les alarmes et pour le journal
+ * @version 3.3 : Après une longue panne, les lectures des envoi.recentes_ms dernières millisecondes sont envoyées avant le rattrapage des plus vieilles
+ *                (envoi.ordre=recent), le rattrapage s'arrête si le budget s'épuise et affiche les lectures et segments qui restent
+ * @version 3.4 : Étage Cumuls: nombre, min, max, moyenne et dernière valeur de chaque appareil par minute et par heure, calculés à chaque lecture.
+ *                Avec envoi.contenu=cumuls, seuls les cumuls sont envoyés, les segments du journal sont gardés dans journal.archive
+ * @version 3.5 : Budget d'espace disque du journal et de l'archive (RetentionJournal): quand il est dépassé, les plus vieux segments sont compactés
+ *                en arrière-plan (lectures -> moyennes par minute -> moyennes par heure) au lieu d'être perdus
+ * @version 3.6 : Niveaux de durabilité du journal: segment actif en mémoire (tmpfs) copié sur la carte SD quand il est scellé, fsync après chaque lecture,
+ *                segment actif scellé à l'arrêt du serveur (SIGTERM, SIGINT), octets écrits sur la carte SD et amplification d'écriture mesurés
+ * @version 3.7 : État des cumuls enregistré périodiquement (fichier "etat" du journal): au démarrage, seules les lectures reçues après sont relues,
+ *                temps de démarrage affiché
+ * @version 3.8 : Les lectures sont reçues dès le démarrage: l'heure est obtenue du modem en arrière-plan (AcquisitionHeure), les lectures reçues
+ *                avant sont estampillées avec une horloge monotone (HorlogePasserelle) et corrigées en bloc dans le journal quand elle est connue
  * Environnement de developpement: GitKraken / Notepad++
  * Compilateur: javac (Java version 1.8)
  * Matériel: Raspberry Pi Zero W, Module LTE Hologram (+ carte SIM)
@@ -18,40 +58,96 @@ import java.net.*;              //Pour la communication par socket
 import java.io.*;               //Pour les gpio
 import java.util.regex.*;       //Pour l'analyse des trames des clients
 import java.nio.file.*;         //Pour enregistrer les trames dans un fichier
+import java.nio.*;              //Pour les tampons de réception des connexions
+import java.nio.channels.*;     //Pour la boucle d'événements (Selector) du port 2228
+import java.util.*;
+import java.util.zip.CRC32;     //Pour vérifier les trames binaires des clients
+import java.lang.management.ManagementFactory;  //Pour le temps de démarrage
 
 public class Serveur implements Runnable
 {
-    private static final long TEMPS_1M = 60000;
 
     final static int NB_OCTETS = 1000;                              //Constante pour le nombre d'octets du tampon memoire du miniserveur
+    final static int CAPACITE_ANNEAU = 16384;                       //Nombre de lectures en transit (puissance de 2, 40 octets hors tas par lecture)
+    final static long TEMPS_REPRISE = 10;                           //Délai (ms) entre deux essais pour reprendre les connexions suspendues
+    final static int TAILLE_TAMPON_CLIENT = 1024;                   //Taille (octets) du tampon de réception de chaque connexion (une trame doit y entrer au complet)
     int m_nPort = 2228;                                             //Numéro du port utilise par le miniserveur (doit être entré comme argument lorsque les codes clients sont lancés)
-    ServerSocket m_ssServeur;                                       //Reference vers l'objet ServerSocket
+    ServerSocketChannel m_sscServeur;                               //Reference vers le canal d'écoute du miniserveur (non bloquant)
+    Selector m_Selecteur;                                           //Surveille le canal d'écoute et toutes les connexions des clients avec un seul thread
     Thread m_tService;                                              //Reference vers l'objet Thread
-
-    //"Pattern" en Regex qui sert à vérifier si la trame reçue correspond à ce qu'on attend
-    String Pattern_TrameClient = "^(\\w{2}),(\\d+\\.?(?:\\d+)?),(\\d+\\.?(?:\\d+)?),(\\d+\\.?(?:\\d+)?),(\\d+\\.?(?:\\d+)?)$";
-    String Pattern_Location = "^Location: \\{\"altitude\": \"(-?(?:\\d+)\\.?(?:\\d+)?)\", \"uncertainty\": \"(-?(?:\\d+)\\.?(?:\\d+)?)\", \"longitude\": \"(-?(?:\\d+)\\.?(?:\\d+)?)\", \"latitude\": \"(-?(?:\\d+)\\.?(?:\\d+)?)\", \"time\": \"(\\d+:\\d+:\\d+\\.\\d+)\", \"date\": \"(\\d+\\/\\d+\\/\\d+)\"\\}$";
-    String Pattern_Heure = "^(\\d+):(\\d+):(\\d+)\\.(\\d+)$";
-    String Pattern_Date = "^(\\d+)/(\\d+)/(\\d+)$";
+    ArrayDeque<SelectionKey> m_Suspendues = new ArrayDeque<SelectionKey>();    //Connexions dont la lecture attend de la place dans la file des lectures (utilisée par m_tService seulement)
+    StatistiquesConnexions m_objStatistiques = new StatistiquesConnexions();   //Mesures sur les connexions et les étages du pipeline
+
+    //Pipeline d'ingestion: m_tService reçoit et décode les trames dans m_Anneau, lu en parallèle par les étages Enregistrement et Liaison
+    HorlogePasserelle m_Horloge = new HorlogePasserelle();          //Heure de réception des lectures, provisoire jusqu'à ce que l'heure soit obtenue
+    AnneauLectures m_Anneau = new AnneauLectures(CAPACITE_ANNEAU);
+    EtageEnregistrement m_Enregistrement = new EtageEnregistrement(this, m_Anneau);
+    EtageLiaison m_Liaison = new EtageLiaison(this, m_Anneau);
+    EtageCumuls m_Cumuls = new EtageCumuls(m_Anneau, m_Enregistrement.m_Journal, m_Horloge);
+    RetentionJournal m_Retention = new RetentionJournal(m_Enregistrement.m_Journal);    //Espace disque du journal, segments compactés en arrière-plan
+    LiaisonHologram m_Hologram = new LiaisonHologram();             //Commandes Hologram, par le processus LiaisonHologram.py
+    AlimentationModem m_Modem = new AlimentationModem();            //Alimentation USB du modem, partagée par l'heure, le mode debug et les envois
+    SessionPPP m_Session = new SessionPPP(m_Hologram, m_Modem);     //Session PPP ("network connect") partagée par les envois
+    BudgetDonnees m_Montante = new BudgetDonnees(LiaisonMontante.Configuree(m_Hologram));    //Envoi des messages (Hologram ou HTTP), octets comptés
+    FileAlarmes m_Alarmes = new FileAlarmes(this);                  //Lectures hors des seuils, envoyées sans attendre le journal
+
+    //"Patterns" en Regex qui servent à analyser la réponse de "modem location", compilés une seule fois
+    //Les trames texte des clients sont analysées sans Regex (voir AnalyserTrameTexte)
+    static final Pattern Pattern_Location = Pattern.compile("^Location: \\{\"altitude\": \"(-?(?:\\d+)\\.?(?:\\d+)?)\", \"uncertainty\": \"(-?(?:\\d+)\\.?(?:\\d+)?)\", \"longitude\": \"(-?(?:\\d+)\\.?(?:\\d+)?)\", \"latitude\": \"(-?(?:\\d+)\\.?(?:\\d+)?)\", \"time\": \"(\\d+:\\d+:\\d+\\.\\d+)\", \"date\": \"(\\d+\\/\\d+\\/\\d+)\"\\}$");
+    static final Pattern Pattern_Heure = Pattern.compile("^(\\d+):(\\d+):(\\d+)\\.(\\d+)$");
+    static final Pattern Pattern_Date = Pattern.compile("^(\\d+)/(\\d+)/(\\d+)$");
 
     public static final String NAME_GPIO = "gpio21";                //Nom du GPIO pour le kernel Raspbian
 
     public EnvoieInformations m_objInformations;                    //Référence du thread qui sert à envoyer les informations
     public LectureCavalier m_objCavalier;                           //Référence du thread qui sert si le cavalier est en mode debug
+    public AcquisitionHeure m_objHeure;                             //Référence du thread qui obtient l'heure du modem
 
-    int ModeDebug = 2;                                              //Mode debug = 1, Mode normal = 0, on le mets à 2 au début pour forcer la lecture du cavalier au démarrage                            
-    public boolean TimeUpdated = false;                             //Pour savoir si le temps à été mis à jour
+    volatile int ModeDebug = 2;                                     //Mode debug = 1, Mode normal = 0, on le mets à 2 au début pour forcer la lecture du cavalier au démarrage                            
+    public volatile boolean TimeUpdated = false;                    //Pour savoir si le temps à été mis à jour
 
     public Serveur()
     {		
+        long DebutDemarrage = System.nanoTime();
+
         try
         {
-            m_ssServeur = new ServerSocket(m_nPort, NB_OCTETS);     //Création du miniserveur au port specifie (m_nPort = 2228)
-                                                                    //Le miniserveur a un tampon mémoire de 1000 octets (NB_OCTETS)
+            m_sscServeur = ServerSocketChannel.open();              //Création du miniserveur au port specifie (m_nPort = 2228)
+            m_sscServeur.socket().bind(new InetSocketAddress(m_nPort), NB_OCTETS);     //Le miniserveur a un tampon mémoire de 1000 octets (NB_OCTETS)
+            m_sscServeur.configureBlocking(false);                  //Non bloquant pour être surveillé par le Selector
+            m_Selecteur = Selector.open();
+            m_sscServeur.register(m_Selecteur, SelectionKey.OP_ACCEPT);
+
+            m_Anneau.m_Lecteurs = new Etage[] { m_Enregistrement, m_Liaison, m_Cumuls };
+            m_Enregistrement.m_Precedent = m_Liaison;               //Enregistre les lectures que la liaison n'a pas envoyées
+            m_objStatistiques.m_Anneau = m_Anneau;
+            m_objStatistiques.m_Hologram = m_Hologram;
+            m_objStatistiques.m_Montante = m_Montante.m_Liaison;
+            m_objStatistiques.m_Budget = m_Montante;
+            m_objStatistiques.m_Modem = m_Modem;
+            m_objStatistiques.m_Session = m_Session;
+            m_objStatistiques.m_Alarmes = m_Alarmes;
+            m_objStatistiques.m_Retention = m_Retention;
+            m_objStatistiques.m_Horloge = m_Horloge;
+            m_Enregistrement.Demarrer();                            //Démarre le thread de chaque étage
+            m_Liaison.Demarrer();
+            m_Cumuls.Demarrer();                                    //Recharge l'état des cumuls et relit les lectures reçues après
+            //SIGTERM, SIGINT: segment actif scellé, puis état enregistré. L'un après l'autre (l'état suit le journal): l'arrêt peut prendre
+            //jusqu'à enregistrement.arret_ms + etat.arret_ms (5 s par défaut), à garder sous le délai avant SIGKILL
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> { m_Enregistrement.Urgence(); m_Cumuls.Urgence(); }, "Arret"));
+
             m_tService = new Thread(this);                          //Creation et démarrage de la tâche d'écoute du miniserveur sur le port 2228
             m_tService.start();
+            m_objHeure = new AcquisitionHeure(this);                //L'heure est obtenue en arrière-plan, les lectures sont reçues dès maintenant
+
+            System.out.println("Serveur prêt en " + ((System.nanoTime() - DebutDemarrage) / 1000000) + " ms (" + (System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime())
+                             + " ms depuis le démarrage de Java): " + m_Cumuls.Rechargement());
 
             m_objInformations = new EnvoieInformations(this);       //Démarre le thread qui sert à envoyer les informations
+            m_objStatistiques.m_Planificateur = m_objInformations.m_Planificateur;
+            m_objStatistiques.m_AttenteJournal = m_objInformations.m_Attente;
+            m_objStatistiques.m_Informations = m_objInformations;
+            m_objStatistiques.Demarrer();                           //Résumé des mesures à chaque statistiques.periode_ms
             m_objCavalier = new LectureCavalier(this);              //Démarre le thread qui fait la lecture de la position du cavalier
 
             System.out.println("-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-");
@@ -80,220 +176,333 @@ public class Serveur implements Runnable
     //Tâche d'écoute sur le port 2228
     public void run()
     {   
-		String Informations = "";                                                           //Les données vont être reçues en string dans cette variable
-        String json = "";                                                                   //La trame un coup qu'elle sera prête à être envoyée
-        String Temps = "";                                                                  //Le temps reçu de "modem location" mais dans le bon format pour la commande "timedatectl"
-        String Date = "";                                                                   //La date reçue de "modem location" mais dans le bon format pour la commande "timedatectl"
-        String retour7 = "";                                                                //Pour le retour de la commande/process 7 (modem location)
-
         try
         {
-            //Ce bloc permet de d'activer l'alimentation sur les ports USB                  //<- DÉBUT DU BLOC
-            String s8 = "echo '1-1' |sudo tee /sys/bus/usb/drivers/usb/bind";    			//Commande bash a etre executee
-            String[] sCmd8 = {"/bin/bash", "-c", s8};             			                //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+            System.out.println("-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-");
+            System.out.println("Attente des connexions au serveur...");
+
+            while(m_tService != null)                                           //Boucle principale du thread d'écoute du socket TCP/IP
+            {
+                m_Selecteur.select(m_Suspendues.isEmpty() ? 0 : TEMPS_REPRISE);    //Attend qu'une connexion arrive ou qu'un client envoie des données -> BLOQUANT! <-
+
+                if (m_Horloge.AAppliquer())                                     //L'heure réelle vient d'être obtenue (réveil par AcquisitionHeure)
+                {
+                    m_Horloge.Appliquer(m_Anneau.Ecrites());
+                }
+
+                Iterator<SelectionKey> itCles = m_Selecteur.selectedKeys().iterator();
+
+                while (itCles.hasNext())
+                {
+                    SelectionKey Cle = itCles.next();
+                    itCles.remove();
+
+                    if (Cle.isValid() == false)
+                    {
+                        continue;
+                    }
+
+                    if (Cle.isAcceptable())                                     //Nouvelle connexion d'un client
+                    {
+                        AccepterConnexion();
+                    }
+
+                    else if (Cle.isReadable())                                  //Un client à envoyé des données
+                    {
+                        LireConnexion(Cle);
+                    }
+                }
+
+                ReprendreConnexions();                                          //Les connexions suspendues reprennent si la file des lectures s'est vidée
+            }
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());                               //Probleme de communication reseau
+        }
+        catch (Exception e)
+        {
+            System.out.println(e.toString());                               //Affiche l'erreur survenue en Java
+        }
+    }
+
+    //Accepte une nouvelle connexion et l'enregistre auprès du Selector, la connexion reste ouverte pour plusieurs trames
+    void AccepterConnexion() throws IOException
+    {
+        SocketChannel scClient = m_sscServeur.accept();
+
+        if (scClient == null)
+        {
+            return;
+        }
+
+        scClient.configureBlocking(false);
+        scClient.register(m_Selecteur, SelectionKey.OP_READ, new ConnexionClient(scClient));
 
-            System.out.println(sCmd8[0] + " " + sCmd8[1] + " " + sCmd8[2]);                 //Affiche la commande a executer dans la console Java
-            Process p8 = Runtime.getRuntime().exec(sCmd8);        			                //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+        m_objStatistiques.ConnexionAcceptee();
+        System.out.println("Connexion au client établie! (" + scClient.getRemoteAddress() + ")");
+    }
 
-            p8.waitFor();                                                                   //Attend que la commande soit éxécutée soit terminée
+    //Étage Réception: lit ce qui est disponible sur une connexion, puis décode chaque trame complète dans la file des lectures
+    //Si la file est pleine, la connexion est suspendue: le Selector ne la lit plus, son tampon TCP se remplit et le client attend
+    void LireConnexion(SelectionKey Cle)
+    {
+        ConnexionClient Client = (ConnexionClient)Cle.attachment();
+        long Debut = System.nanoTime();
 
-            if (p8.getErrorStream().available() > 0)        					            //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
+        try
+        {
+            int NbLus = Client.m_scClient.read(Client.m_Tampon);
+
+            if (NbLus > 0)
             {
-                //Affiche l'erreur survenue
-                BufferedReader brCommand8 = new BufferedReader(new InputStreamReader(p8.getErrorStream()));
-                System.out.println(brCommand8.readLine());
-                brCommand8.close();
-            }                                                                               //<-FIN DU BLOC
+                Client.m_Octets += NbLus;
 
-            System.out.println("Début de l'acquisition de la date et de l'heure par 2G/3G...");
+                if (Transmettre(Client) == false)
+                {
+                    Cle.interestOps(0);                                         //Plus de lecture tant que les trames du tampon ne sont pas décodées
+                    m_Suspendues.add(Cle);
+                    m_objStatistiques.ConnexionSuspendue();
+                }
+            }
 
-            while (retour7.contains("altitude") == false)                                   //Regarde si la commande à réussie (ne contient pas "altitude si elle échoue")
+            else if (NbLus < 0)                                                 //Le client à fermé la connexion
             {
-                //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
-                Thread.sleep(TEMPS_1M);                                                    //Réessaie la commande chaque 30 secondes
-                //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+                FermerConnexion(Cle, Client);
+            }
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());                                   //Probleme de communication reseau ou trame invalide
+            FermerConnexion(Cle, Client);
+        }
 
-                String s7 = "sudo hologram modem location";    			                    //Commande bash a etre executee
-                String[] sCmd7 = {"/bin/bash", "-c", s7};             			            //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+        m_objStatistiques.LectureTerminee(System.nanoTime() - Debut);
+    }
+
+    //Décode dans la file des lectures les trames complètes du tampon de la connexion (en mode écriture, comme après read())
+    //Retourne false si la file est pleine: les trames qui restent sont gardées dans le tampon
+    boolean Transmettre(ConnexionClient Client) throws IOException
+    {
+        boolean Complet = true;
+
+        Client.m_Tampon.flip();
 
-                System.out.println(sCmd7[0] + " " + sCmd7[1] + " " + sCmd7[2]);             //Affiche la commande a executer dans la console Java
-                Process p7 = Runtime.getRuntime().exec(sCmd7);        			            //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+        try
+        {
+            int Resultat;
+
+            while (true)
+            {
+                if (m_Anneau.EstPlein())
+                {
+                    Complet = false;
+                    break;
+                }
 
-                p7.waitFor();                                                               //Attend que la commande soit éxécutée soit terminée
+                if ((Resultat = Client.ProchaineTrame(Client.m_Lecture)) == Trame.TRAME_INCOMPLETE)
+                {
+                    break;
+                }
 
-                BufferedReader reader1 = new BufferedReader(new InputStreamReader(p7.getInputStream()));        //Objet pour la lecture du retour
-                
-                retour7 = reader1.readLine();                                               //Lis ce que la commande retourne dans le terminal
-                
-                if (retour7 == null)
+                if (Resultat == Trame.TRAME_VALIDE)
                 {
-                    retour7 = "";
+                    Client.m_Trames++;
+                    Client.m_Lecture.m_HeureReception = m_Horloge.Maintenant();
+                    Client.m_Lecture.m_Mode = ModeDebug;
+                    m_Anneau.Ecrire(Client.m_Lecture);
+                    m_objStatistiques.TrameRecue();
                 }
 
                 else
                 {
-                    System.out.println("Ligne trouvée: " + retour7);
+                    Client.m_Invalides++;
                 }
             }
+        }
 
-            System.out.println("Acquisition de la date et de l'heure réussie");
+        finally
+        {
+            Client.m_Tampon.compact();                                          //Garde le début d'une trame incomplète pour la prochaine lecture
+        }
 
-            //Ce bloc permet de de désactiver l'alimentation sur les ports USB              //<- DÉBUT DU BLOC
-            String s9 = "echo '1-1' |sudo tee /sys/bus/usb/drivers/usb/unbind";    			//Commande bash a etre executee
-            String[] sCmd9 = {"/bin/bash", "-c", s9};             			                //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+        if (Complet && Client.m_Tampon.hasRemaining() == false)
+        {
+            throw new IOException("Trame trop longue pour le tampon de réception");
+        }
 
-            System.out.println(sCmd9[0] + " " + sCmd9[1] + " " + sCmd9[2]);                 //Affiche la commande a executer dans la console Java
-            Process p9 = Runtime.getRuntime().exec(sCmd9);        			                //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+        return Complet;
+    }
 
-            p9.waitFor();                                                                   //Attend que la commande soit éxécutée soit terminée
+    //Reprend, dans l'ordre où elles ont été suspendues, les connexions dont les trames entrent maintenant dans la file des lectures
+    void ReprendreConnexions()
+    {
+        while (m_Suspendues.isEmpty() == false)
+        {
+            SelectionKey Cle = m_Suspendues.peek();
+            ConnexionClient Client = (ConnexionClient)Cle.attachment();
 
-            if (p9.getErrorStream().available() > 0)        					            //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
+            if (Cle.isValid())
             {
-                //Affiche l'erreur survenue
-                BufferedReader brCommand9 = new BufferedReader(new InputStreamReader(p9.getErrorStream()));
-                System.out.println(brCommand9.readLine());
-                brCommand9.close();
-            }                                                                               //<- FIN DU BLOC	
-
-            Pattern r2 = Pattern.compile(Pattern_Location);          //Compile le "pattern" en Regex déclaré plus tôt (pour voir s'il y a des erreurs)
-            Matcher m2 = r2.matcher(retour7);                        //Crée un objet de type matcher, qui va permettre de comparer la trame que l'on reçoit avec le pattern défini
-            
-            if (m2.find( ))                                          //Regarde si la trame reçue correspond au "pattern"       
-            {
-                //Affiche les valeurs trouvés dans les groupes du pattern regex. Chaque groupe correspond à la valeur reçue de la commande location
-                System.out.println("Altitude: "      + m2.group(1));
-                System.out.println("Incertitude: "   + m2.group(2));
-                System.out.println("Longitude: "     + m2.group(3));
-                System.out.println("Latitude: "      + m2.group(4));
-                System.out.println("Temps: "         + m2.group(5));
-                System.out.println("Date: "          + m2.group(6));
-
-                String ATemps = m2.group(5);        //Mets seulement le temps dans la variable, qui n'est pas encore dans le bon format pour la commande "timedatectl"
-                String ADate = m2.group(6);         //Mets seulement la date dans la variable, qui n'est pas encore dans le bon format pour la commande "timedatectl"
-
-                Pattern r3 = Pattern.compile(Pattern_Heure);        //Compile le "pattern" en Regex déclaré plus tôt (pour voir s'il y a des erreurs)
-                Matcher m3 = r3.matcher(ATemps);                    //Crée un objet de type matcher, qui va permettre de comparer l'heure acquise avec le pattern défini
-
-                if (m3.find( ))                                     //Regarde si la l'heure reçue correspond au "pattern"     
+                try
                 {
-                    Temps = m3.group(1) + ":" + m3.group(2) + ":" + m3.group(3);        //Mets l'heure dans le bon format pour la commande "timedatectl"
-                }
+                    if (Transmettre(Client) == false)
+                    {
+                        return;                                                 //La file des lectures est encore pleine
+                    }
 
-                Pattern r4 = Pattern.compile(Pattern_Date);         //Compile le "pattern" en Regex déclaré plus tôt (pour voir s'il y a des erreurs)
-                Matcher m4 = r4.matcher(ADate);                     //Crée un objet de type matcher, qui va permettre de comparer la date acquise avec le pattern défini
+                    Cle.interestOps(SelectionKey.OP_READ);
+                }
 
-                if (m4.find( ))                                     //Regarde si la la date reçue correspond au "pattern"
+                catch (IOException e)
                 {
-                    Date = m4.group(3) + "-" + m4.group(2) + "-" + m4.group(1);         //Mets la date dans le bon format pour la commande "timedatectl"
+                    System.out.println(e.toString());
+                    FermerConnexion(Cle, Client);
                 }
+            }
 
-                //Ce bloc permet de de mettre à jour l'heure du Pi                                  //<- DÉBUT DU BLOC
-                String s10 = "sudo timedatectl set-time \"" + Date + " " + Temps + "\"";    	    //Commande bash a etre executee
-                String[] sCmd10 = {"/bin/bash", "-c", s10};             			                //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+            m_Suspendues.poll();
+        }
+    }
 
-                System.out.println(sCmd10[0] + " " + sCmd10[1] + " " + sCmd10[2]);                  //Affiche la commande a executer dans la console Java
-                Process p10 = Runtime.getRuntime().exec(sCmd10);        			                //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+    void FermerConnexion(SelectionKey Cle, ConnexionClient Client)
+    {
+        Cle.cancel();
 
-                p10.waitFor();                                                                      //Attend que la commande soit éxécutée soit terminée
-                                    
-                if (p10.getErrorStream().available() > 0)        					                //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
-                {
-                    //Affiche l'erreur survenue
-                    BufferedReader brCommand10 = new BufferedReader(new InputStreamReader(p10.getErrorStream()));
-                    System.out.println(brCommand10.readLine());
-                    brCommand10.close();
-                }
+        try
+        {
+            Client.m_scClient.close();
+        }
+
+        catch (IOException e)
+        {
+            System.out.println(e.toString());
+        }
 
-                TimeUpdated = true;                                                                 //<- FIN DU BLOC
-            }                                                                       	
+        m_objStatistiques.ConnexionFermee(Client);
+    }
 
-            while(m_tService != null)                                           //Boucle principale du thread d'écoute du socket TCP/IP
+    //Analyse une trame texte de l'ancien format ("ID,T,P,H,R", envoyée avec ObjectOutputStream) directement dans le tampon de réception,
+    //de Debut jusqu'à Fin (exclus), et place les valeurs dans Destination. Accepte exactement ce que le "pattern" d'origine acceptait:
+    //^(\w{2}),(\d+\.?(?:\d+)?),(\d+\.?(?:\d+)?),(\d+\.?(?:\d+)?),(\d+\.?(?:\d+)?)$
+    //Une seule passe, aucune allocation et aucune exception: retourne false si la trame est invalide (Destination est alors indéfinie)
+    static boolean AnalyserTrameTexte(ByteBuffer Tampon, int Debut, int Fin, Lecture Destination)
+    {
+        //Comme "$" dans le "pattern" d'origine, accepte une fin de ligne à la fin de la trame
+        if (Fin > Debut && Tampon.get(Fin - 1) == '\n')
+        {
+            Fin--;
+        }
+        if (Fin > Debut && Tampon.get(Fin - 1) == '\r')
+        {
+            Fin--;
+        }
+
+        if (Fin - Debut < 3 || EstCaractereMot(Tampon.get(Debut)) == false || EstCaractereMot(Tampon.get(Debut + 1)) == false || Tampon.get(Debut + 2) != ',')
+        {
+            return false;
+        }
+
+        Destination.m_ID1 = (char)Tampon.get(Debut);
+        Destination.m_ID2 = (char)Tampon.get(Debut + 1);
+        Destination.m_Type = Trame.TYPE_MESURE;
+        Destination.m_HeureClient = 0;
+
+        int Position = Debut + 3;
+
+        for (int Champ = 0; Champ < 4; Champ++)
+        {
+            long Entier = 0;                                                //Partie entière
+            long Fraction = 0;                                              //Partie décimale, en dix-millièmes
+            long Diviseur = Trame.ECHELLE;
+            boolean Arrondi = false;                                        //Le premier chiffre après les dix-millièmes est 5 ou plus
+            int NbChiffres = 0;
+
+            while (Position < Fin && Tampon.get(Position) >= '0' && Tampon.get(Position) <= '9')
             {
-				Informations = "Erreur de lecture du client";                   //Permet de savoir si il y a eu une erreur de lecture du message (la variable va rester inchangée)
-                System.out.println("-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-");
-                System.out.println("Attente d'une connexion au serveur...");    //Le miniserveur attend une connexion réseau... -> BLOQUANT! <-
-                Socket sConnexion = m_ssServeur.accept();
-
-                System.out.println("Connexion au client établie!");             //Ce message est affiché si une connexion avec un client est établie
-                
-                InputStream isIn = sConnexion.getInputStream();                 //Objet pour la reception des données
-                ObjectInputStream oisIn = new ObjectInputStream(isIn);          //Reçoit les données envoyés par le client
-                Informations = (String)oisIn.readObject();               		//Lit le contenu des données reçues et les mets dans Informations
-               
-                oisIn.close();                                                  //Fermeture des objets de flux de données
-                isIn.close();
-
-                System.out.println(Informations + " -> à été reçu d'un client");
-            
-                Pattern r1 = Pattern.compile(Pattern_TrameClient);              //Compile le "pattern" en Regex déclaré plus tôt
-                Matcher m1 = r1.matcher(Informations);                          //Crée un objet de type matcher, qui va permettre de comparer la trame que l'on reçoit avec le pattern
-
-                if (m1.find( ))                                                 //Regarde si la trame reçue correspond au "pattern"       
+                if (Entier < Integer.MAX_VALUE)                             //Borné comme Trame.PointFixe, sans débordement
                 {
-                    //Affiche les valeurs trouvés dans les groupes du pattern regex. Chaque groupe correspond à la valeur d'un capteur (ID, T, P, H, R)
-                    System.out.println("ID: "          + m1.group(1));
-                    System.out.println("Température: " + m1.group(2));
-                    System.out.println("Pression: "    + m1.group(3));
-                    System.out.println("Humidité: "    + m1.group(4));
-                    System.out.println("RPM: "         + m1.group(5));
+                    Entier = Entier * 10 + (Tampon.get(Position) - '0');
+                }
+                Position++;
+                NbChiffres++;
+            }
 
-                    //Ajoute la date comme sixième argument de la trame json
-                    json = "{ \\\"ID\\\":\\\"" + m1.group(1) + "\\\", \\\"T\\\":\\\"" + m1.group(2) + "\\\", \\\"P\\\":\\\"" + m1.group(3) + "\\\", \\\"H\\\":\\\"" + m1.group(4) + "\\\", \\\"R\\\":\\\"" + m1.group(5) + "\\\", \\\"D\\\":\\\"" + java.time.LocalDateTime.now() + "\\\" }";
-                    System.out.println("Trame json crée: " + json);
+            if (NbChiffres == 0)
+            {
+                return false;
+            }
 
-                    json = "\"" + json + "\"";      //Pour échapper les crochets au début et à la fin de la trame
-                    json += "\r";
+            if (Position < Fin && Tampon.get(Position) == '.')
+            {
+                Position++;
 
-                    if (ModeDebug == 0)             //Accumule les données dans un fichier .txt
+                while (Position < Fin && Tampon.get(Position) >= '0' && Tampon.get(Position) <= '9')
+                {
+                    if (Diviseur > 1)
                     {
-                        //Spécifie dans quel fichier enregistrer la trame, CREATE pour créer le fichier s'il n'existe pas déja, APPEND pour ajouter l'information dans le fichier au lieu de l'écraser
-                        Files.write(Paths.get("/home/pi/ProjetNepal/Data.txt"), json.toString().getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-                        System.out.println("Mode debug désactivé, " + json + " à été sauvegardé dans le fichier Data.txt");
+                        Diviseur /= 10;
+                        Fraction += (Tampon.get(Position) - '0') * Diviseur;
                     }
 
-                    else if (ModeDebug == 1)        //Envoie tout de suite les données par LTE
+                    else if (Diviseur == 1)
                     {
-                        System.out.println("Mode debug activé, " + json + " -> sera envoyé directement à Hologram");
-
-                        String s2 = "sudo hologram send " + json;    			                    //Commande bash a etre executee
-                        String[] sCmd2 = {"/bin/bash", "-c", s2};             			            //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
-
-                        System.out.println(sCmd2[0] + " " + sCmd2[1] + " " + sCmd2[2]);             //Affiche la commande a executer dans la console Java
-                        Process p2 = Runtime.getRuntime().exec(sCmd2);        			            //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+                        Arrondi = Tampon.get(Position) >= '5';
+                        Diviseur = 0;                                       //Les chiffres suivants sont ignorés
+                    }
+                    Position++;
+                }
+            }
 
-                        p2.waitFor();                                                               //Attend que la commande soit éxécutée soit terminée
+            long Fixe = Math.min(Entier * Trame.ECHELLE + Fraction + (Arrondi ? 1 : 0), Integer.MAX_VALUE);
 
-                        if (p2.getErrorStream().available() > 0)        					        //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
-                        {
-                            //Affiche l'erreur survenue
-                            BufferedReader brCommand2 = new BufferedReader(new InputStreamReader(p2.getErrorStream()));
-                            System.out.println(brCommand2.readLine());
-                            brCommand2.close();
-                        }
+            switch (Champ)
+            {
+                case 0: Destination.m_T = Fixe; break;
+                case 1: Destination.m_P = Fixe; break;
+                case 2: Destination.m_H = Fixe; break;
+                default: Destination.m_R = Fixe; break;
+            }
 
-                        System.out.println("Mode debug activé, " + json + " à été envoyé directement à Hologram");
-                    }
-                }
-                
-                else
+            if (Champ < 3)
+            {
+                if (Position >= Fin || Tampon.get(Position) != ',')
                 {
-                    System.out.println("Trame inconnue reçue: " + Informations);
+                    return false;
                 }
+                Position++;
             }
         }
 
-        catch (IOException e)
-        {
-            System.out.println(e.toString());                               //Probleme de communication reseau
-        }
-        catch (ClassNotFoundException e)
-        {
-            System.out.println(e.toString());                               //Objet indefinie pour la serialisation...
-        }
-        catch (Exception e)
+        return Position == Fin;
+    }
+
+    //Équivalent de \w dans un "pattern" Java: [a-zA-Z_0-9]
+    static boolean EstCaractereMot(byte Caractere)
+    {
+        return (Caractere >= 'a' && Caractere <= 'z') || (Caractere >= 'A' && Caractere <= 'Z') || (Caractere >= '0' && Caractere <= '9') || Caractere == '_';
+    }
+
+    //Étage Liaison: envoie tout de suite la trame json par LTE (mode debug)
+    //Retourne false si l'envoi a échoué, la lecture est alors gardée dans le journal par l'étage Enregistrement
+    public boolean EnvoyerDirectement(String json) throws IOException, InterruptedException
+    {
+        System.out.println("Mode debug activé, " + json + " -> sera envoyé directement à Hologram");
+
+        boolean Envoye = m_Montante.Envoyer(json);
+
+        m_Session.Resultat(Envoye);
+
+        if (Envoye == false)
         {
-            System.out.println(e.toString());                               //Affiche l'erreur survenue en Java
+            System.out.println("Mode debug activé, échec de l'envoi de " + json + ", la lecture sera gardée dans le journal");
+            return false;
         }
+
+        System.out.println("Mode debug activé, " + json + " à été envoyé directement à Hologram");
+        return true;
     }
     
     public static void main(String[] args)
@@ -486,6 +695,7 @@ class LectureCavalier implements Runnable
 
     Thread m_Thread;
     private Serveur m_Parent;
+    private BailModem m_Modem = null;                                   //Modem gardé allumé pendant le mode debug
 
     public LectureCavalier(Serveur Parent)
     {
@@ -507,11 +717,6 @@ class LectureCavalier implements Runnable
     {
         try
         {
-            while (m_Parent.TimeUpdated == false)
-            {
-                Thread.sleep(100);
-            }
-
             //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
             Thread.sleep(TEMPS_5S);                 //Le temps que la classe principale crée le socket TCP/IP et écoute sur le port
             //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
@@ -528,39 +733,10 @@ class LectureCavalier implements Runnable
                         m_Parent.ModeDebug = 1;                             //Active le mode debug
                         System.out.println("Mode debug: on");
 
-                        //Ce bloc permet de d'activer l'alimentation sur les ports USB                  //<- DÉBUT DU BLOC
-                        String s1 = "echo '1-1' |sudo tee /sys/bus/usb/drivers/usb/bind";    			//Commande bash a etre executee
-                        String[] sCmd1 = {"/bin/bash", "-c", s1};             			                //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+                        m_Modem = m_Parent.m_Modem.Acquerir("debug");                                    //Alimente les ports USB
 
-                        System.out.println(sCmd1[0] + " " + sCmd1[1] + " " + sCmd1[2]);                 //Affiche la commande a executer dans la console Java
-                        Process p1 = Runtime.getRuntime().exec(sCmd1);        			                //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
-
-                        if (p1.getErrorStream().available() > 0)        					            //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
-                        {
-                            //Affiche l'erreur survenue
-                            BufferedReader brCommand1 = new BufferedReader(new InputStreamReader(p1.getErrorStream()));
-                            System.out.println(brCommand1.readLine());
-                            brCommand1.close();
-                        }                                                                               //<-FIN DU BLOC
-                                                                                                        
-                        //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
-                        Thread.sleep(TEMPS_1M30);               //Délai de 90 secondes pour laisser le temps au modem d'avoir un signal LTE
-                        //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
-                        
                         //Bloc qui sert à faire un test de connection avant d'envoyer des données     	//<- DÉBUT DU BLOC
-                        String s4 = "sudo hologram network connect";    			    	            //Commande bash a etre executee
-                        String[] sCmd4 = {"/bin/bash", "-c", s4};             			                //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
-
-                        System.out.println(sCmd4[0] + " " + sCmd4[1] + " " + sCmd4[2]);                 //Affiche la commande a executer dans la console Java
-                        Process p4 = Runtime.getRuntime().exec(sCmd4);        			                //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
-
-                        if (p4.getErrorStream().available() > 0)        					            //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
-                        {
-                            //Affiche l'erreur survenue
-                            BufferedReader brCommand4 = new BufferedReader(new InputStreamReader(p4.getErrorStream()));
-                            System.out.println(brCommand4.readLine());
-                            brCommand4.close();
-                        }                                                                               //<- FIN DU BLOC
+                        System.out.println("Connexion au réseau: " + (m_Parent.m_Session.Ouvrir("debug", 3) ? "session PPP ouverte" : "échec"));   //<- FIN DU BLOC
                     }                                                                       
                 }
 
@@ -571,20 +747,11 @@ class LectureCavalier implements Runnable
                         m_Parent.ModeDebug = 0;                             //Désactive le mode debug
                         System.out.println("Mode debug: off");
 
-                        //Ce bloc permet de de désactiver l'alimentation sur les ports USB                  //<- DÉBUT DU BLOC
-                        String s3 = "echo '1-1' |sudo tee /sys/bus/usb/drivers/usb/unbind";    			    //Commande bash a etre executee
-                        String[] sCmd3 = {"/bin/bash", "-c", s3};             			                    //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
-
-                        System.out.println(sCmd3[0] + " " + sCmd3[1] + " " + sCmd3[2]);                     //Affiche la commande a executer dans la console Java
-                        Process p3 = Runtime.getRuntime().exec(sCmd3);        			                    //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
-
-                        if (p3.getErrorStream().available() > 0)        					                //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
+                        if (m_Modem != null)
                         {
-                            //Affiche l'erreur survenue
-                            BufferedReader brCommand3 = new BufferedReader(new InputStreamReader(p3.getErrorStream()));
-                            System.out.println(brCommand3.readLine());
-                            brCommand3.close();
-                        }                                                                                   //<- FIN DU BLOC
+                            m_Modem.Liberer();                                                              //Le modem est coupé après modem.garder_chaud_ms s'il ne sert plus
+                            m_Modem = null;
+                        }
                     }
                 }
 
@@ -627,6 +794,45 @@ class EnvoieInformations implements Runnable
     String Donnee = "";
     boolean AfficheMessage = true;
 
+    private Lecture m_Lecture = new Lecture();                          //Lecture du journal en cours d'envoi
+    private LotEnvoi m_LotConfigure = new LotEnvoi((int)Configuration.Entier("envoi.taille_max", 4000));
+    private LotEnvoi m_LotCompact = new LotEnvoi((int)Configuration.Entier("envoi.taille_max", 4000), "compact");    //Quand le budget de données s'épuise
+    private LotEnvoi m_Lot;
+    private long m_IntervalleReduit = Configuration.Entier("budget.intervalle_reduit_ms", 900000);
+    private TimeZone m_Fuseau = TimeZone.getDefault();                  //Fenêtres de l'envoi réduit alignées sur l'heure locale
+    private CumulFenetre[] m_Reduits = new CumulFenetre[16];            //Cumul de chaque appareil dans la fenêtre en cours, quand l'envoi est réduit
+    private int m_NbReduits = 0;
+    private long m_DebutReduit = Long.MIN_VALUE;                        //Début (ms) de la fenêtre en cours
+    private long m_SegmentReduit = 0;                                   //Première lecture de la fenêtre en cours (segment, position), la clé de ses messages
+    private int m_PositionReduit = 0;
+    private boolean m_ReduitsRecents = false;                           //Cumuls de EnvoyerRecentes, qui ne font pas avancer le curseur
+    private StringBuilder m_Cumuls = new StringBuilder();
+    private int m_TailleMax = (int)Configuration.Entier("envoi.taille_max", 4000);
+    private long m_Reduites = 0;                                        //Lectures envoyées dans des cumuls
+    private String m_Passerelle = Configuration.Texte("envoi.passerelle", "PN");    //Début de la clé de chaque lot: <passerelle>-<segment>-<position>
+    private FenetreEnvoi m_Fenetre;
+    private boolean m_RecentesDabord = Ordre(Configuration.Texte("envoi.ordre", "recent"));     //Lectures récentes envoyées avant le rattrapage des plus vieilles
+    private long m_Recentes = Configuration.Entier("envoi.recentes_ms", 3600000);
+    private long m_SegmentRecentes = Long.MAX_VALUE;                   //Première lecture envoyée par EnvoyerRecentes (segment, position), le rattrapage s'arrête là
+    private boolean m_EnvoiCumuls = Contenu(Configuration.Texte("envoi.contenu", "lectures"));   //Cumuls de l'étage Cumuls envoyés au lieu des lectures
+    private int m_PositionRecentes = 0;
+    private long m_SegmentFinRecentes = 0;                              //Après la dernière lecture envoyée par EnvoyerRecentes (segment, position)
+    private int m_PositionFinRecentes = 0;
+    private Path m_FichierRecentes = Paths.get(Configuration.Texte("journal.dossier", "/home/pi/ProjetNepal/Journal")).resolve("recentes");   //Les deux positions, gardées après un redémarrage
+
+    volatile long m_Restantes = 0;                                      //Progression du rattrapage: lectures et segments du journal pas encore parcourus
+    volatile int m_SegmentsRestants = 0;
+    volatile long m_RecentesEnvoyees = 0;
+
+    private long m_Messages = 0;                                        //Mesures de l'envoi en cours (remises à 0 à chaque bloc de données)
+    private long m_LecturesEnvoyees = 0;
+    private long m_OctetsEnvoyes = 0;
+    private long m_LotMax = 0;
+    private long m_DureeEnvois = 0;                                     //Temps total (ms) de l'envoi du journal, reprises comprises
+
+    PlanificateurEnvoi m_Planificateur = new PlanificateurEnvoi();      //Décide quand envoyer le journal
+    MesureAttente m_Attente = new MesureAttente("journal");            //De la réception de chaque lecture à son envoi
+
     public EnvoieInformations(Serveur Parent)
     {
         try
@@ -645,179 +851,261 @@ class EnvoieInformations implements Runnable
 
     public void run()
     {
-        File file = new File("/home/pi/ProjetNepal/Data.txt");      //Fichier dans lequel les trames seront enregistrées
-        String retour4 = "";        //Pour le retour de la commande/process 4 (Connection au réseau 2G/3G)
-        String retour2 = "";        //Pour le retour de la commande/process 2 (Envoi d'une donnée)
+        File file = new File("/home/pi/ProjetNepal/Data.txt");      //Ancien fichier des trames (avant le journal), envoyé s'il en reste
+        JournalSegmente Journal = m_Parent.m_Enregistrement.m_Journal;     //Journal dans lequel les lectures sont enregistrées
 
         try
         {
-            while (m_Parent.TimeUpdated == false)
-            {
-                Thread.sleep(100);
-            }
+            m_Fenetre = new FenetreEnvoi(m_Parent.m_Montante, Journal.m_Curseur, (int)Configuration.Entier("envoi.fenetre", 4));
+            m_Fenetre.m_Session = m_Parent.m_Session;
 
-            //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
-            Thread.sleep(TEMPS_5M);                                                                //<- Avant d'envoyer le premier bloc de données
-            //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+            m_Parent.m_Horloge.Attendre();                                                          //Les lectures reçues avant l'heure réelle sont corrigées dans le journal
+
+            m_Planificateur.Demarrer(System.currentTimeMillis());                                 //Premier envoi au plus tôt envoi.intervalle_min_ms après le démarrage
 
             while (true)
             {
-                if (m_Parent.ModeDebug == 0 && file.length() != 0)                                  //Les données accumulées sont seulement envoyées si on est pas en mode debug
+                String Raison = null;
+
+                if (m_Parent.ModeDebug == 0)                                                        //Les données accumulées sont seulement envoyées si on est pas en mode debug
                 {
-                    AfficheMessage = true;
+                    Raison = m_EnvoiCumuls ? m_Planificateur.Evaluer(m_Parent.m_Cumuls, file.length() != 0) : m_Planificateur.Evaluer(Journal, file.length() != 0);
+                }
 
-                    System.out.println("Début de l'envoi du bloc de données");
+                int Niveau = m_Parent.m_Montante.Niveau();
 
-                    //Ce bloc permet de d'activer l'alimentation sur les ports USB                  //<- DÉBUT DU BLOC
-                    String s1 = "echo '1-1' |sudo tee /sys/bus/usb/drivers/usb/bind";    			//Commande bash a etre executee
-                    String[] sCmd1 = {"/bin/bash", "-c", s1};             			                //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+                if (Raison != null && Niveau >= BudgetDonnees.ALARMES)
+                {
+                    System.out.println("Envoi du journal suspendu (" + Raison + "): " + m_Parent.m_Montante.Resume());
+                    Raison = null;
+                }
 
-                    System.out.println(sCmd1[0] + " " + sCmd1[1] + " " + sCmd1[2]);                 //Affiche la commande a executer dans la console Java
-                    Process p1 = Runtime.getRuntime().exec(sCmd1);        			                //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+                if (Raison != null)
+                {
+                    AfficheMessage = true;
+                    m_Lot = Niveau >= BudgetDonnees.COMPRESSION ? m_LotCompact : m_LotConfigure;
+                    m_Reduites = 0;
 
-                    p1.waitFor();                                                                   //Attend que la commande soit éxécutée soit terminée            
+                    long DebutBloc = System.currentTimeMillis();
 
-                    if (p1.getErrorStream().available() > 0)        					            //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
-                    {
-                        //Affiche l'erreur survenue
-                        BufferedReader brCommand1 = new BufferedReader(new InputStreamReader(p1.getErrorStream()));
-                        System.out.println(brCommand1.readLine());
-                        brCommand1.close();
-                    }                                                                               //<-FIN DU BLOC
+                    System.out.println("Début de l'envoi du bloc de données (" + Raison + ")");
+
+                    BailModem Modem = m_Parent.m_Modem.Acquerir("envoi");                           //Alimente les ports USB
                                                                                                     
                     //Bloc qui sert à faire un test de connection avant d'envoyer des données     	    //<- DÉBUT DU BLOC
-                    while (retour4.contains("PPP session started") == false)
+                    if (m_Parent.m_Session.Ouvrir("envoi") == false)                                //Session encore ouverte réutilisée, sinon au plus ppp.essais_max essais
                     {
-                        //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
-                        Thread.sleep(TEMPS_30S);        //Réessaie à chaque 30 secondes
-                        //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+                        System.out.println("Connexion au réseau 2G/3G ratée, envoi remis au prochain réveil du planificateur");
+                        Modem.Liberer();
+                        Thread.sleep(TEMPS_5S);
+                        continue;
+                    }                                                                               //<- FIN DU BLOC
 
-                        String s4 = "sudo hologram network connect";    			    	            //Commande bash a etre executee
-                        String[] sCmd4 = {"/bin/bash", "-c", s4};             			                //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+                    long DureeConnexion = System.currentTimeMillis() - DebutBloc;                   //Alimentation du modem et connexion PPP
 
-                        System.out.println(sCmd4[0] + " " + sCmd4[1] + " " + sCmd4[2]);                 //Affiche la commande a executer dans la console Java
-                        Process p4 = Runtime.getRuntime().exec(sCmd4);        			                //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+                    System.out.println("Connection au réseau 2G/3G réussie, début de l'envoi du bloc de données");
 
-                        p4.waitFor();                                                                   //Attend que la commande soit éxécutée soit terminée                                                                   
+                    //Ce bloc éxécute la commande qui envoie les informations à Hologram            //<- DÉBUT DU BLOC
 
-                        BufferedReader reader2 = new BufferedReader(new InputStreamReader(p4.getInputStream()));        //Objet pour la lecture du retour
-                    
-                        retour4 = reader2.readLine();                                                   //Lis ce que la commande retourne dans le terminal
-                        
-                        if (retour4 == null)
+                    if (m_RecentesDabord == false)
+                    {
+                        EnvoyerAncienFichier(file);
+                    }
+
+                    if (Journal.ScellerAvant(System.currentTimeMillis() + TEMPS_30S) == false)      //Les lectures du segment actif sont envoyées avec les autres
+                    {
+                        System.out.println("Segment actif pas encore scellé (étage Enregistrement arrêté ou en retard), ses lectures seront envoyées au prochain envoi");
+                    }
+
+                    m_Messages = 0;
+                    m_LecturesEnvoyees = 0;
+                    m_OctetsEnvoyes = 0;
+                    m_LotMax = 0;
+                    m_Fenetre.m_Reprises = 0;
+
+                    long DebutEnvoi = System.currentTimeMillis();
+
+                    CurseurEnvoi Curseur = Journal.m_Curseur;
+                    List<Path> Segments = Journal.SegmentsScelles();
+
+                    m_Restantes = Journal.NbAEnvoyer();
+                    m_SegmentsRestants = Segments.size();
+                    ChargerRecentes(Curseur);                                                       //Lectures déjà envoyées par EnvoyerRecentes, même avant un redémarrage
+                    Journal.ProtegerRecentes(m_SegmentFinRecentes);                                 //Leurs segments ne sont pas compactés avant le passage du rattrapage
+
+                    if (m_EnvoiCumuls)
+                    {
+                        EnvoyerCumuls(Segments, Curseur);                                           //Les segments sont archivés sans être envoyés
+                        Segments.clear();
+                        m_Restantes = 0;
+                        m_SegmentsRestants = 0;
+                    }
+
+                    else if (m_RecentesDabord)
+                    {
+                        EnvoyerRecentes(Segments, Curseur, Niveau);
+                    }
+
+                    for (Path Segment : Segments)
+                    {
+                        long Numero = JournalSegmente.Numero(Segment);
+
+                        if (Numero < Curseur.m_Segment)                                             //Déjà envoyé, le serveur s'est arrêté avant de le supprimer
                         {
-                            retour4 = "";
+                            Files.delete(Segment);
+                            m_SegmentsRestants--;
+                            continue;
                         }
 
-                        else
+                        if (Numero > m_SegmentRecentes && Numero < m_SegmentFinRecentes)           //Déjà envoyé par EnvoyerRecentes
                         {
-                            System.out.println("Ligne trouvée: " + retour4);                                //<- FIN DU BLOC
+                            m_Restantes = Math.max(m_Restantes - JournalSegmente.NbLectures(Segment, JournalSegmente.TAILLE_ENTETE), 0);
+                            m_SegmentsRestants--;
+                            m_Fenetre.FinSegment(Segment);
+                            continue;
                         }
-                    }
 
-                    System.out.println("Connection au réseau 2G/3G réussie, début de l'envoi du bloc de données");
+                        if (Niveau != m_Parent.m_Montante.Niveau())                                 //Le budget a changé pendant le rattrapage
+                        {
+                            Niveau = m_Parent.m_Montante.Niveau();
 
-                    //Ce bloc éxécute la commande qui envoie les informations à Hologram            //<- DÉBUT DU BLOC
-                    
-                    BufferedReader br = new BufferedReader(new FileReader(file));                   //Fichier à partir duquel on lit les informations
+                            if (Niveau >= BudgetDonnees.ALARMES)
+                            {
+                                System.out.println("Rattrapage suspendu, " + Resume() + ": " + m_Parent.m_Montante.Resume());
+                                break;
+                            }
 
-                    while ((Donnee = br.readLine()) != null) 
-                    {
-                        System.out.println("-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-");
-                        System.out.println(Donnee + " -> sera envoyé à Hologram");
+                            m_Lot = Niveau >= BudgetDonnees.COMPRESSION ? m_LotCompact : m_LotConfigure;
+                        }
 
-                        while (retour2.contains("Message sent successfully") == false)
-                        {
-                            //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
-                            Thread.sleep(TEMPS_30S);        //Réessaie à chaque 30 secondes
-                            //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+                        System.out.println("Envoi du segment " + Segment.getFileName());
 
-                            String s2 = "sudo hologram send " + Donnee;    			                    //Commande bash a etre executee
-                            String[] sCmd2 = {"/bin/bash", "-c", s2};             			            //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+                        LecteurSegment Lecteur;
 
-                            System.out.println(sCmd2[0] + " " + sCmd2[1] + " " + sCmd2[2]);             //Affiche la commande a executer dans la console Java
-                            Process p2 = Runtime.getRuntime().exec(sCmd2);        			            //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+                        try
+                        {
+                            Lecteur = Journal.OuvrirPourEnvoi(Segment);
+                        }
 
-                            p2.waitFor();                                                               //Attend que la commande soit éxécutée soit terminée
-                        
-                            BufferedReader reader3 = new BufferedReader(new InputStreamReader(p2.getInputStream()));        //Objet pour la lecture du retour
+                        catch (IOException e)
+                        {
+                            System.out.println(e.toString());                                       //Segment illisible: mis de côté pour ne pas bloquer les suivants
 
-                            retour2 = reader3.readLine();                                               //Lis ce que la commande retourne dans le terminal
-                            
-                            if (retour2 == null)
+                            try
                             {
-                                retour2 = "";
+                                Files.move(Segment, Segment.resolveSibling(Segment.getFileName() + ".corrompu"));
                             }
 
-                            else
+                            catch (IOException e2)
                             {
-                                System.out.println("Ligne trouvée: " + retour2);
+                                System.out.println(e2.toString());                                  //Laissé en place, réessayé au prochain envoi
                             }
-                        }
 
-                        retour2 = "";
-                        System.out.println(Donnee + " -> à été envoyé à Hologram");
-                        System.out.println("-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-");
-                    }
+                            continue;
+                        }
 
-                    br.close();                                                                         //<- FIN DU BLOC	
+                        int Depart = Lecteur.Position();
 
-                    //Ce bloc permet de de désactiver l'alimentation sur les ports USB                  //<- DÉBUT DU BLOC
-                    String s6 = "echo '1-1' |sudo tee /sys/bus/usb/drivers/usb/unbind";    			    //Commande bash a etre executee
-                    String[] sCmd6 = {"/bin/bash", "-c", s6};             			                    //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+                        try
+                        {
+                            if (Numero == Curseur.m_Segment)                                        //Envoi interrompu dans ce segment: reprend après la dernière lecture confirmée
+                            {
+                                Lecteur.Aller(Curseur.m_Position);
+                                Depart = Lecteur.Position();
+                                System.out.println("Reprise de l'envoi à la position " + Lecteur.Position());
+                            }
 
-                    System.out.println(sCmd6[0] + " " + sCmd6[1] + " " + sCmd6[2]);                     //Affiche la commande a executer dans la console Java
-                    Process p6 = Runtime.getRuntime().exec(sCmd6);        			                    //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+                            if (Niveau >= BudgetDonnees.REDUIT)
+                            {
+                                EnvoyerReduit(Lecteur, Numero);                                     //Cumuls par appareil au lieu des lectures
+                            }
 
-                    p6.waitFor();                                                                       //Attend que la commande soit éxécutée soit terminée
+                            else
+                            {
+                                while (true)                                                            //Un lot par message, jusqu'à la fin du segment
+                                {
+                                    int Avant = Lecteur.Position();
+
+                                    m_Lot.Vider(m_Passerelle + "-" + Numero + "-" + Avant);                    //Même clé si le lot est renvoyé après un redémarrage
+
+                                    while (Lecteur.Suivante(m_Lecture))
+                                    {
+                                        if (Recente(Numero, Avant))                                      //Déjà envoyée par EnvoyerRecentes
+                                        {
+                                            Avant = Lecteur.Position();
+                                            continue;
+                                        }
+
+                                        if (m_Lot.Ajouter(m_Lecture) == false)                          //Le message serait trop gros: cette lecture ira dans le prochain lot
+                                        {
+                                            Lecteur.Aller(Avant);
+                                            break;
+                                        }
+
+                                        else
+                                        {
+                                            m_Attente.Ajouter(System.currentTimeMillis() - m_Lecture.m_HeureReception);
+                                        }
+
+                                        Avant = Lecteur.Position();
+                                    }
+
+                                    if (m_Lot.NbLectures() == 0)
+                                    {
+                                        break;
+                                    }
+
+                                    m_Fenetre.Ajouter(Numero, Lecteur.Position(), m_Lot.Message(), m_Lot.Cle());     //Attend qu'une place se libère dans la fenêtre
+
+                                    m_Messages++;
+                                    m_LecturesEnvoyees += m_Lot.NbLectures();
+                                    m_OctetsEnvoyes += m_Lot.Taille();
+                                    m_LotMax = Math.max(m_LotMax, m_Lot.NbLectures());
+                                }
+                            }
+                        }
 
-                    if (p6.getErrorStream().available() > 0)        					                //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
-                    {
-                        //Affiche l'erreur survenue
-                        BufferedReader brCommand6 = new BufferedReader(new InputStreamReader(p6.getErrorStream()));
-                        System.out.println(brCommand6.readLine());
-                        brCommand6.close();
-                    }                                                                                   //<- FIN DU BLOC		                     
+                        finally
+                        {
+                            m_Restantes = Math.max(m_Restantes - (Lecteur.Position() - Depart) / JournalSegmente.TAILLE_ENREGISTREMENT, 0);
+                            m_SegmentsRestants--;
+                            Lecteur.close();
+                        }
 
-                    //Ce bloc permet de supprimer les données après qu'elles ont été envoyées           //<- DÉBUT DU BLOC
-                    String s5 = "sudo rm /home/pi/ProjetNepal/Data.txt";    			                //Commande bash a etre executee
-                    String[] sCmd5 = {"/bin/bash", "-c", s5};             			                    //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
+                        m_Fenetre.FinSegment(Segment);                                              //Supprimé quand tous ses lots seront confirmés
 
-                    System.out.println(sCmd5[0] + " " + sCmd5[1] + " " + sCmd5[2]);                     //Affiche la commande a executer dans la console Java
-                    Process p5 = Runtime.getRuntime().exec(sCmd5);        			                    //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+                        if (m_SegmentRecentes != Long.MAX_VALUE && m_SegmentsRestants > 0)
+                        {
+                            System.out.println("Rattrapage: " + Resume());
+                        }
+                    }
 
-                    p5.waitFor();                                                                       //Attend que la commande soit éxécutée soit terminée
+                    m_Fenetre.Terminer();                                                           //Attend la confirmation des derniers lots
+                    Journal.FinEnvoi();                                                             //Les segments pas envoyés peuvent de nouveau être compactés
 
-                    if (p5.getErrorStream().available() > 0)        					                //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
+                    if (m_RecentesDabord && Niveau < BudgetDonnees.ALARMES)                         //Plus vieux que tout le journal
                     {
-                        //Affiche l'erreur survenue
-                        BufferedReader brCommand5 = new BufferedReader(new InputStreamReader(p5.getErrorStream()));
-                        System.out.println(brCommand5.readLine());
-                        brCommand5.close();
-                    }                                                                                   //<- FIN DU BLOC
-
-                    //Ce bloc permet de supprimer les données après qu'elles ont été envoyées           //<- DÉBUT DU BLOC
-                    String s3 = "sudo touch /home/pi/ProjetNepal/Data.txt";    			                //Commande bash a etre executee
-                    String[] sCmd3 = {"/bin/bash", "-c", s3};             			                    //Specifie que l'interpreteur de commandes est BASH. Le "-c" indique que la commande a executer suit
-
-                    System.out.println(sCmd3[0] + " " + sCmd3[1] + " " + sCmd3[2]);                     //Affiche la commande a executer dans la console Java
-                    Process p3 = Runtime.getRuntime().exec(sCmd3);        			                    //Execute la commande par le systeme Linux (le programme Java doit etre demarré par le root pour les acces aux GPIO)
+                        EnvoyerAncienFichier(file);
+                    }
+                    m_DureeEnvois = System.currentTimeMillis() - DebutEnvoi;
+                    m_Planificateur.EnvoiTermine(System.currentTimeMillis(), DureeConnexion, m_DureeEnvois, m_LecturesEnvoyees, m_Messages);
 
-                    p3.waitFor();                                                                       //Attend que la commande soit éxécutée soit terminée
+                    if (m_Messages > 0)
+                    {
+                        System.out.println("Journal envoyé: " + m_LecturesEnvoyees + " lectures en " + m_Messages + " messages (" + (m_LecturesEnvoyees / m_Messages) + " lectures et " + (m_OctetsEnvoyes / m_Messages)
+                                         + " octets par message, max " + m_LotMax + " lectures) en " + (m_DureeEnvois / 1000) + " s, " + (m_LecturesEnvoyees * 1000 / Math.max(m_DureeEnvois, 1)) + " lectures/s, "
+                                         + m_Fenetre.m_Reprises + " reprises, " + m_Fenetre.m_EnVolMax + " envois en même temps au plus");
+                    }
 
-                    if (p3.getErrorStream().available() > 0)        					                //Verification s'il y a une erreur d'execution par l'interpreteur de commandes BASH
+                    if (Niveau > BudgetDonnees.NORMAL)
                     {
-                        //Affiche l'erreur survenue
-                        BufferedReader brCommand3 = new BufferedReader(new InputStreamReader(p3.getErrorStream()));
-                        System.out.println(brCommand3.readLine());
-                        brCommand3.close();
-                    }                                                                                   //<- FIN DU BLOC
+                        System.out.println("Envoi réduit (" + BudgetDonnees.NOMS[Niveau] + "), " + m_Reduites + " lectures envoyées en cumuls: " + m_Parent.m_Montante.Resume());
+                    }                                                                               //<- FIN DU BLOC
 
-                    System.out.println("Fin de l'envoi du bloc de données");
+                    Modem.Liberer();                                                                    //Le modem est coupé après modem.garder_chaud_ms s'il ne sert plus
 
-                    //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
-                    Thread.sleep(TEMPS_6H);                                                             //<- DÉLAI ENTRE CHAQUE ENVOI DE DONNÉES
-                    //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+                    System.out.println("Fin de l'envoi du bloc de données");
+                    System.out.println(m_Planificateur.Resume());
                 }
 
                 else if (m_Parent.ModeDebug == 1 && AfficheMessage == true)
@@ -835,4 +1123,532 @@ class EnvoieInformations implements Runnable
             System.out.println(e.toString());
         }
     }
-}
\ No newline at end of file
+
+    static boolean Ordre(String Ordre)
+    {
+        if (Ordre.equals("recent") == false && Ordre.equals("chronologique") == false)
+        {
+            System.out.println("envoi.ordre=" + Ordre + " inconnu, le journal sera envoyé dans l'ordre chronologique");
+        }
+
+        return Ordre.equals("recent");
+    }
+
+    static boolean Contenu(String Contenu)
+    {
+        if (Contenu.equals("lectures") == false && Contenu.equals("cumuls") == false)
+        {
+            System.out.println("envoi.contenu=" + Contenu + " inconnu, les lectures seront envoyées");
+        }
+
+        return Contenu.equals("cumuls");
+    }
+
+    //envoi.contenu=cumuls: envoie les cumuls fermés par l'étage Cumuls au lieu des lectures, puis déplace les segments scellés dans journal.archive
+    //sans les envoyer (les lectures restent sur la carte SD). Chaque message {"K":"<clé>","C":[<cumul>,...]} reste sous envoi.taille_max octets,
+    //sa clé (<passerelle>-C-<crc des cumuls>) est la même s'il est renvoyé après un redémarrage.
+    void EnvoyerCumuls(List<Path> Segments, CurseurEnvoi Curseur) throws IOException, InterruptedException
+    {
+        JournalSegmente Journal = m_Parent.m_Enregistrement.m_Journal;
+        Path Fichier = m_Parent.m_Cumuls.Prendre();
+
+        if (Fichier != null)
+        {
+            StringBuilder Corps = new StringBuilder();
+            int NbCorps = 0;
+
+            for (String Cumul : Files.readAllLines(Fichier))
+            {
+                if (NbCorps > 0 && Corps.length() + Cumul.length() + 1 + LotEnvoi.TAILLE_CLE_MAX + 14 > m_TailleMax)
+                {
+                    EnvoyerCumuls(Corps.toString(), NbCorps);
+                    Corps.setLength(0);
+                    NbCorps = 0;
+                }
+
+                Corps.append(NbCorps > 0 ? "," : "").append(Cumul);
+                NbCorps++;
+            }
+
+            if (NbCorps > 0)
+            {
+                EnvoyerCumuls(Corps.toString(), NbCorps);
+            }
+
+            m_Fenetre.Terminer();
+            m_Parent.m_Cumuls.Envoyes(Fichier);
+        }
+
+        int Archives = 0;
+
+        for (Path Segment : Segments)
+        {
+            long Numero = JournalSegmente.Numero(Segment);
+
+            if (Numero < Curseur.m_Segment)                                                 //Déjà envoyé, le serveur s'est arrêté avant de le supprimer
+            {
+                Files.delete(Segment);
+                continue;
+            }
+
+            int Fin = (int)Files.size(Segment);
+
+            Journal.Archiver(Segment);
+            Curseur.Avancer(Numero, Fin);
+            Archives++;
+        }
+
+        System.out.println(m_LecturesEnvoyees + " cumuls envoyés en " + m_Messages + " messages, " + Archives + " segments gardés dans " + Journal.m_Archive);
+    }
+
+    void EnvoyerCumuls(String Corps, int NbCumuls) throws IOException, InterruptedException
+    {
+        CRC32 Crc = new CRC32();
+
+        Crc.update(Corps.getBytes("UTF-8"));
+
+        String Cle = m_Passerelle + "-C-" + Long.toHexString(Crc.getValue());
+        String Message = "{\"K\":\"" + Cle + "\",\"C\":[" + Corps + "]}";
+
+        m_Fenetre.Ajouter(-1, 0, Message, Cle);
+
+        m_Messages++;
+        m_LecturesEnvoyees += NbCumuls;
+        m_OctetsEnvoyes += Message.length();
+        m_LotMax = Math.max(m_LotMax, NbCumuls);
+    }
+
+    //Trames enregistrées dans Data.txt par une version précédente du serveur, une par message
+    void EnvoyerAncienFichier(File file) throws IOException, InterruptedException
+    {
+        if (file.length() != 0)
+        {
+            BufferedReader br = new BufferedReader(new FileReader(file));                   //Fichier à partir duquel on lit les informations
+
+            while ((Donnee = br.readLine()) != null)
+            {
+                EnvoyerDonnee(LiaisonHologram.SansGuillemets(Donnee));                      //Les trames y sont échappées pour bash
+            }
+
+            br.close();
+            file.delete();
+        }
+    }
+
+    //Relit les positions des lectures déjà envoyées par EnvoyerRecentes (fichier "recentes" du journal), supprimé quand le curseur les a dépassées
+    void ChargerRecentes(CurseurEnvoi Curseur)
+    {
+        m_SegmentRecentes = Long.MAX_VALUE;
+        m_SegmentFinRecentes = 0;
+        m_PositionFinRecentes = 0;
+
+        try
+        {
+            if (Files.exists(m_FichierRecentes) == false)
+            {
+                return;
+            }
+
+            String[] Champs = new String(Files.readAllBytes(m_FichierRecentes), "UTF-8").trim().split(" ");
+
+            if (Champs.length != 4 || Comparer(Curseur.m_Segment, Curseur.m_Position, Long.parseLong(Champs[2]), Integer.parseInt(Champs[3])) >= 0)
+            {
+                Files.delete(m_FichierRecentes);                                            //Le rattrapage les a dépassées (ou fichier invalide)
+                return;
+            }
+
+            m_SegmentRecentes = Long.parseLong(Champs[0]);
+            m_PositionRecentes = Integer.parseInt(Champs[1]);
+            m_SegmentFinRecentes = Long.parseLong(Champs[2]);
+            m_PositionFinRecentes = Integer.parseInt(Champs[3]);
+        }
+
+        catch (Exception e)
+        {
+            System.out.println(e.toString());
+        }
+    }
+
+    //Remplace le fichier "recentes" de façon atomique, comme le curseur
+    void EnregistrerRecentes() throws IOException
+    {
+        Path Temporaire = m_FichierRecentes.resolveSibling("recentes.tmp");
+
+        Files.write(Temporaire, (m_SegmentRecentes + " " + m_PositionRecentes + " " + m_SegmentFinRecentes + " " + m_PositionFinRecentes).getBytes("UTF-8"));
+        Files.move(Temporaire, m_FichierRecentes, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        m_Parent.m_Enregistrement.m_Journal.ProtegerRecentes(m_SegmentFinRecentes);
+    }
+
+    //Vrai si la lecture à cette position du journal a déjà été envoyée par EnvoyerRecentes
+    boolean Recente(long Segment, int Position)
+    {
+        return m_SegmentRecentes != Long.MAX_VALUE && Comparer(Segment, Position, m_SegmentRecentes, m_PositionRecentes) >= 0
+            && Comparer(Segment, Position, m_SegmentFinRecentes, m_PositionFinRecentes) < 0;
+    }
+
+    static int Comparer(long Segment1, int Position1, long Segment2, int Position2)
+    {
+        return Segment1 != Segment2 ? Long.compare(Segment1, Segment2) : Integer.compare(Position1, Position2);
+    }
+
+    //Si des lectures plus vieilles que envoi.recentes_ms attendent (longue panne), envoie d'abord celles reçues depuis: le tableau de bord
+    //est à jour tout de suite, puis le rattrapage suit dans l'ordre du journal et saute les lectures envoyées ici (de m_SegmentRecentes à m_SegmentFinRecentes).
+    //Ces lots ("<passerelle>-R-<segment>-<position>") ne font pas avancer le curseur, mais leurs positions sont gardées dans le fichier "recentes":
+    //après un redémarrage, le rattrapage les saute encore et l'envoi des récentes reprend après la dernière, elles ne sont jamais envoyées deux fois.
+    void EnvoyerRecentes(List<Path> Segments, CurseurEnvoi Curseur, int Niveau) throws IOException, InterruptedException
+    {
+        JournalSegmente Journal = m_Parent.m_Enregistrement.m_Journal;
+        long Debut = System.currentTimeMillis() - m_Recentes;
+        int Premier = Segments.size() - 1;
+        boolean Reprise = m_SegmentRecentes != Long.MAX_VALUE;
+
+        if (Reprise)                                                                        //Reprend après les récentes déjà envoyées, sans regarder l'heure
+        {
+            Premier = 0;
+
+            while (Premier < Segments.size() && JournalSegmente.Numero(Segments.get(Premier)) < m_SegmentFinRecentes)
+            {
+                Premier++;
+            }
+
+            Commencer(m_SegmentFinRecentes, m_PositionFinRecentes, Niveau);
+        }
+
+        while (m_SegmentRecentes == Long.MAX_VALUE)                                         //Du plus récent au plus vieux, jusqu'au segment où commence la fenêtre
+        {
+            if (Premier < 0 || JournalSegmente.Numero(Segments.get(Premier)) < Curseur.m_Segment)
+            {
+                return;                                                                     //Toutes les lectures en attente sont récentes: pas de rattrapage
+            }
+
+            try (LecteurSegment Lecteur = Journal.OuvrirPourEnvoi(Segments.get(Premier)))
+            {
+                if (JournalSegmente.Numero(Segments.get(Premier)) == Curseur.m_Segment)
+                {
+                    Lecteur.Aller(Curseur.m_Position);
+                }
+
+                if (Lecteur.Suivante(m_Lecture) && m_Lecture.m_HeureReception < Debut)
+                {
+                    break;
+                }
+            }
+
+            catch (IOException e)
+            {
+                System.out.println(e.toString());                                           //Segment illisible, il sera mis de côté par le rattrapage
+                return;
+            }
+
+            Premier--;
+        }
+
+        long Envoyees = 0;
+        long FinRecentes = m_SegmentFinRecentes;                                            //Fin des lectures lues, gardée quand elles sont toutes confirmées
+        int PositionFinRecentes = m_PositionFinRecentes;
+
+        for (int i = Premier; i < Segments.size(); i++)
+        {
+            long Numero = JournalSegmente.Numero(Segments.get(i));
+
+            try (LecteurSegment Lecteur = Journal.OuvrirPourEnvoi(Segments.get(i)))
+            {
+                if (Reprise && Numero == m_SegmentFinRecentes)
+                {
+                    Lecteur.Aller(m_PositionFinRecentes);
+                }
+
+                else if (Numero == Curseur.m_Segment)
+                {
+                    Lecteur.Aller(Curseur.m_Position);
+                }
+
+                int Avant = Lecteur.Position();
+
+                while (Lecteur.Suivante(m_Lecture))
+                {
+                    if (m_SegmentRecentes == Long.MAX_VALUE)
+                    {
+                        if (m_Lecture.m_HeureReception < Debut)
+                        {
+                            Avant = Lecteur.Position();
+                            continue;
+                        }
+
+                        m_SegmentRecentes = Numero;                                         //Les lectures suivantes sont toutes envoyées, même si l'heure a reculé
+                        m_PositionRecentes = Avant;
+                        m_SegmentFinRecentes = Numero;
+                        m_PositionFinRecentes = Avant;
+                        EnregistrerRecentes();                                              //Interrompu avant la fin: reprend ici, avec les mêmes clés
+                        Commencer(Numero, Avant, Niveau);
+                    }
+
+                    if (Niveau >= BudgetDonnees.REDUIT)
+                    {
+                        AjouterReduite(Numero, Avant);                                      //Cumuls par appareil, comme le rattrapage
+                        Envoyees++;
+                    }
+
+                    else if (m_Lot.Ajouter(m_Lecture) == false)                             //Le lot peut continuer dans le segment suivant, il n'avance pas le curseur
+                    {
+                        m_Fenetre.Ajouter(-1, 0, m_Lot.Message(), m_Lot.Cle());
+                        Envoyees += m_Lot.NbLectures();
+                        m_Messages++;
+                        m_Lot.Vider(m_Passerelle + "-R-" + Numero + "-" + Avant);
+                        m_Lot.Ajouter(m_Lecture);
+                    }
+
+                    m_Attente.Ajouter(System.currentTimeMillis() - m_Lecture.m_HeureReception);
+
+                    Avant = Lecteur.Position();
+                }
+
+                if (m_SegmentRecentes != Long.MAX_VALUE)
+                {
+                    FinRecentes = Numero;
+                    PositionFinRecentes = Lecteur.Position();
+                }
+            }
+
+            catch (IOException e)
+            {
+                System.out.println(e.toString());
+            }
+        }
+
+        if (m_SegmentRecentes != Long.MAX_VALUE && Niveau >= BudgetDonnees.REDUIT)
+        {
+            FermerReduits(FinRecentes, PositionFinRecentes);
+            m_ReduitsRecents = false;
+        }
+
+        else if (m_SegmentRecentes != Long.MAX_VALUE && m_Lot.NbLectures() > 0)
+        {
+            m_Fenetre.Ajouter(-1, 0, m_Lot.Message(), m_Lot.Cle());
+            Envoyees += m_Lot.NbLectures();
+            m_Messages++;
+        }
+
+        m_Fenetre.Terminer();                                                               //Le rattrapage peut ensuite passer par-dessus ces lectures
+
+        if (m_SegmentRecentes != Long.MAX_VALUE)                                            //Toutes confirmées
+        {
+            m_SegmentFinRecentes = FinRecentes;
+            m_PositionFinRecentes = PositionFinRecentes;
+            EnregistrerRecentes();
+        }
+
+        m_RecentesEnvoyees += Envoyees;
+        m_LecturesEnvoyees += Envoyees;
+
+        System.out.println(Envoyees + " lectures récentes envoyées avant le rattrapage, " + Resume());
+    }
+
+    //Premier lot (ou premiers cumuls, quand l'envoi est réduit) des lectures récentes, à partir de cette position du journal
+    void Commencer(long Numero, int Position, int Niveau)
+    {
+        if (Niveau >= BudgetDonnees.REDUIT)
+        {
+            CommencerReduits(Numero, Position, true);
+        }
+
+        else
+        {
+            m_Lot.Vider(m_Passerelle + "-R-" + Numero + "-" + Position);
+        }
+    }
+
+    public String Resume()
+    {
+        return "Envoi du journal (" + (m_RecentesDabord ? "récentes d'abord" : "ordre chronologique") + "): " + m_Restantes + " lectures et " + m_SegmentsRestants + " segments à rattraper, "
+             + m_RecentesEnvoyees + " lectures récentes envoyées avant le rattrapage";
+    }
+
+    //Envoi réduit: les mesures de chaque appareil sont remplacées par leur cumul (nombre, min, max, moyenne et dernière valeur) sur des fenêtres
+    //de budget.intervalle_reduit_ms alignées sur l'heure locale. Les autres lectures (bouton, arrêt) sont envoyées telles quelles avec les cumuls.
+    //Les cumuls d'une fenêtre sont envoyés à la première lecture de la fenêtre suivante et à la fin du segment: le curseur n'avance qu'à ces
+    //positions, donc un envoi repris après un redémarrage refait les mêmes cumuls, avec les mêmes clés
+    void EnvoyerReduit(LecteurSegment Lecteur, long Numero) throws IOException, InterruptedException
+    {
+        int Avant = Lecteur.Position();
+
+        CommencerReduits(Numero, Avant, false);
+
+        while (Lecteur.Suivante(m_Lecture))
+        {
+            if (Recente(Numero, Avant) == false)                                //Pas déjà envoyée par EnvoyerRecentes
+            {
+                AjouterReduite(Numero, Avant);
+                m_LecturesEnvoyees++;
+                m_Attente.Ajouter(System.currentTimeMillis() - m_Lecture.m_HeureReception);
+            }
+
+            Avant = Lecteur.Position();
+        }
+
+        FermerReduits(Numero, Avant);
+    }
+
+    //Commence les cumuls de l'envoi réduit à une position du journal, qui donne la clé de leurs messages
+    //Recentes: cumuls de EnvoyerRecentes ("<passerelle>-R-C-..."), qui ne font pas avancer le curseur
+    void CommencerReduits(long Numero, int Position, boolean Recentes)
+    {
+        m_ReduitsRecents = Recentes;
+        m_NbReduits = 0;
+        m_DebutReduit = Long.MIN_VALUE;
+        m_SegmentReduit = Numero;
+        m_PositionReduit = Position;
+        m_Lot.Vider(m_Passerelle + (Recentes ? "-R-C-" : "-C-") + Numero + "-" + Position + "-L");
+    }
+
+    //Ajoute m_Lecture, lue à la position Avant du segment Numero, à l'envoi réduit: les cumuls de la fenêtre précédente sont envoyés d'abord
+    void AjouterReduite(long Numero, int Avant) throws IOException, InterruptedException
+    {
+        long Debut = CumulFenetre.Debut(m_Lecture.m_HeureReception, m_IntervalleReduit, m_Fuseau);
+
+        if (Debut != m_DebutReduit)
+        {
+            FermerReduits(Numero, Avant);
+            m_DebutReduit = Debut;
+        }
+
+        if (m_Lecture.m_Type == Trame.TYPE_MESURE)
+        {
+            if (Reduire(Debut, m_Lecture) == false)                            //Trop d'appareils: les cumuls de la fenêtre sont envoyés en deux fois
+            {
+                FermerReduits(Numero, Avant);
+                Reduire(Debut, m_Lecture);
+            }
+        }
+
+        else if (m_Lot.Ajouter(m_Lecture) == false)
+        {
+            FermerReduits(Numero, Avant);
+            m_Lot.Ajouter(m_Lecture);
+        }
+
+        m_Reduites++;
+    }
+
+    //Ajoute une mesure au cumul de son appareil dans la fenêtre en cours, false s'il y a déjà m_Reduits.length appareils
+    boolean Reduire(long Debut, Lecture Donnees)
+    {
+        int i = 0;
+
+        while (i < m_NbReduits && (m_Reduits[i].m_ID1 != Donnees.m_ID1 || m_Reduits[i].m_ID2 != Donnees.m_ID2))
+        {
+            i++;
+        }
+
+        if (i == m_NbReduits)
+        {
+            if (i == m_Reduits.length)
+            {
+                return false;
+            }
+
+            m_Reduits[i] = new CumulFenetre(Donnees.m_ID1, Donnees.m_ID2, m_IntervalleReduit);
+            m_NbReduits++;
+        }
+
+        m_Reduits[i].Ajouter(Debut, Donnees);
+        return true;
+    }
+
+    //Envoie les cumuls et les autres lectures lues depuis m_PositionReduit, jusqu'à la position Fin du segment Numero:
+    //{"K":"<passerelle>-C-<segment>-<position>-<partie>","C":[{cumul},{cumul}]} (voir CumulFenetre.Ecrire)
+    //Un message de trop pour envoi.taille_max est coupé en parties; seule la dernière avance le curseur jusqu'à Fin
+    void FermerReduits(long Numero, int Fin) throws IOException, InterruptedException
+    {
+        String Cle = m_Passerelle + (m_ReduitsRecents ? "-R-C-" : "-C-") + m_SegmentReduit + "-" + m_PositionReduit;
+        long Segment = m_ReduitsRecents ? -1 : Numero;
+        boolean Lectures = m_Lot.NbLectures() > 0;
+        int Partie = 0;
+        int i = 0;
+
+        while (i < m_NbReduits)
+        {
+            String CleMessage = Cle + "-" + Partie++;
+
+            m_Cumuls.setLength(0);
+            m_Cumuls.append("{\"K\":\"").append(CleMessage).append("\",\"C\":[");
+
+            int Taille = m_Cumuls.length();
+
+            while (i < m_NbReduits)
+            {
+                int Avant = m_Cumuls.length();
+
+                if (Avant > Taille)
+                {
+                    m_Cumuls.append(',');
+                }
+
+                m_Reduits[i].Ecrire(m_Cumuls);
+
+                if (m_Cumuls.length() + 2 > m_TailleMax && Avant > Taille)     //Ce cumul ira dans la prochaine partie
+                {
+                    m_Cumuls.setLength(Avant);
+                    break;
+                }
+
+                i++;
+            }
+
+            m_Cumuls.append("]}");
+            m_Fenetre.Ajouter(Segment, m_ReduitsRecents ? 0 : i == m_NbReduits && Lectures == false ? Fin : m_PositionReduit, m_Cumuls.toString(), CleMessage);
+
+            m_Messages++;
+            m_OctetsEnvoyes += m_Cumuls.length();
+        }
+
+        if (Lectures)
+        {
+            m_Fenetre.Ajouter(Segment, m_ReduitsRecents ? 0 : Fin, m_Lot.Message(), m_Lot.Cle());
+
+            m_Messages++;
+            m_OctetsEnvoyes += m_Lot.Taille();
+        }
+
+        m_NbReduits = 0;
+        m_SegmentReduit = Numero;
+        m_PositionReduit = Fin;
+        m_Lot.Vider(m_Passerelle + (m_ReduitsRecents ? "-R-C-" : "-C-") + Numero + "-" + Fin + "-L");
+    }
+
+    //Envoie un message à Hologram, réessaie à chaque 30 secondes jusqu'à ce qu'il soit envoyé
+    void EnvoyerDonnee(String Donnee) throws IOException, InterruptedException
+    {
+        boolean Envoye = false;
+        boolean PremierEssai = true;
+
+        System.out.println("-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-");
+        System.out.println(Donnee + " -> sera envoyé à Hologram");
+
+        while (Envoye == false)
+        {
+            if (PremierEssai == false)
+            {
+                //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+                Thread.sleep(TEMPS_30S);    //Réessaie à chaque 30 secondes
+                //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+            }
+
+            else
+            {
+                PremierEssai = false;
+            }
+
+            Envoye = m_Parent.m_Montante.Envoyer(Donnee);
+            m_Parent.m_Session.Resultat(Envoye);
+
+            if (Envoye == false)
+            {
+                m_Parent.m_Session.Ouvrir("envoi");                     //Reconnecte si la session est perdue
+            }
+        }
+
+        System.out.println(Donnee + " -> à été envoyé à Hologram");
+        System.out.println("-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-");
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * @file   SessionPPP.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Session PPP ("network connect") partagée par les envois, réutilisée tant qu'elle fonctionne.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.io.IOException;
+
+//Session PPP du modem ("network connect"), partagée par les envois du journal, les anciennes trames et le mode debug.
+//  COUPEE      : pas de session (modem coupé ou jamais connecté, session expirée ou perdue), le prochain Ouvrir se connecte
+//  ATTACHEMENT : un thread se connecte, les autres attendent le résultat au lieu de lancer leur propre "network connect"
+//  CONNECTEE   : réutilisée sans commande par chaque Ouvrir, tant que le modem est sur le réseau et qu'elle a servi depuis moins de ppp.fenetre_ms
+//  DEGRADEE    : des envois ont raté depuis le dernier réussi; après ppp.echecs_max échecs de suite elle est déclarée perdue (COUPEE)
+//Les essais de connexion ratés sont refaits après ppp.delai_min_ms, puis un délai qui double jusqu'à ppp.delai_max_ms, au plus ppp.essais_max fois:
+//la session redevient alors COUPEE et l'appelant libère le modem ou réessaie plus tard.
+public class SessionPPP
+{
+    static final int COUPEE = 0;
+    static final int ATTACHEMENT = 1;
+    static final int CONNECTEE = 2;
+    static final int DEGRADEE = 3;
+    static final String[] NOMS = { "coupée", "attachement", "connectée", "dégradée" };
+
+    private LiaisonHologram m_Hologram;
+    private AlimentationModem m_Modem;
+    private long m_Fenetre = Configuration.Entier("ppp.fenetre_ms", 600000);
+    private long m_DelaiMin = Configuration.Entier("ppp.delai_min_ms", 30000);
+    private long m_DelaiMax = Configuration.Entier("ppp.delai_max_ms", 300000);
+    private int m_EchecsMax = (int)Configuration.Entier("ppp.echecs_max", 3);
+    private int m_EssaisMax = (int)Configuration.Entier("ppp.essais_max", 5);
+
+    private int m_Etat = COUPEE;                                            //Protégé par this
+    private long m_Depuis = System.currentTimeMillis();                     //Début de l'état actuel
+    private long m_DerniereActivite = 0;                                    //Dernier envoi réussi ou dernière connexion
+    private int m_Echecs = 0;                                               //Envois ratés de suite
+
+    private long m_Connexions = 0;                                          //Mesures (protégées par this)
+    private long m_Essais = 0;                                              //Commandes "network connect"
+    private long m_DureeConnexions = 0;                                     //Temps total (ms) pour ouvrir une session, attentes comprises
+    private long m_ConnexionMax = 0;
+    private long m_Reutilisations = 0;
+    private long m_Pertes = 0;
+    private long m_Expirations = 0;
+
+    public SessionPPP(LiaisonHologram Hologram, AlimentationModem Modem)
+    {
+        m_Hologram = Hologram;
+        m_Modem = Modem;
+    }
+
+    //Retourne quand une session est ouverte (réutilisée ou nouvelle), false si elle n'a pas pu l'être en ppp.essais_max essais
+    public boolean Ouvrir(String Utilisateur) throws InterruptedException
+    {
+        return Ouvrir(Utilisateur, m_EssaisMax);
+    }
+
+    //Même chose en EssaisMax essais au plus
+    public boolean Ouvrir(String Utilisateur, int EssaisMax) throws InterruptedException
+    {
+        synchronized (this)
+        {
+            while (m_Etat == ATTACHEMENT)                                   //Un autre thread se connecte déjà
+            {
+                wait();
+            }
+
+            Verifier();
+
+            if (m_Etat == CONNECTEE || m_Etat == DEGRADEE)
+            {
+                m_Reutilisations++;
+                m_DerniereActivite = System.currentTimeMillis();
+                return true;
+            }
+
+            Changer(ATTACHEMENT, Utilisateur);
+        }
+
+        long Debut = System.currentTimeMillis();
+        long Delai = m_DelaiMin;
+        boolean Connectee = false;
+
+        try
+        {
+            for (int Essai = 1; Connectee == false && Essai <= Math.max(EssaisMax, 1); Essai++)
+            {
+                if (Essai > 1 || m_Modem.Attache() == false)                //Le modem vient d'être allumé, ou l'essai précédent a raté
+                {
+                    //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+                    Thread.sleep(Delai);
+                    //-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-
+
+                    if (Essai > 1)
+                    {
+                        Delai = Math.min(Delai * 2, m_DelaiMax);
+                    }
+                }
+
+                String Retour = "";
+
+                try
+                {
+                    Retour = m_Hologram.Connecter();                        //"network connect"
+                }
+
+                catch (IOException e)
+                {
+                    System.out.println(e.toString());
+                }
+
+                synchronized (this)
+                {
+                    m_Essais++;
+                }
+
+                if (Retour.isEmpty() == false)
+                {
+                    System.out.println("Ligne trouvée: " + Retour);
+                }
+
+                Connectee = Retour.contains("PPP session started");
+            }
+        }
+
+        finally
+        {
+            synchronized (this)
+            {
+                if (Connectee)
+                {
+                    long Duree = System.currentTimeMillis() - Debut;
+
+                    m_Modem.AttacheReussie();
+                    m_Connexions++;
+                    m_DureeConnexions += Duree;
+                    m_ConnexionMax = Math.max(m_ConnexionMax, Duree);
+                    m_Echecs = 0;
+                    m_DerniereActivite = System.currentTimeMillis();
+                    Changer(CONNECTEE, "en " + (Duree / 1000) + " s");
+                }
+
+                else
+                {
+                    Changer(COUPEE, "connexion ratée");
+                }
+
+                notifyAll();
+            }
+        }
+
+        return Connectee;
+    }
+
+    //Résultat d'un envoi par la session: un envoi réussi la confirme, des échecs de suite la déclarent perdue
+    public synchronized void Resultat(boolean Envoye)
+    {
+        if (Envoye)
+        {
+            m_Echecs = 0;
+            m_DerniereActivite = System.currentTimeMillis();
+
+            if (m_Etat == DEGRADEE)
+            {
+                Changer(CONNECTEE, "envoi réussi");
+            }
+
+            return;
+        }
+
+        m_Echecs++;
+
+        if (m_Etat == CONNECTEE)
+        {
+            Changer(DEGRADEE, "envoi raté");
+        }
+
+        if (m_Etat == DEGRADEE && m_Echecs >= m_EchecsMax)
+        {
+            m_Pertes++;
+            Changer(COUPEE, m_Echecs + " envois ratés de suite, session perdue");
+        }
+    }
+
+    //Une session ouverte n'est plus valide si le modem a été coupé depuis, ou si elle n'a pas servi depuis ppp.fenetre_ms
+    private void Verifier()
+    {
+        if (m_Etat != CONNECTEE && m_Etat != DEGRADEE)
+        {
+            return;
+        }
+
+        if (m_Modem.Attache() == false)
+        {
+            Changer(COUPEE, "modem coupé");
+        }
+
+        else if (System.currentTimeMillis() - m_DerniereActivite > m_Fenetre)
+        {
+            m_Expirations++;
+            Changer(COUPEE, "inutilisée depuis " + (m_Fenetre / 1000) + " s");
+        }
+    }
+
+    private void Changer(int Etat, String Raison)
+    {
+        System.out.println("Session PPP: " + NOMS[m_Etat] + " -> " + NOMS[Etat] + " (" + Raison + ")");
+        m_Etat = Etat;
+        m_Depuis = System.currentTimeMillis();
+    }
+
+    public synchronized String Resume()
+    {
+        long Ouvertures = m_Connexions + m_Reutilisations;
+
+        return "Session PPP: " + NOMS[m_Etat] + " depuis " + ((System.currentTimeMillis() - m_Depuis) / 1000) + " s, " + m_Connexions + " connexions (" + m_Essais + " essais"
+             + (m_Connexions > 0 ? ", moyenne " + (m_DureeConnexions / m_Connexions / 1000) + " s, max " + (m_ConnexionMax / 1000) + " s" : "") + "), " + m_Reutilisations + " réutilisations"
+             + (Ouvertures > 0 ? " (" + (m_Reutilisations * 100 / Ouvertures) + " %)" : "") + ", " + m_Pertes + " pertes, " + m_Expirations + " expirations";
+    }
+}
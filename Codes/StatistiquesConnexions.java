@@ -0,0 +1,192 @@
+/**
+ * @file   StatistiquesConnexions.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Mesures du serveur (connexions, trames reçues, durées de traitement), affichées dans la console.
+ *         Ce fichier doit se trouver dans le même dossier que Serveur.java.
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Mesures sur les connexions (ouvertes, trames par connexion), sur l'étage Réception (lectures, suspensions), sur chaque étage du pipeline
+//et sur la mémoire de la JVM (tas et pauses du ramasse-miettes), qui doit rester stable même quand beaucoup de lectures sont en attente
+//Les compteurs de connexions et de réception sont mis à jour par le thread d'écoute, ceux des étages par leur propre thread
+public class StatistiquesConnexions implements Runnable
+{
+    Thread m_Thread;
+    private long m_Periode = Configuration.Entier("statistiques.periode_ms", 60000);    //Délai entre deux résumés des mesures, 0: jamais
+
+    private AtomicLong m_Acceptees = new AtomicLong();                      //Nombre de connexions acceptées par le thread d'écoute
+    private AtomicLong m_Fermees = new AtomicLong();                        //Nombre de connexions fermées
+    private AtomicLong m_TramesFermees = new AtomicLong();                  //Nombre de trames reçues sur les connexions fermées (pour la moyenne par connexion)
+    private AtomicLong m_InvalidesFermees = new AtomicLong();               //Nombre de trames rejetées sur les connexions fermées
+    private AtomicLong m_DureeConnexions = new AtomicLong();                //Durée totale (ns) des connexions fermées
+    private AtomicLong m_Recues = new AtomicLong();                         //Nombre de trames complètes reçues
+    private AtomicLong m_Lectures = new AtomicLong();                       //Nombre de lectures faites sur les connexions
+    private AtomicLong m_LectureTotale = new AtomicLong();                  //Temps total (ns) des lectures (read, décodage des trames dans la file des lectures)
+    private AtomicLong m_Suspensions = new AtomicLong();                    //Nombre de fois où une connexion à été suspendue parce que la file des lectures était pleine
+
+    AnneauLectures m_Anneau;                                                //File des lectures et ses étages, pour le résumé
+    LiaisonHologram m_Hologram;                                             //Latence des commandes Hologram, pour le résumé
+    LiaisonMontante m_Montante;
+    BudgetDonnees m_Budget;                                                 //Octets envoyés dans la période, pour le résumé
+    AlimentationModem m_Modem;                                              //Allumages et attachement du modem, pour le résumé
+    SessionPPP m_Session;                                                   //Connexions PPP et réutilisations, pour le résumé
+    PlanificateurEnvoi m_Planificateur;                                     //Décisions d'envoi, pour le résumé
+    FileAlarmes m_Alarmes;                                                  //Alarmes et leur attente, pour le résumé
+    MesureAttente m_AttenteJournal;                                         //Attente des lectures envoyées avec le journal, pour le résumé
+    EnvoieInformations m_Informations;                                      //Rattrapage du journal qui reste, pour le résumé
+    RetentionJournal m_Retention;                                           //Espace disque et compactages du journal, pour le résumé
+    HorlogePasserelle m_Horloge;                                            //Heure provisoire ou réelle, pour le résumé
+
+    //Le résumé est affiché par un thread à part: les threads de traitement ne font que compter
+    public void Demarrer()
+    {
+        if (m_Periode > 0)
+        {
+            m_Thread = new Thread(this, "Statistiques");
+            m_Thread.setDaemon(true);
+            m_Thread.setPriority(Thread.MIN_PRIORITY);
+            m_Thread.start();
+        }
+    }
+
+    public void run()
+    {
+        while (true)
+        {
+            try
+            {
+                Thread.sleep(m_Periode);
+                Afficher();
+            }
+
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            catch (Exception e)
+            {
+                System.out.println(e.toString());
+            }
+        }
+    }
+
+    public void ConnexionAcceptee()
+    {
+        m_Acceptees.incrementAndGet();
+    }
+
+    public void ConnexionFermee(ConnexionClient Client)
+    {
+        m_Fermees.incrementAndGet();
+        m_TramesFermees.addAndGet(Client.m_Trames);
+        m_InvalidesFermees.addAndGet(Client.m_Invalides);
+        m_DureeConnexions.addAndGet(System.nanoTime() - Client.m_Ouverture);
+    }
+
+    public void ConnexionSuspendue()
+    {
+        m_Suspensions.incrementAndGet();
+    }
+
+    public void LectureTerminee(long Duree)
+    {
+        m_Lectures.incrementAndGet();
+        m_LectureTotale.addAndGet(Duree);
+    }
+
+    public void TrameRecue()
+    {
+        m_Recues.incrementAndGet();
+    }
+
+    public void Afficher()
+    {
+        long Fermees = m_Fermees.get();
+        long Lectures = m_Lectures.get();
+
+        System.out.println("Connexions: " + m_Acceptees.get() + " acceptées, " + (m_Acceptees.get() - Fermees) + " ouvertes" + (Fermees > 0 ? ", " + (m_TramesFermees.get() / Fermees) + " trames et " + (m_DureeConnexions.get() / Fermees / 1000000) + " ms en moyenne par connexion fermée, " + m_InvalidesFermees.get() + " trames rejetées" : ""));
+        System.out.println("Étage Réception: " + m_Recues.get() + " trames, " + m_Suspensions.get() + " suspensions" + (Lectures > 0 ? ", Lecture moyenne: " + (m_LectureTotale.get() / Lectures / 1000) + " us" : ""));
+
+        if (m_Anneau != null)
+        {
+            for (Etage Courant : m_Anneau.m_Lecteurs)
+            {
+                System.out.println(Courant.Resume());
+            }
+        }
+
+        if (m_Hologram != null)
+        {
+            System.out.println(m_Hologram.Resume());
+        }
+
+        if (m_Montante != null && m_Montante != m_Hologram)
+        {
+            System.out.println(m_Montante.Resume());
+        }
+
+        if (m_Budget != null)
+        {
+            System.out.println(m_Budget.Resume());
+        }
+
+        if (m_Modem != null)
+        {
+            System.out.println(m_Modem.Resume());
+        }
+
+        if (m_Session != null)
+        {
+            System.out.println(m_Session.Resume());
+        }
+
+        if (m_Planificateur != null)
+        {
+            System.out.println(m_Planificateur.Resume());
+        }
+
+        if (m_Alarmes != null)
+        {
+            System.out.println(m_Alarmes.Resume());
+            System.out.println(m_Alarmes.m_Attente.Resume());
+        }
+
+        if (m_AttenteJournal != null)
+        {
+            System.out.println(m_AttenteJournal.Resume());
+        }
+
+        if (m_Informations != null)
+        {
+            System.out.println(m_Informations.Resume());
+        }
+
+        if (m_Retention != null)
+        {
+            System.out.println(m_Retention.Resume());
+        }
+
+        if (m_Horloge != null)
+        {
+            System.out.println(m_Horloge.Resume());
+        }
+
+        long CollectionsGC = 0;
+        long DureeGC = 0;
+
+        for (java.lang.management.GarbageCollectorMXBean GC : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            CollectionsGC += Math.max(GC.getCollectionCount(), 0);
+            DureeGC += Math.max(GC.getCollectionTime(), 0);
+        }
+
+        System.out.println("Mémoire: tas utilisé " + ((Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1024) + " Ko, " + CollectionsGC + " passes du ramasse-miettes (" + DureeGC + " ms)");
+    }
+}
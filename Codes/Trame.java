@@ -0,0 +1,112 @@
+/**
+ * @file   Trame.java
+ * @author Samuel Montminy & Harri Laliberté
+ * @date   Février 2019
+ * @brief  Format binaire des trames envoyées par les clients (ClientCentrifugeuse, ClientEcremeuse, ClientEntrepot) au serveur (Serveur).
+ *         Les clients encodent avec Trame.Encoder, le serveur décode les trames au fur et à mesure qu'elles arrivent (ConnexionClient dans Serveur.java).
+ *         Ce fichier doit se trouver dans le même dossier que le code du client ou du serveur pour être compilé avec celui-ci.
+ *
+ *         Trame (version 1), octets en ordre "big-endian":
+ *           0      : Début de trame (0xA5), différent du premier octet d'un flux ObjectOutputStream (0xAC) pour reconnaître l'ancien format
+ *           1      : Version du format (1)
+ *           2-3    : Longueur du corps de la trame (27 octets en version 1)
+ *           4-5    : ID de l'appareil (2 caractères ASCII, ex: "CE")
+ *           6      : Type de trame (TYPE_MESURE, TYPE_BOUTON, TYPE_ARRET)
+ *           7-22   : T, P, H, R en point fixe (entiers signés de 32 bits, valeur * ECHELLE)
+ *           23-30  : Heure du client (millisecondes depuis 1970, entier de 64 bits)
+ *           31-34  : CRC32 des octets 0 à 30
+ *
+ * @version 1.0 : Première version
+ * Environnement de developpement: GitKraken / Notepad++
+ * Compilateur: javac (Java version 1.8)
+ */
+
+import java.nio.*;
+import java.util.zip.CRC32;
+
+public class Trame
+{
+    public static final byte DEBUT_TRAME = (byte)0xA5;              //Premier octet de chaque trame binaire
+    public static final byte VERSION = 1;                           //Version du format encodé par les clients
+    public static final int TAILLE_ENTETE = 4;                      //Début de trame, version et longueur
+    public static final int TAILLE_CORPS = 27;                      //ID, type, 4 valeurs et heure du client
+    public static final int TAILLE_CRC = 4;
+    public static final int TAILLE_TRAME = TAILLE_ENTETE + TAILLE_CORPS + TAILLE_CRC;
+
+    public static final long ECHELLE = 10000;                       //Les valeurs sont envoyées en dix-millièmes (résolution de la sonde DS18B20: 0.0625)
+
+    public static final int TYPE_MESURE = 1;                        //Mesure périodique (moyenne de RPM, lecture du BME280)
+    public static final int TYPE_BOUTON = 2;                        //Trame envoyée par le bouton du client
+    public static final int TYPE_ARRET = 3;                         //Trame à 0 envoyée juste avant que le Pi s'éteigne
+
+    public static final int TRAME_INCOMPLETE = 0;                   //Résultats du décodage d'une trame par le serveur
+    public static final int TRAME_VALIDE = 1;
+    public static final int TRAME_INVALIDE = 2;
+
+    //Encode une trame complète, prête à être écrite sur le socket
+    public static byte[] Encoder(String ID, int Type, double T, double P, double H, double R)
+    {
+        ByteBuffer Tampon = ByteBuffer.allocate(TAILLE_TRAME);
+
+        Tampon.put(DEBUT_TRAME);
+        Tampon.put(VERSION);
+        Tampon.putShort((short)TAILLE_CORPS);
+        Tampon.put((byte)ID.charAt(0));
+        Tampon.put((byte)ID.charAt(1));
+        Tampon.put((byte)Type);
+        Tampon.putInt(PointFixe(T));
+        Tampon.putInt(PointFixe(P));
+        Tampon.putInt(PointFixe(H));
+        Tampon.putInt(PointFixe(R));
+        Tampon.putLong(System.currentTimeMillis());
+
+        CRC32 Crc = new CRC32();
+        Crc.update(Tampon.array(), 0, Tampon.position());
+        Tampon.putInt((int)Crc.getValue());
+
+        return Tampon.array();
+    }
+
+    //Convertit une valeur en point fixe (arrondie au dix-millième, bornée à un entier de 32 bits)
+    static int PointFixe(double Valeur)
+    {
+        double Fixe = Math.rint(Valeur * ECHELLE);
+
+        if (Fixe > Integer.MAX_VALUE)
+        {
+            return Integer.MAX_VALUE;
+        }
+
+        if (Fixe < Integer.MIN_VALUE)
+        {
+            return Integer.MIN_VALUE;
+        }
+
+        return (int)Fixe;
+    }
+
+    //Ajoute une valeur en point fixe sous forme décimale, sans zéros inutiles (ex: 870000 -> "87", 215625 -> "21.5625")
+    public static void AjouterValeur(StringBuilder sb, long Fixe)
+    {
+        if (Fixe < 0)
+        {
+            sb.append('-');
+            Fixe = -Fixe;
+        }
+
+        sb.append(Fixe / ECHELLE);
+
+        long Fraction = Fixe % ECHELLE;
+
+        if (Fraction != 0)
+        {
+            sb.append('.');
+
+            for (long Diviseur = ECHELLE / 10; Diviseur > 0 && Fraction != 0; Diviseur /= 10)
+            {
+                sb.append((char)('0' + Fraction / Diviseur));
+                Fraction %= Diviseur;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+#!/usr/bin/env python
+# -*- coding: utf-8 -*-
+#
+# LiaisonHologram.py
+# Processus démarré une seule fois par Serveur.java (classe LiaisonHologram) et gardé en vie: les commandes Hologram sont faites
+# avec le SDK Python (celui de la commande "hologram") sans redémarrer bash, sudo et Python à chaque message.
+#
+# Requête (entrée standard, une par ligne) : <numéro>\t<commande>\t<argument>
+# Réponse (sortie standard, une par ligne) : <numéro>\t<OK|ERREUR>\t<texte>
+# Commandes: send <message>, connect, disconnect, location, ping
+# Le texte est celui qu'afficherait la commande "hologram" équivalente ("Message sent successfully", "PPP session started", "Location: {...}").
+# "0\tPRET\t" est envoyé au démarrage, quand les requêtes peuvent être reçues.
+#
+# Le modem n'est ouvert qu'à la première commande (les ports USB sont désalimentés entre les envois), puis réouvert après une erreur.
+
+import sys
+
+from Hologram.HologramCloud import HologramCloud
+
+Nuage = None
+
+
+def Repondre(Numero, Code, Texte):
+    sys.stdout.write("%s\t%s\t%s\n" % (Numero, Code, str(Texte).replace("\n", " ").replace("\t", " ")))
+    sys.stdout.flush()
+
+
+def Ouvrir():
+    global Nuage
+
+    if Nuage is None:
+        Nuage = HologramCloud(dict(), network='cellular')
+
+    return Nuage
+
+
+def Traiter(Numero, Commande, Argument):
+    global Nuage
+
+    if Commande == "ping":
+        Repondre(Numero, "OK", "pong")
+
+    elif Commande == "send":
+        Code = Ouvrir().sendMessage(Argument)
+
+        if Code == 0:
+            Repondre(Numero, "OK", "Message sent successfully")
+        else:
+            Repondre(Numero, "ERREUR", Nuage.getResultString(Code))
+
+    elif Commande == "connect":
+        if Ouvrir().network.connect():
+            Repondre(Numero, "OK", "PPP session started")
+        else:
+            Repondre(Numero, "ERREUR", "Failed to start PPP")
+
+    elif Commande == "disconnect":
+        Ouvrir().network.disconnect()
+        Repondre(Numero, "OK", "PPP session ended")
+
+    elif Commande == "location":
+        Position = Ouvrir().network.location
+
+        if Position is None:
+            Repondre(Numero, "ERREUR", "Location: None")
+        else:
+            # Même ordre et même format que "hologram modem location" (Pattern_Location dans Serveur.java)
+            Repondre(Numero, "OK", 'Location: {"altitude": "%s", "uncertainty": "%s", "longitude": "%s", "latitude": "%s", "time": "%s", "date": "%s"}'
+                     % (Position.altitude, Position.uncertainty, Position.longitude, Position.latitude, Position.time, Position.date))
+
+    else:
+        Repondre(Numero, "ERREUR", "Commande inconnue: " + Commande)
+
+
+def main():
+    global Nuage
+
+    Repondre("0", "PRET", "")
+
+    while True:
+        Ligne = sys.stdin.readline()
+
+        if not Ligne:                   # Entrée fermée: le serveur s'est arrêté
+            break
+
+        Champs = Ligne.rstrip("\n").split("\t", 2)
+
+        if len(Champs) < 2:
+            continue
+
+        try:
+            Traiter(Champs[0], Champs[1], Champs[2] if len(Champs) > 2 else "")
+
+        except Exception as e:
+            Nuage = None                # Le modem sera réouvert à la prochaine commande
+            Repondre(Champs[0], "ERREUR", e)
+
+
+if __name__ == "__main__":
+    main()